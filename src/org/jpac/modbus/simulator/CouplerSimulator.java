@@ -0,0 +1,492 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : CouplerSimulator.java
+ * VERSION   : $Revision: $
+ * DATE      : $Date: $
+ * PURPOSE   : simulates a WAGO modbus coupler
+ * AUTHOR    : Andreas Ulbrich, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ * LOG       : $Log: CouplerSimulator.java,v $
+ *
+ * This file is part of the jPac PLC communication library.
+ * The jPac PLC communication library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The jPac PLC communication library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac PLC communication library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.jpac.modbus.simulator;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import org.jpac.plc.modbus.Address.AREA;
+import org.jpac.plc.modbus.Address.ModbusInternalMemoryOffset;
+import org.jpac.plc.modbus.util.Modbus;
+
+/**
+ * simulates a WAGO modbus/TCP coupler as accessed by org.jpac.plc.modbus.Connection:
+ * read input discretes (2), read multiple registers (3), write coils (15) and write multiple registers (16)
+ * on the modbus references given by {@link ModbusInternalMemoryOffset}.<br>
+ * Every {@link AREA} is held as an in memory process image laid out like the data of the library: bit n of an area is
+ * found at bit n % 8 of byte n / 8, register n occupies the bytes 2n (low byte) and 2n+1 (high byte).<br>
+ * Like on the coupler, writes to the references of the inputs go to the outputs. The second access areas
+ * (AREA2) are not simulated.<br>
+ * usage: CouplerSimulator &lt;port&gt; [delay=&lt;microseconds&gt;]
+ */
+public class CouplerSimulator {
+    static Logger Log = Logger.getLogger("jpac.plc");
+
+    //exception codes
+    static final int ILLEGALFUNCTION    = 0x01;
+    static final int ILLEGALDATAADDRESS = 0x02;
+    static final int ILLEGALDATAVALUE   = 0x03;
+
+    private static final int MBAPLENGTH        = 6;
+    private static final int MAXREADBITS       = 2000;
+    private static final int MAXREADREGISTERS  = 125;
+    private static final int MAXWRITEBITS      = 1968;
+    private static final int MAXWRITEREGISTERS = 123;
+
+    //reference windows of the WAGO coupler
+    private static final Window[] BITREADWINDOWS = {
+        new Window(0x0000, 0x0200, AREA.PHYSICAL_INPUT_DIGITAL),
+        new Window(ModbusInternalMemoryOffset.BIT_OUTPUTS_ACCESS.toInt(), 0x0400, AREA.PHYSICAL_OUTPUT_DIGITAL),
+        new Window(ModbusInternalMemoryOffset.BIT_PFC_OUTPUT_ACCESS.toInt(), 0x2000, AREA.PFC_OUTPUT),
+        new Window(ModbusInternalMemoryOffset.BIT_PFC_INPUT_ACCESS.toInt(), 0x3000, AREA.PFC_INPUT)
+    };
+    private static final Window[] BITWRITEWINDOWS = {
+        new Window(0x0000, 0x0200, AREA.PHYSICAL_OUTPUT_DIGITAL),
+        new Window(ModbusInternalMemoryOffset.BIT_OUTPUTS_ACCESS.toInt(), 0x0400, AREA.PHYSICAL_OUTPUT_DIGITAL),
+        new Window(ModbusInternalMemoryOffset.BIT_PFC_OUTPUT_ACCESS.toInt(), 0x2000, AREA.PFC_OUTPUT),
+        new Window(ModbusInternalMemoryOffset.BIT_PFC_INPUT_ACCESS.toInt(), 0x3000, AREA.PFC_INPUT)
+    };
+    private static final Window[] REGISTERREADWINDOWS = {
+        new Window(0x0000, 0x0100, AREA.PHYSICAL_INPUT_ANALOG),
+        new Window(ModbusInternalMemoryOffset.REGISTER_PFC_OUTPUT_ACCESS.toInt(), 0x0200, AREA.PFC_OUTPUT),
+        new Window(ModbusInternalMemoryOffset.REGISTER_OUTPUTS_ACCESS.toInt(), 0x0300, AREA.PHYSICAL_OUTPUT_ANALOG),
+        new Window(ModbusInternalMemoryOffset.REGISTER_PFC_INPUT_ACCESS.toInt(), 0x0400, AREA.PFC_INPUT),
+        new Window(ModbusInternalMemoryOffset.NOVRAM.toInt(), 0x6000, AREA.NOVRAM)
+    };
+    private static final Window[] REGISTERWRITEWINDOWS = {
+        new Window(0x0000, 0x0100, AREA.PHYSICAL_OUTPUT_ANALOG),
+        new Window(ModbusInternalMemoryOffset.REGISTER_PFC_OUTPUT_ACCESS.toInt(), 0x0200, AREA.PFC_OUTPUT),
+        new Window(ModbusInternalMemoryOffset.REGISTER_OUTPUTS_ACCESS.toInt(), 0x0300, AREA.PHYSICAL_OUTPUT_ANALOG),
+        new Window(ModbusInternalMemoryOffset.REGISTER_PFC_INPUT_ACCESS.toInt(), 0x0400, AREA.PFC_INPUT),
+        new Window(ModbusInternalMemoryOffset.NOVRAM.toInt(), 0x6000, AREA.NOVRAM)
+    };
+
+    private static final ExecutorService sessions;
+
+    static{
+        ThreadFactory daemons = new ThreadFactory(){
+            private int n = 0;
+            public synchronized Thread newThread(Runnable runnable){
+                Thread thread = new Thread(runnable, "jpac.modbus.simulator-" + n++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        sessions = Executors.newCachedThreadPool(daemons);
+    }
+
+    private final EnumMap<AREA, byte[]> images;
+    private final List<Socket>          clients;
+    private ServerSocket                serverSocket;
+    private volatile long               responseDelay; //[us]
+    private final AtomicLong            requests;      //number of requests processed
+
+    public CouplerSimulator(){
+        this.images   = new EnumMap<AREA, byte[]>(AREA.class);
+        this.clients  = new ArrayList<Socket>();
+        this.requests = new AtomicLong();
+        //sizes of the process images as far as they are addressable on the coupler
+        setImageSize(AREA.PHYSICAL_INPUT_DIGITAL, 0x0200 / 8);
+        setImageSize(AREA.PHYSICAL_OUTPUT_DIGITAL, 0x0200 / 8);
+        setImageSize(AREA.PHYSICAL_INPUT_ANALOG, 0x0100 * 2);
+        setImageSize(AREA.PHYSICAL_OUTPUT_ANALOG, 0x0100 * 2);
+        setImageSize(AREA.PFC_INPUT, 0x0100 * 2);
+        setImageSize(AREA.PFC_OUTPUT, 0x0100 * 2);
+        setImageSize(AREA.NOVRAM, 0x3000 * 2);
+    }
+
+    public static void main(String[] args) throws Exception{
+        if (args.length < 1){
+            System.out.println("usage: CouplerSimulator <port> [delay=<microseconds>]");
+            System.exit(1);
+        }
+        CouplerSimulator simulator = new CouplerSimulator();
+        for (int i = 1; i < args.length; i++){
+            if (args[i].startsWith("delay=")){
+                simulator.setResponseDelay(Long.parseLong(args[i].substring("delay=".length())));
+            }
+        }
+        simulator.start(Integer.parseInt(args[0]));
+        System.out.println("simulator listening on port " + simulator.getPort());
+        while(true){
+            Thread.sleep(10000);
+            System.out.println(simulator.getRequests() + " requests processed");
+        }
+    }
+
+    /**
+     * used to resize the process image of an area. The contents of the process image are cleared.
+     * References beyond the size of a process image are answered with an ILLEGAL DATA ADDRESS exception
+     * @param area the area
+     * @param size size of the process image in bytes
+     * @return the new process image. Accesses must be synchronized on the returned array
+     */
+    public synchronized byte[] setImageSize(AREA area, int size){
+        byte[] image = new byte[size];
+        images.put(area, image);
+        return image;
+    }
+
+    /**
+     * @param area the area
+     * @return the process image of the area. Accesses must be synchronized on the returned array
+     */
+    public synchronized byte[] getImage(AREA area){
+        return images.get(area);
+    }
+
+    /**
+     * @param responseDelay period of time every request is delayed before it is answered [us]
+     */
+    public void setResponseDelay(long responseDelay){
+        this.responseDelay = responseDelay;
+    }
+
+    public long getResponseDelay(){
+        return responseDelay;
+    }
+
+    /**
+     * @return the number of requests processed since the start of the simulator
+     */
+    public long getRequests(){
+        return requests.get();
+    }
+
+    /**
+     * used to start listening for connections
+     * @param port port to listen on. 0: an ephemeral port is chosen (see {@link #getPort()})
+     * @throws IOException
+     */
+    public synchronized void start(int port) throws IOException{
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        final ServerSocket listening = serverSocket;
+        sessions.execute(new Runnable(){
+            public void run(){
+                try{
+                    while(true){
+                        final Socket client = listening.accept();
+                        synchronized(clients){
+                            clients.add(client);
+                        }
+                        sessions.execute(new Runnable(){
+                            public void run(){
+                                serve(client);
+                            }
+                        });
+                    }
+                }
+                catch(IOException exc){
+                    //simulator stopped
+                }
+            }
+        });
+    }
+
+    /**
+     * used to stop listening and to close all connections
+     */
+    public synchronized void stop(){
+        try{
+            if (serverSocket != null){
+                serverSocket.close();
+            }
+            synchronized(clients){
+                for (Socket client: clients){
+                    client.close();
+                }
+                clients.clear();
+            }
+        }
+        catch(IOException exc){
+            Log.error("Error: ", exc);
+        }
+    }
+
+    /**
+     * @return the port the simulator is listening on
+     */
+    public int getPort(){
+        return serverSocket.getLocalPort();
+    }
+
+    private void serve(Socket client){
+        byte[] request  = new byte[MBAPLENGTH + Modbus.MAX_MESSAGE_LENGTH];
+        byte[] response = new byte[MBAPLENGTH + Modbus.MAX_MESSAGE_LENGTH];
+        try{
+            client.setTcpNoDelay(true);
+            DataInputStream in  = new DataInputStream(client.getInputStream());
+            OutputStream    out = client.getOutputStream();
+            while(true){
+                //read the MBAP header and the remaining message
+                in.readFully(request, 0, MBAPLENGTH);
+                int length = word(request, 4);
+                if (length < 2 || length > Modbus.MAX_MESSAGE_LENGTH){
+                    throw new IOException("invalid message length " + length);
+                }
+                in.readFully(request, MBAPLENGTH, length);
+                int responseLength = process(request, length, response);
+                if (responseDelay > 0){
+                    TimeUnit.MICROSECONDS.sleep(responseDelay);
+                }
+                out.write(response, 0, MBAPLENGTH + responseLength);
+                out.flush();
+            }
+        }
+        catch(EOFException exc){
+            //connection closed by the client
+        }
+        catch(IOException exc){
+            if (Log.isDebugEnabled()) Log.debug("simulated coupler connection closed: " + exc.getMessage());
+        }
+        catch(InterruptedException exc){
+            //simulator shut down
+        }
+        finally{
+            try{
+                client.close();
+            }
+            catch(IOException exc){}
+            synchronized(clients){
+                clients.remove(client);
+            }
+        }
+    }
+
+    /**
+     * @param request a complete request including the MBAP header
+     * @param length length of the request as given in the MBAP header
+     * @param response buffer for the response including the MBAP header
+     * @return the length of the response as given in its MBAP header
+     */
+    int process(byte[] request, int length, byte[] response){
+        requests.incrementAndGet();
+        int function = request[MBAPLENGTH + 1] & 0xFF;
+        //transaction id, protocol id and unit id are echoed
+        System.arraycopy(request, 0, response, 0, MBAPLENGTH + 2);
+        int responseLength;
+        try{
+            switch(function){
+                case Modbus.MODBUS_FUNCTIONCODE_READINPUTDISCRETES:
+                    responseLength = readBits(request, response);
+                    break;
+                case Modbus.MODBUS_FUNCTIONCODE_READMULTIPLEREGISTERS:
+                    responseLength = readRegisters(request, response);
+                    break;
+                case Modbus.MODBUS_FUNCTIONCODE_WRITECOILS:
+                    responseLength = writeBits(request, length, response);
+                    break;
+                case Modbus.MODBUS_FUNCTIONCODE_WRITEMULTIPLEREGISTERS:
+                    responseLength = writeRegisters(request, length, response);
+                    break;
+                default:
+                    throw new IllegalRequestException(ILLEGALFUNCTION);
+            }
+        }
+        catch(IllegalRequestException exc){
+            response[MBAPLENGTH + 1] = (byte)(function | 0x80);
+            response[MBAPLENGTH + 2] = (byte)exc.getCode();
+            responseLength = 3;
+        }
+        response[4] = (byte)(responseLength >> 8);
+        response[5] = (byte)responseLength;
+        return responseLength;
+    }
+
+    private int readBits(byte[] request, byte[] response) throws IllegalRequestException{
+        int reference = word(request, MBAPLENGTH + 2);
+        int count     = word(request, MBAPLENGTH + 4);
+        if (count < 1 || count > MAXREADBITS){
+            throw new IllegalRequestException(ILLEGALDATAVALUE);
+        }
+        Window window    = find(BITREADWINDOWS, reference, count);
+        byte[] image     = getImage(window.area);
+        int    offset    = reference - window.start;
+        int    byteCount = (count + 7) / 8;
+        if ((offset + count + 7) / 8 > image.length){
+            throw new IllegalRequestException(ILLEGALDATAADDRESS);
+        }
+        int data = MBAPLENGTH + 3;
+        Arrays.fill(response, data, data + byteCount, (byte)0);
+        synchronized(image){
+            for (int i = 0; i < count; i++){
+                int bit = offset + i;
+                if ((image[bit >> 3] & 1 << (bit & 0x07)) != 0){
+                    response[data + (i >> 3)] |= 1 << (i & 0x07);
+                }
+            }
+        }
+        response[MBAPLENGTH + 2] = (byte)byteCount;
+        return 3 + byteCount;
+    }
+
+    private int readRegisters(byte[] request, byte[] response) throws IllegalRequestException{
+        int reference = word(request, MBAPLENGTH + 2);
+        int count     = word(request, MBAPLENGTH + 4);
+        if (count < 1 || count > MAXREADREGISTERS){
+            throw new IllegalRequestException(ILLEGALDATAVALUE);
+        }
+        Window window = find(REGISTERREADWINDOWS, reference, count);
+        byte[] image  = getImage(window.area);
+        int    offset = reference - window.start;
+        if (2 * (offset + count) > image.length){
+            throw new IllegalRequestException(ILLEGALDATAADDRESS);
+        }
+        int data = MBAPLENGTH + 3;
+        synchronized(image){
+            //registers are transmitted high byte first
+            for (int i = 0; i < count; i++){
+                int register = offset + i;
+                response[data + 2 * i]     = image[2 * register + 1];
+                response[data + 2 * i + 1] = image[2 * register];
+            }
+        }
+        response[MBAPLENGTH + 2] = (byte)(2 * count);
+        return 3 + 2 * count;
+    }
+
+    private int writeBits(byte[] request, int length, byte[] response) throws IllegalRequestException{
+        int reference = word(request, MBAPLENGTH + 2);
+        int count     = word(request, MBAPLENGTH + 4);
+        int byteCount = request[MBAPLENGTH + 6] & 0xFF;
+        if (count < 1 || count > MAXWRITEBITS || byteCount != (count + 7) / 8 || length != 7 + byteCount){
+            throw new IllegalRequestException(ILLEGALDATAVALUE);
+        }
+        Window window = find(BITWRITEWINDOWS, reference, count);
+        byte[] image  = getImage(window.area);
+        int    offset = reference - window.start;
+        if ((offset + count + 7) / 8 > image.length){
+            throw new IllegalRequestException(ILLEGALDATAADDRESS);
+        }
+        int data = MBAPLENGTH + 7;
+        synchronized(image){
+            for (int i = 0; i < count; i++){
+                int bit = offset + i;
+                if ((request[data + (i >> 3)] & 1 << (i & 0x07)) != 0){
+                    image[bit >> 3] |= 1 << (bit & 0x07);
+                }
+                else{
+                    image[bit >> 3] &= ~(1 << (bit & 0x07));
+                }
+            }
+        }
+        //reference and count are echoed
+        System.arraycopy(request, MBAPLENGTH + 2, response, MBAPLENGTH + 2, 4);
+        return 6;
+    }
+
+    private int writeRegisters(byte[] request, int length, byte[] response) throws IllegalRequestException{
+        int reference = word(request, MBAPLENGTH + 2);
+        int count     = word(request, MBAPLENGTH + 4);
+        int byteCount = request[MBAPLENGTH + 6] & 0xFF;
+        if (count < 1 || count > MAXWRITEREGISTERS || byteCount != 2 * count || length != 7 + byteCount){
+            throw new IllegalRequestException(ILLEGALDATAVALUE);
+        }
+        Window window = find(REGISTERWRITEWINDOWS, reference, count);
+        byte[] image  = getImage(window.area);
+        int    offset = reference - window.start;
+        if (2 * (offset + count) > image.length){
+            throw new IllegalRequestException(ILLEGALDATAADDRESS);
+        }
+        int data = MBAPLENGTH + 7;
+        synchronized(image){
+            for (int i = 0; i < count; i++){
+                int register = offset + i;
+                image[2 * register + 1] = request[data + 2 * i];
+                image[2 * register]     = request[data + 2 * i + 1];
+            }
+        }
+        //reference and count are echoed
+        System.arraycopy(request, MBAPLENGTH + 2, response, MBAPLENGTH + 2, 4);
+        return 6;
+    }
+
+    private static Window find(Window[] windows, int reference, int count) throws IllegalRequestException{
+        for (int i = 0; i < windows.length; i++){
+            Window window = windows[i];
+            if (reference >= window.start && reference < window.end){
+                if (reference + count > window.end){
+                    throw new IllegalRequestException(ILLEGALDATAADDRESS);
+                }
+                return window;
+            }
+        }
+        throw new IllegalRequestException(ILLEGALDATAADDRESS);
+    }
+
+    private static int word(byte[] b, int index){
+        return (b[index] & 0xFF) << 8 | b[index + 1] & 0xFF;
+    }
+
+    /**
+     * range of modbus references mapped onto the process image of an area
+     */
+    private static class Window{
+        final int  start;
+        final int  end;
+        final AREA area;
+
+        Window(int start, int end, AREA area){
+            this.start = start;
+            this.end   = end;
+            this.area  = area;
+        }
+    }
+
+    /**
+     * thrown, if a request must be answered by a modbus exception response
+     */
+    private static class IllegalRequestException extends Exception{
+        private final int code;
+
+        IllegalRequestException(int code){
+            super("modbus exception " + code);
+            this.code = code;
+        }
+
+        int getCode(){
+            return code;
+        }
+    }
+}
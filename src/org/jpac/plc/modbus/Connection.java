@@ -41,7 +41,11 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 import org.apache.log4j.Logger;
-import org.jpac.plc.modbus.util.Modbus;
+import org.jpac.plc.util.ConnectionStatistics;
+import org.jpac.plc.util.LatencyHistogram;
+import org.jpac.plc.util.PriorityLanes;
+import org.jpac.plc.util.RttEstimator;
+import org.jpac.plc.util.WireTrace;
 
 /**
  * represents a TCP/IP connection to a MODBUS plc.
@@ -55,6 +59,16 @@ public class Connection extends org.jpac.plc.Connection {
     private DataOutputStream                      out;
     private ReceiveTransaction                    receiveTransaction;
     private TransmitTransaction                   transmitTransaction;
+    private TracingInputStream                    tracingIn;
+    private TracingOutputStream                   tracingOut;
+    private WireTrace                             wireTrace;
+    private ConnectionStatistics                  statistics;
+    private PriorityLanes                         lanes;          //arbitrates concurrent requests by priority
+    private LatencyHistogram[]                    latencies;      //histograms indexed by function code
+    private boolean                               initialized;
+    private int                                   soTimeout;      //read timeout currently applied to the socket [ms]
+
+    private static final long                     MAXRESPONSETIME = 1000; //max. period of time to wait for the plc [ms]
         
     /**
      * an instance of Connection is created and the connection to given plc is initiated immediately
@@ -66,7 +80,9 @@ public class Connection extends org.jpac.plc.Connection {
      */
     public Connection(String host, int port, boolean debug) throws IOException {
         super(host, port, debug);
-
+        statistics = new ConnectionStatistics("modbus " + host + ":" + port, new RttEstimator(MAXRESPONSETIME, RttEstimator.DEFAULTMINTIMEOUT, MAXRESPONSETIME));
+        latencies  = new LatencyHistogram[256];
+        lanes      = new PriorityLanes(statistics);
         try{
             initialize();
         }
@@ -87,18 +103,24 @@ public class Connection extends org.jpac.plc.Connection {
         InetAddress addr = InetAddress.getByName(host);
         try {
             // create a tcp/ip socket for basic connectivity
-            socket = new Socket(addr, Modbus.DEFAULT_PORT);
-            try {
-              socket.setSoTimeout(Modbus.DEFAULT_TIMEOUT);
-            } catch (IOException ex) {
-              /// nothing to do here
-            }
+            socket = new Socket(addr, port);
+            soTimeout = 0;
+            armResponseTimeout();
 
             // prepare streams here
-             in  = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
-             out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             tracingIn  = new TracingInputStream(new BufferedInputStream(socket.getInputStream()), statistics);
+             tracingOut = new TracingOutputStream(new BufferedOutputStream(socket.getOutputStream()), statistics);
+             tracingIn.setWireTrace(wireTrace);
+             tracingOut.setWireTrace(wireTrace);
+             in  = new DataInputStream(tracingIn);
+             out = new DataOutputStream(tracingOut);
             
             connected = true;
+            if (initialized){
+                statistics.reconnected();
+            }
+            initialized = true;
+            statistics.register();
             if (isDebug()) {
                 Log.debug("Connected to " + addr.toString() + ":" + socket.getPort());
             }
@@ -113,6 +135,7 @@ public class Connection extends org.jpac.plc.Connection {
     @Override
     public synchronized void close() throws IOException{
         connected = false;
+        statistics.unregister();
         socket.close();
         if (isDebug()) Log.info("connection to MODBUS-PLC closed");
     }
@@ -173,6 +196,74 @@ public class Connection extends org.jpac.plc.Connection {
         return new org.jpac.plc.modbus.Data(new byte[size]);
     }
 
+    /**
+     * used to record the MODBUS ADU's interchanged with the plc. Recording is cheap enough to be left enabled permanently.
+     * @param wireTrace trace the ADU's are recorded in. May be shared by several connections. null: no recording
+     */
+    public synchronized void setWireTrace(WireTrace wireTrace){
+        this.wireTrace = wireTrace;
+        if (tracingIn != null){
+            tracingIn.setWireTrace(wireTrace);
+            tracingOut.setWireTrace(wireTrace);
+        }
+    }
+
+    public WireTrace getWireTrace(){
+        return wireTrace;
+    }
+
+    /**
+     * @return the latencies per function code and the throughput of the connection. Registered as MBean, while the connection is established
+     */
+    public ConnectionStatistics getStatistics(){
+        return statistics;
+    }
+
+    /**
+     * @return the estimator of the period of time to wait for the responses of the plc. It is fed with the round trip times
+     * of the requests transacted and exposed as MBean together with the statistics
+     */
+    public RttEstimator getRttEstimator(){
+        return statistics.getRttEstimator();
+    }
+
+    /**
+     * used to apply the actual estimation of the response timeout to the socket before a response is read
+     * @throws IOException
+     */
+    void armResponseTimeout() throws IOException{
+        int timeout = (int)statistics.getRttEstimator().getTimeout();
+        if (timeout != soTimeout){
+            socket.setSoTimeout(timeout);
+            soTimeout = timeout;
+        }
+    }
+
+    /**
+     * @return the lanes arbitrating the requests of concurrent transactions. MODBUS allows one outstanding request only:
+     * the requests of concurrent transactions are interleaved by priority, request by request.<br>
+     * Limitation: the MODBUS transactions are transacted synchronously by the calling thread. A caller waiting in its lane
+     * blocks this thread until the requests ahead of it have been served. If the caller is a jPac module, the jPac cycle is
+     * stalled meanwhile. Thus, the lanes are of use only, if the connection is shared by threads outside the jPac cycle,
+     * or if all modules sharing it can tolerate the delay
+     */
+    public PriorityLanes getPriorityLanes(){
+        return lanes;
+    }
+
+    /**
+     * @param functionCode a MODBUS function code
+     * @return the latency histogram of the function code
+     */
+    LatencyHistogram getLatencyHistogram(int functionCode){
+        LatencyHistogram histogram = latencies[functionCode & 0xFF];
+        if (histogram == null){
+            histogram = statistics.getHistogram("FC" + (functionCode & 0xFF));
+            latencies[functionCode & 0xFF] = histogram;
+        }
+        return histogram;
+    }
+
     /**
      * Getter-methode for calling the input stream from {@link org.jpac.plc.modbus.Connection}.
      * @return the {@link java.io.InputStream} hold in the connection
@@ -30,6 +30,7 @@ package org.jpac.plc.modbus;
 
 import org.jpac.plc.AddressException;
 import org.jpac.plc.ValueOutOfRangeException;
+import org.jpac.plc.util.DirtyRanges;
 
 /**
  * used as a data storage for data interchanged with a plc.<br>
@@ -37,8 +38,23 @@ import org.jpac.plc.ValueOutOfRangeException;
  * several plc side datatypes.
  */
 public class Data extends org.jpac.plc.Data {
+    private DirtyRanges dirtyRanges; //byte ranges modified by the setters since the last transmission
+
     public Data(byte[] bytes){
         super(bytes);
+        dirtyRanges = new DirtyRanges();
+    }
+
+    @Override
+    public void setBIT(int byteIndex, int bitIndex, boolean value) throws AddressException {
+        super.setBIT(byteIndex, bitIndex, value);
+        dirtyRanges.add(byteIndex, byteIndex + 1);
+    }
+
+    @Override
+    public void setBYTE(int byteIndex, int value) throws AddressException, ValueOutOfRangeException {
+        super.setBYTE(byteIndex, value);
+        dirtyRanges.add(byteIndex, byteIndex + 1);
     }
 
     /**
@@ -72,6 +88,7 @@ public class Data extends org.jpac.plc.Data {
         }
         getBytes()[byteIndex + 1] = (byte)(value >> 8);
         getBytes()[byteIndex]     = (byte)value;
+        dirtyRanges.add(byteIndex, byteIndex + 2);
     }
 
 
@@ -91,6 +108,7 @@ public class Data extends org.jpac.plc.Data {
         }
         getBytes()[byteIndex + 1] = (byte)(value >> 8);
         getBytes()[byteIndex]     = (byte)value;
+        dirtyRanges.add(byteIndex, byteIndex + 2);
     }
 
     /**
@@ -128,6 +146,7 @@ public class Data extends org.jpac.plc.Data {
         bytes[byteIndex + 1] = (byte)(value >>  8);
         bytes[byteIndex + 2] = (byte)(value >> 16);
         bytes[byteIndex + 3] = (byte)(value >> 24);
+        dirtyRanges.add(byteIndex, byteIndex + 4);
     }
 
     /**
@@ -162,5 +181,22 @@ public class Data extends org.jpac.plc.Data {
         bytes[byteIndex + 2] = (byte)(value >> 16);
         bytes[byteIndex + 1] = (byte)(value >>  8);
         bytes[byteIndex]     = (byte)value;
+        dirtyRanges.add(byteIndex, byteIndex + 4);
+    }
+
+    /**
+     * used to mark a range as modified, if the byte array has been modified directly
+     * @param byteIndex first byte of the range
+     * @param length length of the range
+     */
+    public void markDirty(int byteIndex, int length){
+        dirtyRanges.add(byteIndex, byteIndex + length);
+    }
+
+    /**
+     * @return the byte ranges modified since the last transmission (see {@link TransmitTransaction#setTransmitModifiedOnly(boolean)})
+     */
+    public DirtyRanges getDirtyRanges(){
+        return dirtyRanges;
     }
 }
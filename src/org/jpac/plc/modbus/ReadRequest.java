@@ -222,7 +222,7 @@ public class ReadRequest extends org.jpac.plc.ReadRequest {
                 throw new IOException("Modbus response for functionID " + functionID + " returned with error code " + byte_count);
             }
             
-            try { waitForBytes(ownConn.getInputStream(), byte_count);} // try to read count of data from the peer
+            try { waitForBytes(ownConn.getInputStream(), byte_count, ownConn.getRttEstimator().getTimeout());} // try to read count of data from the peer
             catch(IOException ex) {
                 Log.error("Invalid modbus protocol found while reading ReadRequest response data: ", ex);
                 throw ex;
@@ -279,7 +279,7 @@ public class ReadRequest extends org.jpac.plc.ReadRequest {
      * Method to select the function code depending on the requests area
      * @return the function code corresponding to the requests area
      */
-    private int getFunctionCode() {
+    int getFunctionCode() {
         switch(((org.jpac.plc.modbus.Address)this.getAddress()).getArea()) {
             case PHYSICAL_INPUT_DIGITAL:
             case PHYSICAL_OUTPUT_DIGITAL:
@@ -331,14 +331,15 @@ public class ReadRequest extends org.jpac.plc.ReadRequest {
     /**
     * used to wait, until the given amount of bytes are available on the stream<br>
     * if a timeout occurs, an IOException is thrown<br>
-    * (see instance variables MAXWAITTIME, ONETICK for further information<br>
+    * (see {@link Connection#getRttEstimator()} for further information<br>
     * @param number of bytes to wait for
+    * @param timeout max. period of time to wait [ms]
     * @exception IOException
     */
-    private void waitForBytes(DataInputStream stream, int n)throws IOException
+    private void waitForBytes(DataInputStream stream, int n, long timeout)throws IOException
     {
         long actual_nanotime   = System.nanoTime();
-        long max_wait_nanotime = actual_nanotime + 1000000000L;//10000000L;TODO nur für Test !!!!!!
+        long max_wait_nanotime = actual_nanotime + timeout * 1000000L;
         while((stream.available() < n) && System.nanoTime() < max_wait_nanotime);
         long tmp_waitForByteTime = System.nanoTime() - actual_nanotime;
         if(maxWaitForBytesTime < tmp_waitForByteTime) {
@@ -390,6 +391,10 @@ public class ReadRequest extends org.jpac.plc.ReadRequest {
                             actualCount++;
                         }
                     }
+                    if (getData() instanceof Data){
+                        //the bits have been received from the plc: they are not modified by the application
+                        ((Data)getData()).getDirtyRanges().remove(request.getDataOffset(), request.getDataOffset() + byteOffsetNextBytes + 1);
+                    }
                     break;
                 case BYTE:
                 case WORD:
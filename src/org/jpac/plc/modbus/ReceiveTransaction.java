@@ -35,18 +35,21 @@ package org.jpac.plc.modbus;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import org.jpac.EventTimedoutException;
 import org.jpac.JPac;
 import org.jpac.ProcessEvent;
 import org.jpac.ProcessException;
+import org.jpac.plc.util.PriorityLanes.PRIORITY;
 
 /**
  * Class for transacting a modbus request on a wago plc
  * @author Ulbrich
  */
 public class ReceiveTransaction extends org.jpac.plc.ReceiveTransaction {
-    public long timeout;
+    public long timeout;                         //period of time to wait for the answer [ns]. 0: estimated by the connection
     private ProcessEvent modbusAnswerAvailable;
+    private PRIORITY     priority = PRIORITY.NORMAL;
     
     class BytesAvailableEvent extends ProcessEvent {
         @Override
@@ -67,30 +70,76 @@ public class ReceiveTransaction extends org.jpac.plc.ReceiveTransaction {
     public ReceiveTransaction(Connection conn) {
         super(conn);
         modbusAnswerAvailable = new BytesAvailableEvent();
-        timeout = 3 * JPac.getInstance().getCycleTime();
     }
 
     @Override
     public void transact() throws IOException {
         while(!requestQueue.isEmpty()) {
             ReadRequest request = (org.jpac.plc.modbus.ReadRequest)requestQueue.poll();
-            DataInputStream istream = ((org.jpac.plc.modbus.Connection)getConnection()).getInputStream();
-            istream.skipBytes(istream.available());// empty input stream before new request written
-            //write request message
-            request.write(getConnection());
-            try {
-                modbusAnswerAvailable.await(timeout);
+            Connection conn      = (org.jpac.plc.modbus.Connection)getConnection();
+            long       enteredAt = conn.getPriorityLanes().enter(priority);
+            try{
+                DataInputStream istream = ((org.jpac.plc.modbus.Connection)getConnection()).getInputStream();
+                istream.skipBytes(istream.available());// empty input stream before new request written
+                long sentAt = System.nanoTime();
+                //write request message
+                request.write(conn);
+                try {
+                    modbusAnswerAvailable.await(getResponseTimeout(conn));
+                }
+                catch (ProcessException ex) {
+                    if (ex instanceof EventTimedoutException){
+                        conn.getStatistics().timedOut();
+                        conn.getRttEstimator().timedOut();
+                    }
+                    throw new IOException("receive error", ex);
+                }
+                //read response message
+                try {
+                    conn.armResponseTimeout();
+                    request.read(conn);
+                }
+                catch (InterruptedIOException ex) {
+                    conn.getStatistics().timedOut();
+                    conn.getRttEstimator().timedOut();
+                    throw ex;
+                }
+                long rtt = System.nanoTime() - sentAt;
+                conn.getLatencyHistogram(request.getFunctionCode()).record(rtt);
+                conn.getRttEstimator().sample(rtt);
             }
-            catch (ProcessException ex) {
-                throw new IOException("receive error", ex);
+            finally{
+                conn.getPriorityLanes().leave(priority, enteredAt);
             }
-            //read response message
-            request.read(getConnection());
-            
         }
         Log.debug("Modbus-ReceiveTransaction transacted");
     }
 
+    /**
+     * @param priority priority class of the transaction. The requests of concurrent transactions of the connection
+     * are served by priority (see {@link Connection#getPriorityLanes()}).<br>
+     * Note: transact() waits for its turn inside the calling thread. Invoked inside a jPac module, a transaction waiting
+     * behind others (BULK in particular) delays the jPac cycle accordingly
+     */
+    public void setPriority(PRIORITY priority){
+        this.priority = priority;
+    }
+
+    public PRIORITY getPriority(){
+        return priority;
+    }
+
+    /**
+     * @return the period of time to wait for the answer of the plc [ns]. Unless set explicitly (see timeout), the
+     * response timeout estimated by the connection applies, but at least one cycle
+     */
+    private long getResponseTimeout(Connection conn){
+        if (timeout > 0){
+            return timeout;
+        }
+        return Math.max(conn.getRttEstimator().getTimeout() * 1000000L, JPac.getInstance().getCycleTime());
+    }
+
     @Override
     public void transact(int waitCycles) throws IOException, ProcessException {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -0,0 +1,96 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : TracingInputStream.java
+ * VERSION   : $Revision: $
+ * DATE      : $Date: $
+ * PURPOSE   : -
+ * AUTHOR    : Andreas Ulbrich, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ * LOG       : $Log: TracingInputStream.java,v $
+ *
+ * This file is part of the jPac PLC communication library.
+ * The jPac PLC communication library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The jPac PLC communication library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac PLC communication library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.jpac.plc.modbus;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.jpac.plc.util.ConnectionStatistics;
+import org.jpac.plc.util.WireTrace;
+
+/**
+ * input stream counting the MODBUS ADU's received from the plc and recording them in a {@link WireTrace}.
+ * The bytes read are split into ADU's according to the length field of the MBAP header.
+ */
+class TracingInputStream extends FilterInputStream {
+    private static final int MBAPLENGTH = 6;  //transaction identifier, protocol identifier, length
+
+    private WireTrace            wireTrace;
+    private ConnectionStatistics statistics;
+    private byte[]               adu;
+    private int                  length;
+
+    TracingInputStream(InputStream in, ConnectionStatistics statistics){
+        super(in);
+        this.statistics = statistics;
+        this.adu        = new byte[TracingOutputStream.MAXADULENGTH];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0){
+            collect((byte)b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        for (int i = 0; i < n; i++){
+            collect(b[off + i]);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        //skipped bytes are stale: the next byte read starts a new ADU
+        length = 0;
+        return in.skip(n);
+    }
+
+    void setWireTrace(WireTrace wireTrace){
+        this.wireTrace = wireTrace;
+    }
+
+    private void collect(byte b){
+        adu[length++] = b;
+        if (length >= MBAPLENGTH){
+            int aduLength = MBAPLENGTH + ((adu[4] & 0xFF) << 8 | adu[5] & 0xFF);
+            if (length == aduLength || length == adu.length){
+                statistics.addBytesIn(length);
+                if (wireTrace != null){
+                    wireTrace.record(WireTrace.PROTOCOL.MODBUS, WireTrace.DIRECTION.RECEIVED, adu, 0, length);
+                }
+                length = 0;
+            }
+        }
+    }
+}
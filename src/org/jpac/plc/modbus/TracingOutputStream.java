@@ -0,0 +1,87 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : TracingOutputStream.java
+ * VERSION   : $Revision: $
+ * DATE      : $Date: $
+ * PURPOSE   : -
+ * AUTHOR    : Andreas Ulbrich, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ * LOG       : $Log: TracingOutputStream.java,v $
+ *
+ * This file is part of the jPac PLC communication library.
+ * The jPac PLC communication library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The jPac PLC communication library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac PLC communication library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.jpac.plc.modbus;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.jpac.plc.util.ConnectionStatistics;
+import org.jpac.plc.util.WireTrace;
+
+/**
+ * output stream counting the MODBUS ADU's written to the plc and recording them in a {@link WireTrace}.
+ * The bytes written since the last flush() are treated as one ADU.
+ */
+class TracingOutputStream extends FilterOutputStream {
+    static final int MAXADULENGTH = 260; //MBAP header (6) + unit identifier (1) + PDU (253)
+
+    private WireTrace            wireTrace;
+    private ConnectionStatistics statistics;
+    private byte[]               adu;
+    private int                  length;
+
+    TracingOutputStream(OutputStream out, ConnectionStatistics statistics){
+        super(out);
+        this.statistics = statistics;
+        this.adu        = new byte[MAXADULENGTH];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        if (wireTrace != null && length < adu.length){
+            adu[length] = (byte)b;
+        }
+        length++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        if (wireTrace != null && length < adu.length){
+            System.arraycopy(b, off, adu, length, Math.min(len, adu.length - length));
+        }
+        length += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (length > 0){
+            statistics.addBytesOut(length);
+            if (wireTrace != null){
+                wireTrace.record(WireTrace.PROTOCOL.MODBUS, WireTrace.DIRECTION.TRANSMITTED, adu, 0, Math.min(length, adu.length));
+            }
+        }
+        length = 0;
+        out.flush();
+    }
+
+    void setWireTrace(WireTrace wireTrace){
+        this.wireTrace = wireTrace;
+    }
+}
@@ -31,21 +31,35 @@
 package org.jpac.plc.modbus;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import org.jpac.EventTimedoutException;
+import org.jpac.IndexOutOfRangeException;
 import org.jpac.JPac;
 import org.jpac.NextCycle;
 import org.jpac.ProcessEvent;
 import org.jpac.ProcessException;
 import org.jpac.ShutdownRequestException;
+import org.jpac.plc.Request;
+import org.jpac.plc.ValueOutOfRangeException;
 import org.jpac.plc.WrongOrdinaryException;
+import org.jpac.plc.util.DirtyRanges;
+import org.jpac.plc.util.PlcImage;
+import org.jpac.plc.util.PriorityLanes.PRIORITY;
 
 /**
  * Class for transferring a write request to a wago plc
  * @author Ulbrich
  */
 public class TransmitTransaction extends org.jpac.plc.TransmitTransaction {
-    public long timeout;
+    public long timeout;                         //period of time to wait for the answer [ns]. 0: estimated by the connection
     private ProcessEvent modbusAnswerAvailable;
+    private boolean transmitModifiedOnly;
+    private PlcImage image;
+    private long forcedRefreshInterval;
+    private PRIORITY priority = PRIORITY.NORMAL;
+    private ArrayList<WriteRequest> pending = new ArrayList<WriteRequest>(); //requests transmitted by transactModifiedRanges()
+    private ArrayList<int[]>        taken   = new ArrayList<int[]>();        //their modified ranges
     
     class BytesAvailableEvent extends ProcessEvent {
         @Override
@@ -67,33 +81,232 @@ public class TransmitTransaction extends org.jpac.plc.TransmitTransaction {
         super(conn);
         // TODO test !!!!!modbusAnswerAvailable = new BytesAvailableEvent();
         modbusAnswerAvailable = new NextCycle();
-        timeout = 3 * JPac.getInstance().getCycleTime();
     }
 
     @Override
     public void transact() throws IOException {
-        while(!requestQueue.isEmpty()) {
-            WriteRequest request = (org.jpac.plc.modbus.WriteRequest)requestQueue.poll();
+        if (transmitModifiedOnly){
+            transactModifiedRanges();
+        }
+        else{
+            while(!requestQueue.isEmpty()) {
+                transact((org.jpac.plc.modbus.WriteRequest)requestQueue.poll());
+            }
+        }
+        Log.debug("Modbus-TransmitTransaction transacted");
+    }
+
+    /**
+     * used to transmit only the byte ranges modified by the setters of {@link Data} since the last transmission.
+     * Requests for Data objects not tracking their modifications are transmitted completely.
+     * @param transmitModifiedOnly true: only modified ranges are transmitted
+     */
+    public void setTransmitModifiedOnly(boolean transmitModifiedOnly){
+        this.transmitModifiedOnly = transmitModifiedOnly;
+    }
+
+    public boolean isTransmitModifiedOnly(){
+        return transmitModifiedOnly;
+    }
+
+    /**
+     * used to suppress the transmission of requests, whose values are known to be held by the plc already.
+     * The image is updated on every successful transmission. Bit requests are always transmitted.
+     * @param image last known image of the plc, null: write elision is disabled
+     * @param forcedRefreshInterval requests are transmitted anyway, if their values have not been confirmed for this period [ms].
+     * Guards against modifications made by other parties.
+     */
+    public void setWriteElision(PlcImage image, long forcedRefreshInterval){
+        this.image                 = image;
+        this.forcedRefreshInterval = forcedRefreshInterval;
+    }
+
+    public PlcImage getImage(){
+        return image;
+    }
+
+    public long getForcedRefreshInterval(){
+        return forcedRefreshInterval;
+    }
+
+    private void transact(WriteRequest request) throws IOException {
+        boolean elidable = image != null && request.getDataType() != Request.DATATYPE.BIT;
+        int     area     = ((Address)request.getAddress()).getArea().ordinal();
+        if (elidable && image.matches(area, request.getByteAddress(), request.getData().getBytes(), request.getByteAddress(), request.getDataLengthInBytes(), forcedRefreshInterval)){
+            //the plc already holds the values
+            return;
+        }
+        if (image != null){
+            //the state of the plc is unknown until the response has been received
+            image.invalidate(area, request.getByteAddress(), request.getDataLengthInBytes());
+        }
+        Connection conn      = (org.jpac.plc.modbus.Connection)getConnection();
+        long       enteredAt = conn.getPriorityLanes().enter(priority);
+        try{
             //write request message
             if (((org.jpac.plc.modbus.Connection)getConnection()).getInputStream().available() != 0){
                 //TODO Log.error("write input queue enthält noch Daten !!!!! ");
                 ((org.jpac.plc.modbus.Connection)getConnection()).getInputStream().skip(2000L);
             }
-            request.write(getConnection());
+            long sentAt = System.nanoTime();
+            request.write(conn);
             try {
-                modbusAnswerAvailable.await(timeout);
+                modbusAnswerAvailable.await(getResponseTimeout(conn));
             } 
             catch (ProcessException ex) {
+                if (ex instanceof EventTimedoutException){
+                    conn.getStatistics().timedOut();
+                    conn.getRttEstimator().timedOut();
+                }
                 throw new IOException("receive error", ex);
             }
             try {
                //read response message
-               request.read(getConnection());
+               conn.armResponseTimeout();
+               request.read(conn);
+               long rtt = System.nanoTime() - sentAt;
+               conn.getLatencyHistogram(request.getFunctionCode()).record(rtt);
+               conn.getRttEstimator().sample(rtt);
+               if (elidable){
+                   image.confirm(area, request.getByteAddress(), request.getData().getBytes(), request.getByteAddress(), request.getDataLengthInBytes());
+               }
+            } catch (InterruptedIOException ex) {
+               conn.getStatistics().timedOut();
+               conn.getRttEstimator().timedOut();
+               throw ex;
             } catch (WrongOrdinaryException ex) {
                Log.error("Error: ", ex);
             }
         }
-        Log.debug("Modbus-TransmitTransaction transacted");
+        finally{
+            conn.getPriorityLanes().leave(priority, enteredAt);
+        }
+    }
+
+    /**
+     * transmits the modified ranges covered by the queued requests. The ranges of all requests are collected, before they are
+     * marked as unmodified: requests may share bytes of the data (e.g. the bits of a byte), whose modifications must not be
+     * taken by the first one only. The ranges of requests not transmitted are marked again, if the transmission fails.
+     */
+    private void transactModifiedRanges() throws IOException {
+        pending.clear();
+        taken.clear();
+        while(!requestQueue.isEmpty()) {
+            pending.add((org.jpac.plc.modbus.WriteRequest)requestQueue.poll());
+        }
+        for (WriteRequest request: pending){
+            taken.add(getModifiedRanges(request));
+        }
+        for (WriteRequest request: pending){
+            DirtyRanges dirtyRanges = getDirtyRanges(request);
+            if (dirtyRanges != null){
+                dirtyRanges.remove(getModifiedRangeBegin(request), getModifiedRangeBegin(request) + request.getDataLengthInBytes());
+            }
+        }
+        int i = 0;
+        try{
+            for (; i < pending.size(); i++){
+                transactModifiedRanges(pending.get(i), taken.get(i));
+            }
+        }
+        catch(Exception exc){
+            //mark the ranges as modified again
+            for (; i < pending.size(); i++){
+                DirtyRanges dirtyRanges = getDirtyRanges(pending.get(i));
+                int[]       ranges      = taken.get(i);
+                for (int r = 0; dirtyRanges != null && r < ranges.length; r += 2){
+                    dirtyRanges.add(ranges[r], ranges[r + 1]);
+                }
+            }
+            if (exc instanceof IOException){
+                throw (IOException)exc;
+            }
+            throw new IOException(exc.getMessage(), exc);
+        }
+        finally{
+            pending.clear();
+            taken.clear();
+        }
+    }
+
+    /**
+     * transmits the modified ranges covered by the request. Register ranges are aligned to word boundaries.
+     * @param ranges modified ranges of the request, null if its Data object does not track its modifications
+     */
+    private void transactModifiedRanges(WriteRequest request, int[] ranges) throws IOException, ValueOutOfRangeException, IndexOutOfRangeException {
+        if (ranges == null){
+            transact(request);
+        }
+        else if (ranges.length == 0){
+            return;
+        }
+        else if (request.getDataType() == Request.DATATYPE.BIT){
+            transact(request);
+        }
+        else{
+            Address address = (Address)request.getAddress();
+            int     begin   = request.getByteAddress();
+            int     end     = begin + request.getDataLengthInBytes();
+            for (int r = 0; r < ranges.length; r += 2){
+                int b = ranges[r];
+                int e = ranges[r + 1];
+                if (request.getDataType() != Request.DATATYPE.BYTE){
+                    //registers are written word wise
+                    b = Math.max(begin, b - b % 2);
+                    e = Math.min(end, e + e % 2);
+                }
+                transact(new WriteRequest(request.getDataType(), new Address(address.getArea(), b, Address.NA, e - b), request.getDataOffset(), request.getData()));
+            }
+        }
+    }
+
+    /**
+     * @return the modified ranges of the data covered by the request, null if its Data object does not track its modifications
+     */
+    private int[] getModifiedRanges(WriteRequest request){
+        DirtyRanges dirtyRanges = getDirtyRanges(request);
+        if (dirtyRanges == null){
+            return null;
+        }
+        int begin = getModifiedRangeBegin(request);
+        return dirtyRanges.toArray(begin, begin + request.getDataLengthInBytes(), 0);
+    }
+
+    /**
+     * @return the first byte of the data transmitted by the request. A bit is transmitted from bit 0 of the first byte of the data
+     * (see {@link WriteRequest#writeData(org.jpac.plc.Connection)})
+     */
+    private int getModifiedRangeBegin(WriteRequest request){
+        return request.getDataType() == Request.DATATYPE.BIT ? 0 : request.getByteAddress();
+    }
+
+    private DirtyRanges getDirtyRanges(WriteRequest request){
+        return request.getData() instanceof Data ? ((Data)request.getData()).getDirtyRanges() : null;
+    }
+
+    /**
+     * @param priority priority class of the transaction. The requests of concurrent transactions of the connection
+     * are served by priority (see {@link Connection#getPriorityLanes()}).<br>
+     * Note: transact() waits for its turn inside the calling thread. Invoked inside a jPac module, a transaction waiting
+     * behind others (BULK in particular) delays the jPac cycle accordingly
+     */
+    public void setPriority(PRIORITY priority){
+        this.priority = priority;
+    }
+
+    public PRIORITY getPriority(){
+        return priority;
+    }
+
+    /**
+     * @return the period of time to wait for the answer of the plc [ns]. Unless set explicitly (see timeout), the
+     * response timeout estimated by the connection applies, but at least one cycle
+     */
+    private long getResponseTimeout(Connection conn){
+        if (timeout > 0){
+            return timeout;
+        }
+        return Math.max(conn.getRttEstimator().getTimeout() * 1000000L, JPac.getInstance().getCycleTime());
     }
 
     @Override
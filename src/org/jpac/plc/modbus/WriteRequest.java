@@ -207,7 +207,7 @@ public class WriteRequest extends org.jpac.plc.WriteRequest {
      * Method returns zthe function code according to the area of the address / request
      * @return <code>15</code> or <
      */
-    private int getFunctionCode() {
+    int getFunctionCode() {
         switch(((org.jpac.plc.modbus.Address)this.getAddress()).getArea()) {
             case PHYSICAL_INPUT_DIGITAL:
             case PHYSICAL_OUTPUT_DIGITAL:
@@ -254,14 +254,15 @@ public class WriteRequest extends org.jpac.plc.WriteRequest {
     /**
     * used to wait, until the given amount of bytes are available on the stream<br>
     * if a timeout occurs, an IOException is thrown<br>
-    * (see instance variables MAXWAITTIME, ONETICK for further information<br>
+    * (see {@link Connection#getRttEstimator()} for further information<br>
     * @param number of bytes to wait for
+    * @param timeout max. period of time to wait [ms]
     * @exception IOException
     */
-    private void waitForBytes(DataInputStream stream, int n)throws IOException
+    private void waitForBytes(DataInputStream stream, int n, long timeout)throws IOException
     {
         long actual_nanotime   = System.nanoTime();
-        long max_wait_nanotime = actual_nanotime + 1000000000L; // TODO : + 10000000L;
+        long max_wait_nanotime = actual_nanotime + timeout * 1000000L;
         while((stream.available() < n) && System.nanoTime() < max_wait_nanotime);
         //System.out.println("wait time: " + (System.nanoTime() - actual_nanotime));
         if (System.nanoTime() > max_wait_nanotime){
@@ -310,10 +311,8 @@ public class WriteRequest extends org.jpac.plc.WriteRequest {
                     ownConn.getOutputStream().writeByte(this.getDataLengthInBytes());
                     switch(this.getDataType()) {
                         case BIT:
-                            byte[] bitByte = new byte[1];
-                            try { bitByte[0] = getData().getBIT(0, 0) ? (byte)1 : (byte)0; }
+                            try { ownConn.getOutputStream().write(getData().getBIT(0, 0) ? 1 : 0); }
                             catch(AddressException ex) { throw new IOException(ex); }
-                            ownConn.getOutputStream().write(bitByte, 0, 1);
                             break;
                         case BYTE:
                         case WORD:
@@ -26,12 +26,70 @@
 package org.jpac.plc.s7;
 
 import org.jpac.IndexOutOfRangeException;
+import org.jpac.plc.WrongOrdinaryException;
 
 
 /**
- * Implements the address of an S7 data item inside a data block (DB)
+ * Implements the address of an S7 data item inside a data block (DB) or one of the other memory areas of the plc
+ * (see {@link AREA}).<br>
+ * Timers and counters occupy 2 bytes each and are addressed like an array of words: the byte index of the
+ * timer or counter n is 2 * n.
  */
 public class Address extends org.jpac.plc.Address{
+    /**
+     * memory areas of the plc
+     */
+    public enum AREA {
+        INPUTS   (0x81),   // process image of the inputs (I)
+        OUTPUTS  (0x82),   // process image of the outputs (Q)
+        MARKERS  (0x83),   // markers (M)
+        DB       (0x84),   // data blocks
+        COUNTERS (0x1C),   // counters (C)
+        TIMERS   (0x1D);   // timers (T)
+
+        private final int n;
+        private static final AREA[] VALUES = values();
+
+        AREA(int n){
+            this.n = n;
+        }
+        /**
+         * returns the ordinary of the enum value
+         * @return the ordinary of the enum value
+         */
+        public int toInt(){
+            return this.n;
+        }
+
+        /**
+         * returns a value according to a given ordinary
+         * @param  an ordinary
+         * @throws WrongOrdinaryException, if the given ordinary does not exist
+         * @return the enum value according to the given ordinary
+         */
+        public static AREA getValue(int n)throws WrongOrdinaryException{
+            AREA match = null;
+            for (AREA p : VALUES){
+                if (p.toInt() == n) {
+                    match = p;
+                    break;
+                }
+            }
+            if (match == null){
+                throw new WrongOrdinaryException("invalid ordinary: " + n);
+            }
+            return match;
+        }
+
+        /**
+         * @return true, if the area consists of timers or counters, which occupy 2 bytes each
+         */
+        public boolean isWordArray(){
+            return this == COUNTERS || this == TIMERS;
+        }
+    }
+
+    private AREA area;
     /**
      * denotes, that the declaration of a valid value is not applicable for a part of the address in the given context
      */
@@ -44,23 +102,91 @@ public class Address extends org.jpac.plc.Address{
      * @param size the number of bytes occupied by the data item referenced by this address
      */
     public Address(int db, int byteIndex, int bitIndex, int size) throws IndexOutOfRangeException {
+        this(AREA.DB, db, byteIndex, bitIndex, size);
+    }
+
+    /**
+     * @param area the memory area of the plc. Inputs, outputs, markers, timers or counters
+     * @param byteIndex the byte offset inside the area: Any positive number or {@link Address#NA}, if not applicable inside a given context.
+     *                  Even for timers and counters
+     * @param bitIndex the bit offset inside the byte defined by byteIndex: 0..7 or {@link Address#NA}, if not applicable inside a given context
+     * @param size the number of bytes occupied by the data item referenced by this address. Even for timers and counters
+     */
+    public Address(AREA area, int byteIndex, int bitIndex, int size) throws IndexOutOfRangeException {
+        this(area, NA, byteIndex, bitIndex, size);
+    }
+
+    /**
+     * @param area the memory area of the plc
+     * @param db the number of the datablock (DB), if area is DB: Any positive number or {@link Address#NA}, if not applicable inside a given context
+     * @param byteIndex the byte offset inside the area: Any positive number or {@link Address#NA}, if not applicable inside a given context.
+     *                  Even for timers and counters
+     * @param bitIndex the bit offset inside the byte defined by byteIndex: 0..7 or {@link Address#NA}, if not applicable inside a given context
+     * @param size the number of bytes occupied by the data item referenced by this address. Even for timers and counters
+     */
+    public Address(AREA area, int db, int byteIndex, int bitIndex, int size) throws IndexOutOfRangeException {
         super(byteIndex, bitIndex, size);
         if (db < NA)
-            throw new IndexOutOfRangeException();        
+            throw new IndexOutOfRangeException();
+        if (area.isWordArray() && ((byteIndex != NA && byteIndex % 2 != 0) || bitIndex != NA || size % 2 != 0))
+            //timers and counters are accessed as a whole
+            throw new IndexOutOfRangeException();
+        this.area      = area;
         this.db        = db;
     }
     
     @Override
     public String toString() {
-        String address = (getDb() != NA ? getDb() : "-") + ";" + super.toString();
+        String address = (area != AREA.DB ? area : getDb() != NA ? getDb() : "-") + ";" + super.toString();
         return getClass().getSimpleName() + "(" + address + ")";
     }
 
     /**
-     * @return a string representation of the object as a character separated string (';')
+     * @return a string representation of the object as a character separated string (';'). The first column contains
+     * the number of the data block or, for the other areas, the name of the area (see {@link #valueOf(String)}).
+     * Former versions left the first column empty for the other areas, which made them indistinguishable from data block addresses.
      */
     public String asCSV() {
-        return (getDb() != NA ? getDb() : "") + ";" + super.asCSV();
+        return (area != AREA.DB ? area : getDb() != NA ? getDb() : "") + ";" + super.asCSV();
+    }
+
+    /**
+     * used to reconstruct an address from its character separated representation (see {@link #asCSV()})
+     * @param csv "db;byteIndex;bitIndex;size" or "area;byteIndex;bitIndex;size". Empty columns denote {@link Address#NA}.
+     * Strings written by former versions are read as data block addresses, as before
+     * @return the address
+     * @throws IndexOutOfRangeException thrown, if the string does not represent a valid address
+     */
+    public static Address valueOf(String csv) throws IndexOutOfRangeException {
+        String[] columns = csv.split(";", -1);
+        if (columns.length != 4){
+            throw new IndexOutOfRangeException("invalid address: " + csv);
+        }
+        try{
+            int byteIndex = parseIndex(columns[1]);
+            int bitIndex  = parseIndex(columns[2]);
+            int size      = parseIndex(columns[3]);
+            if (columns[0].length() > 0 && !Character.isDigit(columns[0].charAt(0))){
+                return new Address(AREA.valueOf(columns[0]), byteIndex, bitIndex, size);
+            }
+            return new Address(parseIndex(columns[0]), byteIndex, bitIndex, size);
+        }
+        catch(IllegalArgumentException exc){
+            //covers NumberFormatException and unknown areas
+            throw new IndexOutOfRangeException("invalid address: " + csv);
+        }
+    }
+
+    private static int parseIndex(String column){
+        return column.length() == 0 ? NA : Integer.parseInt(column);
+    }
+
+    public AREA getArea() {
+        return area;
+    }
+
+    public void setArea(AREA area) {
+        this.area = area;
     }
 
     public int getDb() {
@@ -71,11 +197,27 @@ public class Address extends org.jpac.plc.Address{
         this.db = db;
     }
 
+    /**
+     * @return the number of the data block as transmitted to the plc. 0 for areas other than DB
+     */
+    int getEncodedDb() {
+        return area == AREA.DB ? db : 0;
+    }
+
+    /**
+     * @return identifies the block of memory the address refers to (area and data block). Addresses
+     * with different ids never overlap
+     */
+    int getBlockId() {
+        return area.toInt() << 16 | (getEncodedDb() & 0xFFFF);
+    }
+
     @Override
     public Object clone() throws CloneNotSupportedException{
         Address cloned;
         cloned = (Address)super.clone();
+        cloned.setArea(area);
         cloned.setDb(db);
         return cloned;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : BufferPool.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   :
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.s7;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * pool of byte buffers used to encode and decode complete ISO packets.<br>
+ * The capacities of the pooled buffers are powers of two. Heap and direct buffers are pooled separately.
+ */
+class BufferPool {
+    private static final int MINCAPACITYEXPONENT = 10;  //1024 bytes: holds a complete PDU of most plc's
+    private static final int MAXCAPACITYEXPONENT = 17;  //128 kbytes: exceeds the maximum length of an ISO packet
+
+    private static final BufferPool heapBuffers   = new BufferPool(false);
+    private static final BufferPool directBuffers = new BufferPool(true);
+
+    private final boolean                                direct;
+    private final ConcurrentLinkedQueue<ByteBuffer>[]    buckets;
+
+    @SuppressWarnings("unchecked")
+    private BufferPool(boolean direct){
+        this.direct  = direct;
+        this.buckets = new ConcurrentLinkedQueue[MAXCAPACITYEXPONENT - MINCAPACITYEXPONENT + 1];
+        for (int i = 0; i < buckets.length; i++){
+            buckets[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+        }
+    }
+
+    /**
+     * used to acquire a cleared buffer with at least the given capacity
+     * @param minCapacity minimum capacity of the buffer
+     * @param direct true: a direct buffer is returned, false: a heap buffer backed by an array is returned
+     * @return the buffer
+     */
+    static ByteBuffer acquire(int minCapacity, boolean direct){
+        return (direct ? directBuffers : heapBuffers).acquire(minCapacity);
+    }
+
+    /**
+     * used to return a buffer to the pool
+     * @param buffer a buffer acquired by {@link #acquire(int, boolean)}
+     */
+    static void release(ByteBuffer buffer){
+        if (buffer != null){
+            (buffer.isDirect() ? directBuffers : heapBuffers).give(buffer);
+        }
+    }
+
+    private ByteBuffer acquire(int minCapacity){
+        int        index  = bucketIndex(minCapacity);
+        ByteBuffer buffer = buckets[index].poll();
+        if (buffer == null){
+            int capacity = 1 << (index + MINCAPACITYEXPONENT);
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private void give(ByteBuffer buffer){
+        int index = Integer.numberOfTrailingZeros(buffer.capacity()) - MINCAPACITYEXPONENT;
+        if (Integer.bitCount(buffer.capacity()) == 1 && index >= 0 && index < buckets.length){
+            buckets[index].add(buffer);
+        }
+    }
+
+    private int bucketIndex(int minCapacity){
+        int index = 0;
+        while((1 << (index + MINCAPACITYEXPONENT)) < minCapacity){
+            index++;
+        }
+        if (index >= buckets.length){
+            throw new IllegalArgumentException("requested buffer capacity exceeds maximum: " + minCapacity);
+        }
+        return index;
+    }
+}
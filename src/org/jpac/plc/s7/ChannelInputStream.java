@@ -0,0 +1,188 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ChannelInputStream.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   :
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * input stream fed by an {@link IOReactor}.<br>
+ * The reactor appends the bytes received on a non blocking socket channel to the receive buffer of this stream
+ * and wakes up the reading thread immediately. Thus no polling is required to wait for the reply of the plc.
+ */
+class ChannelInputStream extends java.io.InputStream{
+    private static final int RECEIVEBUFFERSIZE = 8192;
+
+    private final SocketChannel channel;
+    private final IOReactor     reactor;
+    private final ByteBuffer    rxBuffer;       //received bytes. Always kept in "fill" mode (position = number of pending bytes)
+    private SelectionKey        key;
+    private boolean             suspended;      //true, if the reception has been suspended because the receive buffer is full
+    private boolean             endOfStream;    //true, if the peer closed the connection or the channel failed
+    private boolean             closed;
+
+    ChannelInputStream(SocketChannel channel, IOReactor reactor){
+        this.channel     = channel;
+        this.reactor     = reactor;
+        this.rxBuffer    = ByteBuffer.allocate(RECEIVEBUFFERSIZE);
+        this.suspended   = false;
+        this.endOfStream = false;
+        this.closed      = false;
+    }
+
+    /**
+     * called by the reactor, if the channel is readable
+     * @param key selection key of the channel
+     * @throws IOException
+     */
+    synchronized void receive(SelectionKey key) throws IOException{
+        this.key = key;
+        int n = channel.read(rxBuffer);
+        if (n < 0){
+            key.cancel();
+            endOfStream = true;
+        }
+        if (!rxBuffer.hasRemaining()){
+            //receive buffer full: stop reading until the consumer has drained it
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            suspended = true;
+        }
+        notifyAll();
+    }
+
+    /**
+     * called by the reactor, if the channel failed
+     */
+    synchronized void abort(){
+        endOfStream = true;
+        notifyAll();
+    }
+
+    /**
+     * used to wait until at least n bytes are available
+     * @param n number of bytes to wait for
+     * @param timeout maximum period of time to wait in milliseconds
+     * @return true, if n bytes are available, false on timeout or if the stream has been closed before
+     * @throws IOException
+     */
+    synchronized boolean awaitAvailable(int n, long timeout) throws IOException{
+        long deadline = System.currentTimeMillis() + timeout;
+        while(rxBuffer.position() < n && !endOfStream && !closed){
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0){
+                return false;
+            }
+            try{
+                wait(remaining);
+            }
+            catch(InterruptedException exc){
+                throw new IOException("interrupted while waiting for data from the plc");
+            }
+        }
+        return rxBuffer.position() >= n;
+    }
+
+    @Override
+    public synchronized int available() throws IOException{
+        return rxBuffer.position();
+    }
+
+    @Override
+    public synchronized int read() throws IOException{
+        if (!awaitData()){
+            return -1;
+        }
+        rxBuffer.flip();
+        int b = rxBuffer.get() & 0xFF;
+        rxBuffer.compact();
+        resumeIfSuspended();
+        return b;
+    }
+
+    @Override
+    public synchronized int read(byte[] buffer, int offset, int len) throws IOException{
+        if (len == 0){
+            return 0;
+        }
+        if (!awaitData()){
+            return -1;
+        }
+        rxBuffer.flip();
+        int n = Math.min(len, rxBuffer.remaining());
+        rxBuffer.get(buffer, offset, n);
+        rxBuffer.compact();
+        resumeIfSuspended();
+        return n;
+    }
+
+    @Override
+    public synchronized long skip(long n) throws IOException{
+        int skipped = (int)Math.min(n, rxBuffer.position());
+        rxBuffer.flip();
+        rxBuffer.position(skipped);
+        rxBuffer.compact();
+        resumeIfSuspended();
+        return skipped;
+    }
+
+    @Override
+    public synchronized void close() throws IOException{
+        closed = true;
+        notifyAll();
+    }
+
+    SocketChannel getChannel(){
+        return channel;
+    }
+
+    /**
+     * blocks until some data is available
+     * @return false, if the end of the stream is reached
+     */
+    private boolean awaitData() throws IOException{
+        while(rxBuffer.position() == 0){
+            if (endOfStream || closed){
+                return false;
+            }
+            try{
+                wait();
+            }
+            catch(InterruptedException exc){
+                throw new IOException("interrupted while waiting for data from the plc");
+            }
+        }
+        return true;
+    }
+
+    private void resumeIfSuspended(){
+        if (suspended && rxBuffer.hasRemaining()){
+            suspended = false;
+            reactor.resume(key);
+        }
+    }
+}
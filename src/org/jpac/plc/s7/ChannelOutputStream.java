@@ -0,0 +1,116 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ChannelOutputStream.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   :
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * output stream writing to a non blocking socket channel.<br>
+ * If the socket send buffer is full, the writing thread waits until the {@link IOReactor} serving the channel reports it writable again.
+ */
+class ChannelOutputStream extends java.io.OutputStream{
+    private static final long WRITETIMEOUT = 10000; //[ms] maximum period of time the socket send buffer may stay full
+
+    private final SocketChannel channel;
+    private final IOReactor     reactor;
+    private final ByteBuffer    singleByte;
+    private boolean             writable;       //true, if the reactor reported the channel writable since the last attempt
+
+    ChannelOutputStream(SocketChannel channel, IOReactor reactor){
+        this.channel    = channel;
+        this.reactor    = reactor;
+        this.singleByte = ByteBuffer.allocate(1);
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException{
+        singleByte.clear();
+        singleByte.put((byte)b);
+        singleByte.flip();
+        write(singleByte);
+    }
+
+    @Override
+    public synchronized void write(byte[] buffer, int offset, int len) throws IOException{
+        write(ByteBuffer.wrap(buffer, offset, len));
+    }
+
+    /**
+     * writes the remaining bytes of the given buffer to the channel
+     * @param buffer
+     * @throws IOException
+     */
+    synchronized void write(ByteBuffer buffer) throws IOException{
+        while(buffer.hasRemaining()){
+            if (channel.write(buffer) == 0){
+                //socket send buffer full: wait until the tcp stack has drained it
+                awaitWritable();
+            }
+        }
+    }
+
+    /**
+     * called by the reactor, if the channel is able to take further bytes or if it failed
+     */
+    synchronized void writable(){
+        writable = true;
+        notifyAll();
+    }
+
+    @Override
+    public void close() throws IOException{
+        channel.close();
+        synchronized(this){
+            notifyAll();
+        }
+    }
+
+    SocketChannel getChannel(){
+        return channel;
+    }
+
+    private void awaitWritable() throws IOException{
+        writable = false;
+        reactor.awaitWritable(this);
+        long deadline = System.currentTimeMillis() + WRITETIMEOUT;
+        while(!writable && channel.isOpen()){
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0){
+                throw new SocketTimeoutException("timeout while sending data to the plc");
+            }
+            try{
+                wait(remaining);
+            }
+            catch(InterruptedException exc){
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while sending data to the plc", exc);
+            }
+        }
+    }
+}
@@ -26,7 +26,10 @@
 package org.jpac.plc.s7;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import org.apache.log4j.Logger;
+import org.jpac.plc.util.ConnectionStatistics;
+import org.jpac.plc.util.LatencyHistogram;
 
 /**
  * implements some common features and concepts used by several transactional commands
@@ -97,6 +100,7 @@ public abstract class Command {
                 conn.getInputStream().readWORD();//spare
                 int rxTransactionNumber  = conn.getInputStream().readWORD();
                 if (isDebug()) Log.debug("     transaction number " + rxTransactionNumber);
+                setTransactionNumber(rxTransactionNumber);
                 int rxParameterLength = conn.getInputStream().readWORD();
                 if (isDebug()) Log.debug("     parameter length " + rxParameterLength);
                 int rxDataLength = conn.getInputStream().readWORD();
@@ -269,6 +273,11 @@ public abstract class Command {
 
     Connection               conn;    //connection to the PLC
     PDU                      pdu;
+    int                      pendingTransactionNumber;//transaction number of the request sent last
+    long                     sentAt;               //point in time the request has been sent [ns]
+    boolean                  acknowledged;         //true, if the acknowledgement of the request sent last has been received
+    LatencyHistogram         latency;              //histogram of the command type inside the statistics of the connection
+    ConnectionStatistics     latencyStatistics;    //statistics the histogram belongs to
 
     public Command(Connection conn){
         this.conn = conn;
@@ -281,22 +290,75 @@ public abstract class Command {
      */
     public void transact() throws IOException{
         if (isDebug()) Log.debug("beginning " + getClass().getName() + ".transact() ...");
+        send();
+        //wait for / receive response from the PLC
+        try{
+            conn.readISOHeader();
+        }
+        catch(InterruptedIOException exc){
+            conn.getStatistics().timedOut();
+            conn.getRttEstimator().timedOut();
+            throw exc;
+        }
+        receive();
+        if (isDebug()) Log.debug("ending " + getClass().getName() + ".transact()");
+    }
+
+    /**
+     * used to send the request PDU to the plc without waiting for its acknowledgement.
+     * The transaction number assigned to the request is available through {@link #getPendingTransactionNumber()} afterwards
+     * @throws IOException
+     */
+    void send() throws IOException{
+        acknowledged = false;
+        sentAt       = System.nanoTime();
+        int frameLength = conn.getISOHeaderLength() + conn.getPrologLength() + pdu.getSendLength();
         conn.writeISOHeader(pdu.getSendLength() + conn.getPrologLength());
         conn.writeProlog();
         pdu.write(conn);
         //store actual transactionnumber for comparison with the received one
-        int actualTransactionNumber = pdu.header.getTransactionNumber();
-        //force all bytes to be written to the PLC
+        pendingTransactionNumber = pdu.header.getTransactionNumber();
+        //check the encoded frame against the apriori calculated length
+        int encodedLength = conn.getOutputStream().getFrameLength();
+        if (encodedLength != frameLength){
+            conn.getOutputStream().discardFrame();
+            throw new IOException("inconsistent frame length: encoded: " + encodedLength + " expected: " + frameLength);
+        }
+        //send the whole frame to the PLC
         conn.getOutputStream().flush();
-        //wait for / receive response from the PLC
-        int len = conn.readISOHeader();
+        ConnectionStatistics statistics = conn.getStatistics();
+        statistics.addBytesOut(frameLength);
+        //the reply of a read job fills the pdu, not the request
+        statistics.addPdu(Math.max(pdu.getSendLength(), pdu.getReceiveLength()), conn.getMaxPDULength());
+    }
+
+    /**
+     * used to decode the acknowledgement of the plc. The ISO header of the acknowledgement must have been read before.
+     * @throws IOException
+     */
+    void receive() throws IOException{
         conn.readProlog();
         pdu.read(conn);
         //check consistency of the transaction number
-        if (pdu.header.getTransactionNumber() != actualTransactionNumber){
-            throw new IOException("inconsistent transaction number: transmitted : " + actualTransactionNumber + " received : " + pdu.header.getTransactionNumber());
+        if (pdu.header.getTransactionNumber() != pendingTransactionNumber){
+            throw new IOException("inconsistent transaction number: transmitted : " + pendingTransactionNumber + " received : " + pdu.header.getTransactionNumber());
         }
-        if (isDebug()) Log.debug("ending " + getClass().getName() + ".transact()");
+        if (latencyStatistics != conn.getStatistics()){
+            //first transaction or the command has been passed to another connection
+            latencyStatistics = conn.getStatistics();
+            latency           = latencyStatistics.getHistogram(getClass().getSimpleName());
+        }
+        long rtt = System.nanoTime() - sentAt;
+        latency.record(rtt);
+        latencyStatistics.getRttEstimator().sample(rtt);
+        acknowledged = true;
+    }
+
+    /**
+     * @return the transaction number of the request sent last
+     */
+    int getPendingTransactionNumber(){
+        return pendingTransactionNumber;
     }
 
     PDU getPDU(){
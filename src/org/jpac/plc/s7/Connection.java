@@ -26,14 +26,29 @@ package org.jpac.plc.s7;
 
 import java.net.*;
 import java.io.*;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 import org.jpac.IndexOutOfRangeException;
 import org.jpac.plc.Address;
 import org.jpac.plc.Data;
 import org.jpac.plc.ReadRequest;
 import org.jpac.plc.Request;
+import org.jpac.plc.TooManyRequestsException;
 import org.jpac.plc.ValueOutOfRangeException;
 import org.jpac.plc.WriteRequest;
+import org.jpac.plc.util.ConnectionStatistics;
+import org.jpac.plc.util.RttEstimator;
+import org.jpac.plc.util.PriorityLanes;
+import org.jpac.plc.util.PriorityLanes.PRIORITY;
+import org.jpac.plc.util.WireTrace;
 
 /**
  * represents a TCP/IP connection to a S7 plc. The connection uses the ISO protocol.
@@ -42,20 +57,56 @@ import org.jpac.plc.WriteRequest;
 public class Connection extends org.jpac.plc.Connection{
     static Logger Log = Logger.getLogger("jpac.plc.s7");
 
+    public  static final long DEFAULTMINRECONNECTDELAY = 100;  //[ms] delay of the first reconnect attempt
+    public  static final long DEFAULTMAXRECONNECTDELAY = 2000; //[ms] upper bound of the delay between two reconnect attempts
+
+    /**
+     * transport used to exchange data with the plc
+     */
+    public enum TRANSPORT {
+        SOCKETSTREAM,  //blocking socket streams. The reception of replies is polled
+        SELECTOR;      //non blocking socket channel served by a shared selector (see IOReactor)
+    }
+
     private static final int ISOHEADERLENGTH       = 4;    //length of the ISO header
     private static final int PROLOGLENGTH          = 3;    //length of the prolog
     private static final int VRSN                  = 0x03; //value of the first byte of the ISO header (version of the protocol)
     private static final int PLCPORT               = 102;  //S7 PLC's communicate ISO over TCP on this port
     private static final int SOMEOVERHEAD          = 32;   //TODO get exact value
     private static final int SIMPDULENGTH          = 232;  //assumed pdu length for test purposes only
+    private static final int REQUESTEDPENDINGJOBS  = 8;    //number of concurrently pending jobs requested on PDU negotiation
+    private static final int TRANSACTIONNUMBERINDEX= 7;    //index of the transaction number inside an ISO packet (prolog + 4)
     private InputStream      in;
     private OutputStream     out;
     private Socket           socket;
+    private SocketChannel    channel;
+    private TRANSPORT        transport;
+    private boolean          directBuffers;
     private int              rack;
     private int              slot;
     private int              maxPDULength;
-
-    private static int       transactionNumber; //used to supply an unique transaction number to every request. Might be shared amongst several connections
+    private int              maxPendingJobs;
+    private Command[]        pending;           //commands awaiting their acknowledgement, retained to avoid allocations on every transaction
+    private Overtaking[]     pendingOwners;     //urgent transactions the pending commands belong to, null for the commands of the transaction in progress
+    private WireTrace        wireTrace;         //records the frames interchanged with the plc, if not null
+    private ConnectionStatistics statistics;    //latencies and throughput of the connection
+    private byte[]           isoHeader = new byte[ISOHEADERLENGTH];//ISO header of the packet received last, used for tracing
+    private final ThreadPoolExecutor asyncExecutor;  //transacts the asynchronous transactions one after another
+    private final RequestMultiplexer multiplexer;    //shares the round trips amongst concurrent callers
+    private final PriorityLanes      lanes;          //arbitrates concurrent transactions by priority
+    private final ArrayList<Overtaking> overtaking;  //urgent transactions injected into the transaction in progress
+    private boolean                  acceptsOvertaking; //true, while a transaction is in progress. Guarded by overtaking
+
+    private volatile boolean autoReconnect;     //true: the connection is reestablished in the background, if it fails
+    private volatile boolean reconnecting;      //true: the connection failed and is being reestablished
+    private volatile IOException lastError;     //error, which caused the connection to fail last
+    private boolean          closed;
+    private long             minReconnectDelay = DEFAULTMINRECONNECTDELAY;
+    private long             maxReconnectDelay = DEFAULTMAXRECONNECTDELAY;
+
+    private static final Random   jitter = new Random();
+
+    private int              transactionNumber; //used to supply an unique transaction number to every request of this connection. Guarded by the connection
     
     private ReceiveTransaction   receiveTransaction;
     private TransmitTransaction  transmitTransaction;
@@ -82,10 +133,40 @@ public class Connection extends org.jpac.plc.Connection{
      * @throws IOException
      */
     public Connection(String host, int rack, int slot, boolean debug, boolean autoConnect) throws IOException{
+        this(host, rack, slot, debug, autoConnect, TRANSPORT.SOCKETSTREAM);
+    }
+
+    /**
+     * an instance of Connection is created and the connection to given plc is initiated immediately
+     * @param host ip address of the plc (e.g. 192.168.0.1)
+     * @param rack rack id (in most cases '0')
+     * @param slot slot id (in most cases '2')
+     * @param debug switch on/off generation of debug information
+     * @param autoConnect true: the Connection is automatically established on construction
+     *                    false: no connect attempt is done (for standalone test purposes only)
+     * @param transport the transport used to exchange data with the plc (see {@link TRANSPORT})
+     * @throws IOException
+     */
+    public Connection(String host, int rack, int slot, boolean debug, boolean autoConnect, TRANSPORT transport) throws IOException{
         super(host, PLCPORT, debug, autoConnect);
         this.rack         = rack;
         this.slot         = slot;
+        this.transport    = transport;
         this.maxPDULength = 0;
+        this.maxPendingJobs = 1;
+        this.statistics   = new ConnectionStatistics("s7 " + host + " " + rack + "/" + slot, new RttEstimator());
+        //the thread is started on the first asynchronous transaction and terminates, when idle
+        this.asyncExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+            public Thread newThread(Runnable runnable){
+                Thread thread = new Thread(runnable, "jpac.plc.s7.async-" + Connection.this.host);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.asyncExecutor.allowCoreThreadTimeOut(true);
+        this.multiplexer   = new RequestMultiplexer(this);
+        this.lanes         = new PriorityLanes(statistics);
+        this.overtaking    = new ArrayList<Overtaking>();
         if (autoConnect){
             try{
                 initialize();
@@ -104,21 +185,52 @@ public class Connection extends org.jpac.plc.Connection{
      *  used to initialize the connection.
      * @throws IOException
      */
-    protected synchronized void initialize() throws IOException{
+    protected void initialize() throws IOException{
         //try to establish a connection to a emScon controller as a client
-        // Create an unbound socket
-        socket = new Socket();
         // This method will block no more than timeoutMs.
         // If the timeout occurs, SocketTimeoutException is thrown.
         int timeoutMs = 10000;   // 10 seconds
-        if (isDebug()) Log.debug("try to connect to PLC ..." + host + " on port " + port);
-        socket.connect(new InetSocketAddress(host,port), timeoutMs);
-        initPlcStreams();
-        openISOConnection();
-        NegotiatePDULength negCmd = new NegotiatePDULength(this);
-        negCmd.transact();
-        setMaxPDULength(negCmd.getMaxPDULength());
-        if (isDebug()) Log.info("connected to PLC. Max. PDU length : " + getMaxPDULength());
+        if (isDebug()) Log.debug("try to connect to PLC ..." + host + " on port " + port + " (transport: " + transport + ")");
+        //the TCP connect is done without holding the lock of the connection: close() and the
+        //accessors of the connection must not be blocked by an unreachable plc
+        SocketChannel newChannel = null;
+        Socket        newSocket;
+        if (transport == TRANSPORT.SELECTOR){
+            newChannel = SocketChannel.open();
+            newSocket  = newChannel.socket();
+        }
+        else{
+            // Create an unbound socket
+            newSocket = new Socket();
+        }
+        try{
+            newSocket.connect(new InetSocketAddress(host,port), timeoutMs);
+            if (newChannel != null){
+                newChannel.configureBlocking(false);
+            }
+            //every ISO packet is sent by a single write: don't let Nagle's algorithm delay it
+            newSocket.setTcpNoDelay(true);
+        }
+        catch(IOException exc){
+            try{newSocket.close();}catch(IOException ex){/*not connected anyway*/}
+            throw exc;
+        }
+        synchronized(this){
+            if (closed){
+                newSocket.close();
+                throw new IOException("connection closed while connecting to the plc");
+            }
+            channel = newChannel;
+            socket  = newSocket;
+            initPlcStreams();
+            openISOConnection();
+            NegotiatePDULength negCmd = new NegotiatePDULength(this, REQUESTEDPENDINGJOBS);
+            negCmd.transact();
+            setMaxPDULength(negCmd.getMaxPDULength());
+            maxPendingJobs = negCmd.getMaxPendingJobs();
+            statistics.register();
+            if (isDebug()) Log.info("connected to PLC. Max. PDU length : " + getMaxPDULength() + " max. pending jobs : " + getMaxPendingJobs());
+        }
     }
 
 
@@ -127,12 +239,45 @@ public class Connection extends org.jpac.plc.Connection{
      */
     private void initPlcStreams() throws IOException {
         //initialize input and output streams
-        if (isDebug()) Log.debug("create socket input stream");
-        in  = new InputStream(socket.getInputStream());
-        if (isDebug()) Log.debug("create socket output stream");
-        out = new OutputStream(socket.getOutputStream());
+        if (transport == TRANSPORT.SELECTOR){
+            if (isDebug()) Log.debug("create channel input stream");
+            IOReactor reactor = IOReactor.getInstance();
+            ChannelInputStream channelInputStream = new ChannelInputStream(channel, reactor);
+            reactor.register(channelInputStream);
+            in  = new InputStream(channelInputStream);
+            if (isDebug()) Log.debug("create channel output stream");
+            out = new OutputStream(new ChannelOutputStream(channel, reactor), directBuffers);
+        }
+        else{
+            if (isDebug()) Log.debug("create socket input stream");
+            in  = new InputStream(socket.getInputStream());
+            if (isDebug()) Log.debug("create socket output stream");
+            out = new OutputStream(socket.getOutputStream());
+        }
         in.setDebug(isDebug());
+        in.setRttEstimator(statistics.getRttEstimator());
         out.setDebug(isDebug());
+        out.setWireTrace(wireTrace);
+        connected = true;
+    }
+
+    /**
+     * used to operate a connection constructed without autoConnect on arbitrary streams instead of a socket
+     * (e.g. an in memory stream pair for benchmarks). No ISO connection is opened and no PDU length is negotiated.
+     * @param in stream supplying the replies of the plc
+     * @param out stream receiving the requests
+     * @param maxPDULength PDU length assumed for the connection
+     * @param maxPendingJobs number of jobs, which may be pending concurrently
+     */
+    protected synchronized void attachStreams(java.io.InputStream in, java.io.OutputStream out, int maxPDULength, int maxPendingJobs){
+        this.in  = new InputStream(in);
+        this.out = new OutputStream(out);
+        this.in.setDebug(isDebug());
+        this.in.setRttEstimator(statistics.getRttEstimator());
+        this.out.setDebug(isDebug());
+        this.out.setWireTrace(wireTrace);
+        setMaxPDULength(maxPDULength);
+        this.maxPendingJobs = maxPendingJobs;
         connected = true;
     }
 
@@ -140,7 +285,9 @@ public class Connection extends org.jpac.plc.Connection{
      * use to close an existing connection.
      */
     public synchronized void close() throws IOException{
+        this.closed    = true;
         this.connected = false;
+        statistics.unregister();
         in.close();
         this.in.setOperational(false);
         out.close();
@@ -177,6 +324,26 @@ public class Connection extends org.jpac.plc.Connection{
         return socket;
     }
     
+    /**
+     * @return the transport used to exchange data with the plc
+     */
+    public TRANSPORT getTransport(){
+        return transport;
+    }
+
+    /**
+     * used to select direct byte buffers for the encoding of the frames sent to the plc.
+     * Only applicable for the {@link TRANSPORT#SELECTOR} transport. Takes effect on the next connect.
+     * @param directBuffers true: frames are encoded into direct buffers
+     */
+    public void setDirectBuffers(boolean directBuffers){
+        this.directBuffers = directBuffers && transport == TRANSPORT.SELECTOR;
+    }
+
+    public boolean isDirectBuffers(){
+        return directBuffers;
+    }
+
     /**
      * Setter for property serverSocket.
      * @param serverSocket New value of property serverSocket.
@@ -199,8 +366,15 @@ public class Connection extends org.jpac.plc.Connection{
             if (isDebug()) Log.debug(" ISO header written");
     }
 
+    /**
+     * reads the ISO header of the next packet sent by the plc and receives the remainder of the packet
+     * in one go. The contents of the packet are decoded from the packet buffer of the input stream afterwards.
+     * @return the length of the packet including the ISO header
+     * @throws IOException
+     */
     public int readISOHeader() throws IOException {
             if (isDebug()) Log.debug(" reading ISO header ... ");
+            in.endPacket();
             int vrsn = in.read();                          //always VRSN ??
             if (isDebug()) Log.debug("    VRSN : " + vrsn);
             int dummy = in.read();                         //always 0x00 ??
@@ -211,6 +385,15 @@ public class Connection extends org.jpac.plc.Connection{
             if (vrsn != VRSN){
                 throw new IOException("attempt to connect aborted by PLC");
             }
+            in.readPacket(len - ISOHEADERLENGTH);
+            statistics.addBytesIn(len);
+            if (wireTrace != null){
+                isoHeader[0] = (byte)vrsn;
+                isoHeader[1] = (byte)dummy;
+                isoHeader[2] = (byte)(len >> 8);
+                isoHeader[3] = (byte)len;
+                wireTrace.record(WireTrace.PROTOCOL.S7, WireTrace.DIRECTION.RECEIVED, isoHeader, ISOHEADERLENGTH, in.getPacket());
+            }
             if (isDebug()) Log.debug(" ISO header read");
             return len;
     }
@@ -236,6 +419,10 @@ public class Connection extends org.jpac.plc.Connection{
         return PROLOGLENGTH;
     }
 
+    public int getISOHeaderLength(){
+        return ISOHEADERLENGTH;
+    }
+
     private void openISOConnection() throws IOException {
         final int RACKSLOTLEN = 2;
         if (isDebug()) Log.debug("open ISO over TCP connection ...");
@@ -249,16 +436,51 @@ public class Connection extends org.jpac.plc.Connection{
         out.write(rack+1);
         out.write(slot);
         out.write(connectPostfix);
+        out.flush();
         if (isDebug()) Log.debug("  open request written");
 
         readISOHeader();
         in.clear();
         if (isDebug()) Log.debug("  open request accepted by PLC.");
     }
+    /**
+     * @return a transaction number, which is unique among the requests pending on this connection.
+     * Acknowledgements are matched per connection, so the numbers of several connections may overlap
+     */
     public synchronized int getUniqueTransactionNumber(){
         return transactionNumber = ++transactionNumber < 0x7FFF ? transactionNumber : 0;
     }
 
+    /**
+     * used to record the ISO packets interchanged with the plc. Recording is cheap enough to be left enabled permanently.
+     * @param wireTrace trace the packets are recorded in. May be shared by several connections. null: no recording
+     */
+    public void setWireTrace(WireTrace wireTrace){
+        this.wireTrace = wireTrace;
+        if (out != null){
+            out.setWireTrace(wireTrace);
+        }
+    }
+
+    public WireTrace getWireTrace(){
+        return wireTrace;
+    }
+
+    /**
+     * @return the latencies per command type and the throughput of the connection. Registered as MBean, once the connection is established
+     */
+    public ConnectionStatistics getStatistics(){
+        return statistics;
+    }
+
+    /**
+     * @return the estimator of the period of time to wait for the acknowledgements of the plc. It is fed with the round trip
+     * times of the commands transacted and exposed as MBean together with the statistics
+     */
+    public RttEstimator getRttEstimator(){
+        return statistics.getRttEstimator();
+    }
+
     /**
      * @return the maximum PDU length negotiated by the plc
      */
@@ -266,6 +488,342 @@ public class Connection extends org.jpac.plc.Connection{
         return maxPDULength;
     }
 
+    /**
+     * @return the number of jobs, which may be pending concurrently as negotiated with the plc
+     */
+    public int getMaxPendingJobs() {
+        return maxPendingJobs;
+    }
+
+    /**
+     * used to transact a list of commands. Up to {@link #getMaxPendingJobs()} commands are sent to the plc
+     * without waiting for the respective acknowledgements. The acknowledgements are assigned to their commands
+     * by the transaction number, so the plc may process the jobs in any order.
+     * Whenever an acknowledgement has been received, the next command of the list is sent.
+     * Transactions of several threads are serialized by priority (see {@link #transact(List, PRIORITY)}).<br>
+     * If auto reconnect is enabled (see {@link #setAutoReconnect(boolean)}), a failing transaction causes the connection
+     * to be reestablished in the background. Meanwhile transactions fail immediately.
+     * @param commands list of commands to be transacted. Every command must be a distinct instance.
+     * @throws IOException
+     */
+    public void transact(List<? extends Command> commands) throws IOException{
+        transact(commands, PRIORITY.NORMAL);
+    }
+
+    /**
+     * used to transact a list of commands with the given priority (see {@link #transact(List)}).<br>
+     * Concurrent transactions are served by priority, the lower priorities being protected from starvation by aging
+     * (see {@link PriorityLanes}). URGENT commands do not wait for the transaction in progress to be completed:
+     * they overtake its remaining commands and are sent as soon as a slot of the pipeline is free.
+     * @param commands list of commands to be transacted. Every command must be a distinct instance.
+     * @param priority priority class of the commands
+     * @throws IOException
+     */
+    public void transact(List<? extends Command> commands, PRIORITY priority) throws IOException{
+        if (reconnecting){
+            throw new IOException("connection to plc lost, reconnecting: " + lastError.getMessage());
+        }
+        if (priority == PRIORITY.URGENT && overtake(commands)){
+            return;
+        }
+        long enteredAt = lanes.enter(priority);
+        try{
+            synchronized(this){
+                if (reconnecting){
+                    throw new IOException("connection to plc lost, reconnecting: " + lastError.getMessage());
+                }
+                try{
+                    transactCommands(commands);
+                }
+                catch(IOException exc){
+                    if (autoReconnect){
+                        connectionLost(exc);
+                    }
+                    throw exc;
+                }
+            }
+        }
+        finally{
+            lanes.leave(priority, enteredAt);
+        }
+    }
+
+    /**
+     * @return the lanes arbitrating concurrent transactions. Used to adjust the aging limits and to access the latencies per lane
+     */
+    public PriorityLanes getPriorityLanes(){
+        return lanes;
+    }
+
+    /**
+     * used to inject urgent commands into the transaction in progress
+     * @return true, if the commands have been transacted. false, if there is no transaction in progress
+     */
+    private boolean overtake(List<? extends Command> commands) throws IOException{
+        long       enteredAt = System.nanoTime();
+        Overtaking urgent;
+        if (commands.isEmpty()){
+            return true;
+        }
+        synchronized(overtaking){
+            if (!acceptsOvertaking){
+                return false;
+            }
+            urgent = new Overtaking(commands);
+            overtaking.add(urgent);
+        }
+        urgent.await();
+        lanes.record(PRIORITY.URGENT, enteredAt);
+        return true;
+    }
+
+    /**
+     * @return an urgent transaction having commands left to be sent, null if none
+     */
+    private Overtaking getOvertaking(){
+        synchronized(overtaking){
+            for (int i = 0; i < overtaking.size(); i++){
+                if (overtaking.get(i).hasNext()){
+                    return overtaking.get(i);
+                }
+            }
+            return null;
+        }
+    }
+
+    private void transactCommands(List<? extends Command> commands) throws IOException{
+        int maxPending = maxPendingJobs;
+        if (pending == null || pending.length < maxPending){
+            pending       = new Command[maxPending];
+            pendingOwners = new Overtaking[maxPending];
+        }
+        synchronized(overtaking){
+            acceptsOvertaking = true;
+        }
+        try{
+            transactCommands(commands, maxPending);
+        }
+        catch(IOException exc){
+            synchronized(overtaking){
+                acceptsOvertaking = false;
+                for (Overtaking urgent: overtaking){
+                    urgent.failed(exc);
+                }
+                overtaking.clear();
+            }
+            Arrays.fill(pending, null);
+            Arrays.fill(pendingOwners, null);
+            throw exc;
+        }
+    }
+
+    private void transactCommands(List<? extends Command> commands, int maxPending) throws IOException{
+        int npending = 0;
+        int next     = 0;
+        while(true){
+            //fill up the pipeline, urgent commands first
+            while(npending < maxPending){
+                Overtaking owner = getOvertaking();
+                Command    cmd;
+                if (owner != null){
+                    cmd = owner.next();
+                }
+                else if (next < commands.size()){
+                    cmd = commands.get(next++);
+                }
+                else{
+                    break;
+                }
+                cmd.send();
+                pendingOwners[npending] = owner;
+                pending[npending++]     = cmd;
+            }
+            if (npending == 0){
+                synchronized(overtaking){
+                    if (overtaking.isEmpty()){
+                        acceptsOvertaking = false;
+                        return;
+                    }
+                }
+                continue;
+            }
+            //wait for the next acknowledgement and assign it to its command
+            try{
+                readISOHeader();
+            }
+            catch(InterruptedIOException exc){
+                statistics.timedOut();
+                statistics.getRttEstimator().timedOut();
+                throw exc;
+            }
+            int transactionNumber = in.peekWORD(TRANSACTIONNUMBERINDEX);
+            int i = 0;
+            while(i < npending && pending[i].getPendingTransactionNumber() != transactionNumber){
+                i++;
+            }
+            if (i == npending){
+                throw new IOException("received acknowledgement for unknown transaction number: " + transactionNumber);
+            }
+            Command    cmd   = pending[i];
+            Overtaking owner = pendingOwners[i];
+            pending[i]       = pending[--npending];
+            pendingOwners[i] = pendingOwners[npending];
+            pending[npending]       = null;
+            pendingOwners[npending] = null;
+            cmd.receive();
+            if (owner != null && owner.received()){
+                synchronized(overtaking){
+                    overtaking.remove(owner);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the multiplexer used by several threads to share the round trips of this connection (see {@link RequestMultiplexer})
+     */
+    public RequestMultiplexer getRequestMultiplexer(){
+        return multiplexer;
+    }
+
+    /**
+     * used to let the connection reestablish itself in the background, after a transaction failed.
+     * The requests of the transactions and the PDU length negotiated last are retained, so the transactions
+     * resume as soon as the plc is reachable again. While the connection is being reestablished, transactions fail immediately.<br>
+     * The reconnect attempts are spaced by an exponential backoff (see {@link #setReconnectDelays(long, long)}).
+     * Every delay is shortened by a random amount of up to 50 percent, so that several connections
+     * failing at once do not hit the plc simultaneously.<br>
+     * Not applicable to {@link ConnectionGroup}s, which reestablish their connections anyway.
+     * @param autoReconnect true: auto reconnect enabled
+     */
+    public void setAutoReconnect(boolean autoReconnect){
+        this.autoReconnect = autoReconnect;
+    }
+
+    public boolean isAutoReconnect(){
+        return autoReconnect;
+    }
+
+    /**
+     * @param minReconnectDelay delay of the first reconnect attempt after the connection failed [ms]. The delay is doubled on every failed attempt
+     * @param maxReconnectDelay upper bound of the delay [ms]. Bounds the period of time, until the transactions resume, after the plc is reachable again
+     */
+    public synchronized void setReconnectDelays(long minReconnectDelay, long maxReconnectDelay){
+        this.minReconnectDelay = minReconnectDelay;
+        this.maxReconnectDelay = Math.max(minReconnectDelay, maxReconnectDelay);
+    }
+
+    /**
+     * @return true, if the connection failed and is being reestablished in the background
+     */
+    public boolean isReconnecting(){
+        return reconnecting;
+    }
+
+    /**
+     * @return the error, which caused the connection to fail last, null if none
+     */
+    public IOException getLastError(){
+        return lastError;
+    }
+
+    /**
+     * used to drop a failed connection and to start reestablishing it
+     */
+    private void connectionLost(IOException exc){
+        if (reconnecting || closed){
+            return;
+        }
+        Log.error("connection to PLC " + host + " lost, reconnecting in the background: " + exc.getMessage());
+        lastError    = exc;
+        reconnecting = true;
+        release();
+        //every connection reconnects in a thread of its own, which terminates, when the connection is reestablished.
+        //Thus, a plc not reachable for a long time cannot delay the reconnects of other connections
+        Thread reconnector = new Thread(new Runnable(){
+            public void run(){
+                reconnect();
+            }
+        }, "jpac.plc.s7.reconnect-" + host);
+        reconnector.setDaemon(true);
+        reconnector.start();
+    }
+
+    private void reconnect(){
+        long delay;
+        synchronized(this){
+            delay = minReconnectDelay;
+        }
+        while(true){
+            try{
+                Thread.sleep(delay - (long)(jitter.nextDouble() * delay / 2));
+            }
+            catch(InterruptedException exc){
+                reconnecting = false;
+                return;
+            }
+            synchronized(this){
+                if (closed || !autoReconnect){
+                    reconnecting = false;
+                    return;
+                }
+            }
+            try{
+                //the PDU length negotiated last is retained until renegotiated here
+                initialize();
+                reconnecting = false;
+                statistics.reconnected();
+                Log.info("connection to PLC " + host + " reestablished");
+                return;
+            }
+            catch(IOException exc){
+                lastError = exc;
+                synchronized(this){
+                    release();
+                }
+            }
+            synchronized(this){
+                delay = Math.min(2 * delay, maxReconnectDelay);
+            }
+        }
+    }
+
+    /**
+     * used to close the streams and the socket of a failed connection quietly
+     */
+    private void release(){
+        connected = false;
+        try{
+            if (in != null){
+                in.close();
+                in.setOperational(false);
+            }
+        }
+        catch(IOException exc){/*connection is dropped anyway*/}
+        try{
+            if (out != null){
+                out.close();
+                out.setOperational(false);
+            }
+        }
+        catch(IOException exc){/*connection is dropped anyway*/}
+        try{
+            if (socket != null){
+                socket.close();
+            }
+        }
+        catch(IOException exc){/*connection is dropped anyway*/}
+    }
+
+    /**
+     * used to transact a transaction in the background. The transactions are transacted one after another
+     * in the order of their submission.
+     * @param transaction the pending transaction
+     */
+    void transactAsynchronously(TransactionFuture<?> transaction){
+        asyncExecutor.execute(transaction);
+    }
+
     /**
      * used to set the maximum PDU length
      * @param a positive number
@@ -284,6 +842,74 @@ public class Connection extends org.jpac.plc.Connection{
         return new org.jpac.plc.s7.WriteRequest(datatype, address, dataOffset, data);
     }
     
+    /**
+     * used to read an arbitrary range of a data block. The range is split into PDU sized chunks,
+     * which are transacted concurrently as far as supported by the plc.
+     * @param db the data block
+     * @param byteAddress byte address of the first byte of the range
+     * @param length length of the range in bytes
+     * @return a Data object containing the range
+     * @throws IOException
+     * @throws ValueOutOfRangeException
+     * @throws IndexOutOfRangeException
+     */
+    public Data readBlock(int db, int byteAddress, int length) throws IOException, ValueOutOfRangeException, IndexOutOfRangeException{
+        Data data = generateDataObject(length);
+        readBlock(db, byteAddress, length, data, 0);
+        return data;
+    }
+
+    /**
+     * used to read an arbitrary range of a data block into a given Data object. The range is split into PDU sized chunks,
+     * which are transacted concurrently as far as supported by the plc.
+     * @param db the data block
+     * @param byteAddress byte address of the first byte of the range
+     * @param length length of the range in bytes
+     * @param data Data object the range is stored in
+     * @param dataOffset offset of the range inside data
+     * @throws IOException
+     * @throws ValueOutOfRangeException
+     * @throws IndexOutOfRangeException
+     */
+    public void readBlock(int db, int byteAddress, int length, Data data, int dataOffset) throws IOException, ValueOutOfRangeException, IndexOutOfRangeException{
+        ArrayList<org.jpac.plc.s7.ReadRequest> requests = new ArrayList<org.jpac.plc.s7.ReadRequest>(1);
+        requests.add(new org.jpac.plc.s7.ReadRequest(Request.DATATYPE.BYTE, db, byteAddress, Address.NA, dataOffset, length, data));
+        try{
+            transact(new ReadPlanner(this).plan(requests));
+        }
+        catch(TooManyRequestsException exc){
+            throw new IOException(exc.getMessage(), exc);
+        }
+    }
+
+    /**
+     * used to write an arbitrary range of a data block. The range is split into PDU sized chunks,
+     * which are transacted concurrently as far as supported by the plc.
+     * @param db the data block
+     * @param byteAddress byte address of the first byte of the range
+     * @param length length of the range in bytes
+     * @param data Data object containing the range
+     * @param dataOffset offset of the range inside data
+     * @throws IOException
+     * @throws ValueOutOfRangeException
+     * @throws IndexOutOfRangeException
+     */
+    public void writeBlock(int db, int byteAddress, int length, Data data, int dataOffset) throws IOException, ValueOutOfRangeException, IndexOutOfRangeException{
+        ArrayList<WriteMultipleData> jobs = new ArrayList<WriteMultipleData>();
+        int chunkLength = new WriteMultipleData(this).getMaxItemLength();
+        try{
+            for (int offset = 0; offset < length; offset += chunkLength){
+                WriteMultipleData job = new WriteMultipleData(this);
+                job.addRequest(new org.jpac.plc.s7.WriteRequest(Request.DATATYPE.BYTE, db, byteAddress + offset, Address.NA, dataOffset + offset, Math.min(chunkLength, length - offset), data));
+                jobs.add(job);
+            }
+        }
+        catch(TooManyRequestsException exc){
+            throw new IOException(exc.getMessage(), exc);
+        }
+        transact(jobs);
+    }
+
     @Override
     public void write(int maxLength) {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -329,4 +955,59 @@ public class Connection extends org.jpac.plc.Connection{
     public Data generateDataObject(int size) {
         return new org.jpac.plc.s7.Data(new byte[size]);
     }
+
+    /**
+     * urgent transaction injected into the transaction in progress
+     */
+    private static class Overtaking{
+        private final List<? extends Command> commands;
+        private int                           next;     //index of the next command to be sent
+        private int                           received; //number of commands received
+        private boolean                       done;
+        private IOException                   error;
+
+        Overtaking(List<? extends Command> commands){
+            this.commands = commands;
+        }
+
+        boolean hasNext(){
+            return next < commands.size();
+        }
+
+        Command next(){
+            return commands.get(next++);
+        }
+
+        /**
+         * @return true, if all commands have been received
+         */
+        synchronized boolean received(){
+            received++;
+            done = received == commands.size();
+            if (done){
+                notifyAll();
+            }
+            return done;
+        }
+
+        synchronized void failed(IOException exc){
+            error = exc;
+            done  = true;
+            notifyAll();
+        }
+
+        synchronized void await() throws IOException{
+            while(!done){
+                try{
+                    wait();
+                }
+                catch(InterruptedException exc){
+                    throw new InterruptedIOException("interrupted while waiting for urgent commands");
+                }
+            }
+            if (error != null){
+                throw new IOException(error.getMessage(), error);
+            }
+        }
+    }
 }
@@ -0,0 +1,406 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ConnectionGroup.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.jpac.plc.util.PriorityLanes.PRIORITY;
+import org.jpac.plc.util.WireTrace;
+
+/**
+ * group of several ISO connections to the same plc (rack, slot), which is presented to the application as a single connection.<br>
+ * The jobs of a transaction are distributed over the connections of the group and transacted in parallel.
+ * If a connection fails, its jobs are transacted by the remaining ones and the failed connection is
+ * reestablished in the background.<br>
+ * Latencies and throughput are recorded by the statistics of the single connections. The statistics of the group count the reconnects.
+ */
+public class ConnectionGroup extends Connection{
+    public  static final int DEFAULTNUMBEROFCONNECTIONS = 2;
+    private static final int RECONNECTDELAY             = 5000; //[ms] minimum period of time between two reconnect attempts
+
+    /**
+     * physical connection of the group and its health state
+     */
+    public class Member{
+        private Connection  conn;
+        private boolean     healthy;
+        private boolean     reconnecting;
+        private int         failures;
+        private long        lastFailure;
+        private IOException lastError;
+
+        /**
+         * @return true, if the connection is usable
+         */
+        public synchronized boolean isHealthy(){
+            return healthy;
+        }
+
+        /**
+         * @return number of failures since the group was opened
+         */
+        public synchronized int getFailures(){
+            return failures;
+        }
+
+        /**
+         * @return the error which caused the last failure, null if none
+         */
+        public synchronized IOException getLastError(){
+            return lastError;
+        }
+
+        synchronized Connection getConnection(){
+            return conn;
+        }
+
+        synchronized void failed(IOException exc){
+            if (conn != null){
+                try{conn.close();}catch(IOException ex){/*connection is dropped anyway*/}
+            }
+            conn        = null;
+            healthy     = false;
+            failures++;
+            lastFailure = System.currentTimeMillis();
+            lastError   = exc;
+        }
+
+        synchronized void connected(Connection conn){
+            conn.setWireTrace(getWireTrace());
+            this.conn    = conn;
+            this.healthy = true;
+        }
+    }
+
+    private int               rack;
+    private int               slot;
+    private Member[]          members;
+    private ExecutorService   executor;
+
+    /**
+     * an instance of ConnectionGroup is created and the given number of connections to the plc are initiated immediately
+     * @param host ip address of the plc (e.g. 192.168.0.1)
+     * @param rack rack id (in most cases '0')
+     * @param slot slot id (in most cases '2')
+     * @param debug switch on/off generation of debug information
+     * @param numberOfConnections number of ISO connections opened to the plc
+     * @param transport the transport used by the connections (see {@link TRANSPORT})
+     * @throws IOException thrown, if none of the connections can be established
+     */
+    public ConnectionGroup(String host, int rack, int slot, boolean debug, int numberOfConnections, TRANSPORT transport) throws IOException{
+        super(host, rack, slot, debug, false, transport);
+        this.rack     = rack;
+        this.slot     = slot;
+        this.members  = new Member[numberOfConnections];
+        for (int i = 0; i < members.length; i++){
+            members[i] = new Member();
+        }
+        this.executor = Executors.newFixedThreadPool(numberOfConnections, new ThreadFactory(){
+            private int n = 0;
+            public Thread newThread(Runnable runnable){
+                Thread thread = new Thread(runnable, "jpac.plc.s7.group-" + n++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        initialize();
+    }
+
+    /**
+     * used to open the connections of the group
+     * @throws IOException thrown, if none of the connections can be established
+     */
+    @Override
+    protected synchronized void initialize() throws IOException{
+        IOException lastError = null;
+        for (Member member: members){
+            try{
+                member.connected(openMember());
+            }
+            catch(IOException exc){
+                member.failed(exc);
+                lastError = exc;
+            }
+        }
+        connected = getNumberOfHealthyConnections() > 0;
+        if (!connected){
+            executor.shutdown();
+            throw lastError;
+        }
+        getStatistics().register();
+        if (isDebug()) Log.info("connection group to PLC opened: " + getNumberOfHealthyConnections() + " of " + members.length + " connections established");
+    }
+
+    /**
+     * used to record the ISO packets of all connections of the group in a single trace
+     * @param wireTrace trace the packets are recorded in. null: no recording
+     */
+    @Override
+    public void setWireTrace(WireTrace wireTrace){
+        super.setWireTrace(wireTrace);
+        for (Member member: members){
+            synchronized(member){
+                if (member.conn != null){
+                    member.conn.setWireTrace(wireTrace);
+                }
+            }
+        }
+    }
+
+    /**
+     * used to open a single connection of the group
+     * @return the connection
+     * @throws IOException
+     */
+    protected Connection openMember() throws IOException{
+        return new Connection(host, rack, slot, isDebug(), true, getTransport());
+    }
+
+    /**
+     * used to transact a list of commands. The commands are distributed over the healthy connections of the group
+     * and transacted in parallel. Commands of a connection failing meanwhile are transacted by the remaining ones,
+     * unless they have been acknowledged by the plc before the failure.<br>
+     * Note: writes are not idempotent in general. A write sent, whose acknowledgement got lost with the failing connection,
+     * may have been performed by the plc and is sent again.
+     * @param commands list of commands to be transacted. Every command must be a distinct instance.
+     * @param priority priority class of the commands, applied by every connection of the group
+     * @throws IOException thrown, if no healthy connection is left
+     */
+    @Override
+    public void transact(List<? extends Command> commands, PRIORITY priority) throws IOException{
+        reconnectFailedMembers();
+        List<? extends Command> pending = commands;
+        while(!pending.isEmpty()){
+            ArrayList<Member> healthy = getHealthyMembers();
+            connected = !healthy.isEmpty();
+            if (!connected){
+                throw new IOException("all connections of the group to the plc failed");
+            }
+            //distribute the commands round robin
+            ArrayList<List<Command>> portions = new ArrayList<List<Command>>(healthy.size());
+            for (int i = 0; i < healthy.size(); i++){
+                portions.add(new ArrayList<Command>());
+            }
+            for (int i = 0; i < pending.size(); i++){
+                portions.get(i % healthy.size()).add(pending.get(i));
+            }
+            //transact them in parallel
+            ArrayList<Future<IOException>> results = new ArrayList<Future<IOException>>(healthy.size());
+            for (int i = 0; i < healthy.size(); i++){
+                results.add(executor.submit(new Portion(healthy.get(i), portions.get(i), priority)));
+            }
+            //collect the commands of failed connections, which have not been acknowledged
+            ArrayList<Command> failed = new ArrayList<Command>();
+            for (int i = 0; i < healthy.size(); i++){
+                IOException exc = awaitResult(results.get(i));
+                if (exc != null){
+                    Log.error("connection of group to PLC failed: ", exc);
+                    healthy.get(i).failed(exc);
+                    for (Command command: portions.get(i)){
+                        if (!command.acknowledged){
+                            failed.add(command);
+                        }
+                    }
+                }
+            }
+            pending = failed;
+        }
+    }
+
+    /**
+     * @return the connections of the group
+     */
+    public Member[] getMembers(){
+        return members.clone();
+    }
+
+    /**
+     * @return the number of connections of the group
+     */
+    public int getNumberOfConnections(){
+        return members.length;
+    }
+
+    /**
+     * @return the number of usable connections of the group
+     */
+    public int getNumberOfHealthyConnections(){
+        return getHealthyMembers().size();
+    }
+
+    /**
+     * @return the smallest PDU length negotiated by the healthy connections of the group
+     */
+    @Override
+    public int getMaxPDULength(){
+        int maxPDULength = Integer.MAX_VALUE;
+        for (Member member: getHealthyMembers()){
+            maxPDULength = Math.min(maxPDULength, member.getConnection().getMaxPDULength());
+        }
+        return maxPDULength == Integer.MAX_VALUE ? super.getMaxPDULength() : maxPDULength;
+    }
+
+    /**
+     * @return the overall number of jobs, which may be pending concurrently on the healthy connections of the group
+     */
+    @Override
+    public int getMaxPendingJobs(){
+        int maxPendingJobs = 0;
+        for (Member member: getHealthyMembers()){
+            maxPendingJobs += member.getConnection().getMaxPendingJobs();
+        }
+        return Math.max(1, maxPendingJobs);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException{
+        throw new IOException("a connection group does not supply a stream: use transact(List)");
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException{
+        throw new IOException("a connection group does not supply a stream: use transact(List)");
+    }
+
+    /**
+     * used to close all connections of the group
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException{
+        connected = false;
+        getStatistics().unregister();
+        executor.shutdownNow();
+        for (Member member: members){
+            Connection conn = member.getConnection();
+            if (conn != null){
+                conn.close();
+            }
+        }
+        if (isDebug()) Log.info("connection group to PLC closed");
+    }
+
+    private ArrayList<Member> getHealthyMembers(){
+        ArrayList<Member> healthy = new ArrayList<Member>(members.length);
+        for (Member member: members){
+            if (member.isHealthy()){
+                healthy.add(member);
+            }
+        }
+        return healthy;
+    }
+
+    /**
+     * used to reestablish failed connections in the background
+     */
+    private void reconnectFailedMembers(){
+        for (final Member member: members){
+            synchronized(member){
+                if (member.healthy || member.reconnecting || System.currentTimeMillis() - member.lastFailure < RECONNECTDELAY){
+                    continue;
+                }
+                member.reconnecting = true;
+            }
+            executor.submit(new Runnable(){
+                public void run(){
+                    try{
+                        member.connected(openMember());
+                        getStatistics().reconnected();
+                        if (isDebug()) Log.info("connection of group to PLC reestablished");
+                    }
+                    catch(IOException exc){
+                        member.failed(exc);
+                    }
+                    finally{
+                        synchronized(member){
+                            member.reconnecting = false;
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private IOException awaitResult(Future<IOException> result) throws IOException{
+        try{
+            return result.get();
+        }
+        catch(InterruptedException exc){
+            //keep the interrupt for the caller
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the connections of the group", exc);
+        }
+        catch(ExecutionException exc){
+            return new IOException(exc.getCause().getMessage(), exc.getCause());
+        }
+    }
+
+    /**
+     * portion of the commands of a transaction, which is transacted by a single connection of the group
+     */
+    private class Portion implements Callable<IOException>{
+        private Member        member;
+        private List<Command> commands;
+        private PRIORITY      priority;
+
+        Portion(Member member, List<Command> commands, PRIORITY priority){
+            this.member   = member;
+            this.commands = commands;
+            this.priority = priority;
+        }
+
+        public IOException call(){
+            Connection conn = member.getConnection();
+            if (conn == null){
+                return new IOException("connection of the group dropped");
+            }
+            //bind the commands to the physical connection for the duration of the transaction
+            for (Command command: commands){
+                command.conn         = conn;
+                command.acknowledged = false;
+            }
+            try{
+                conn.transact(commands, priority);
+                return null;
+            }
+            catch(IOException exc){
+                return exc;
+            }
+            finally{
+                for (Command command: commands){
+                    command.conn = ConnectionGroup.this;
+                }
+            }
+        }
+    }
+}
@@ -28,6 +28,8 @@ import java.io.IOException;
 import org.jpac.plc.AddressException;
 import org.jpac.plc.PlcString;
 import org.jpac.plc.StringLengthException;
+import org.jpac.plc.ValueOutOfRangeException;
+import org.jpac.plc.util.DirtyRanges;
 
 /**
  * used as a data storage for data interchanged with a plc.<br>
@@ -35,9 +37,76 @@ import org.jpac.plc.StringLengthException;
  * several plc side datatypes.
  */
 public class Data extends org.jpac.plc.Data{
+    private DirtyRanges    dirtyRanges; //byte ranges modified by the setters since the last transmission
+    private CachedString[] strings;     //strings returned by getSTRING(int, PlcString), reused as long as their bytes do not change
+
+    /**
+     * string returned by getSTRING(int, PlcString) together with the bytes it has been decoded from
+     */
+    private static class CachedString{
+        final int       byteIndex;
+        final byte[]    bytes;
+        final PlcString value;
+
+        CachedString(int byteIndex, byte[] bytes, PlcString value){
+            this.byteIndex = byteIndex;
+            this.bytes     = bytes;
+            this.value     = value;
+        }
+
+        boolean matches(byte[] data){
+            if (byteIndex + bytes.length > data.length){
+                return false;
+            }
+            for (int i = 0; i < bytes.length; i++){
+                if (data[byteIndex + i] != bytes[i]){
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 
     public Data(byte[] bytes){
         super(bytes);
+        dirtyRanges = new DirtyRanges();
+        strings     = new CachedString[0];
+    }
+
+    @Override
+    public void setBIT(int byteIndex, int bitIndex, boolean value) throws AddressException{
+        super.setBIT(byteIndex, bitIndex, value);
+        dirtyRanges.add(byteIndex, byteIndex + 1);
+    }
+
+    @Override
+    public void setBYTE(int byteIndex, int value) throws AddressException, ValueOutOfRangeException{
+        super.setBYTE(byteIndex, value);
+        dirtyRanges.add(byteIndex, byteIndex + 1);
+    }
+
+    @Override
+    public void setWORD(int byteIndex, int value) throws AddressException, ValueOutOfRangeException{
+        super.setWORD(byteIndex, value);
+        dirtyRanges.add(byteIndex, byteIndex + 2);
+    }
+
+    @Override
+    public void setINT(int byteIndex, int value) throws AddressException, ValueOutOfRangeException{
+        super.setINT(byteIndex, value);
+        dirtyRanges.add(byteIndex, byteIndex + 2);
+    }
+
+    @Override
+    public void setDWORD(int byteIndex, long value) throws AddressException, ValueOutOfRangeException{
+        super.setDWORD(byteIndex, value);
+        dirtyRanges.add(byteIndex, byteIndex + 4);
+    }
+
+    @Override
+    public void setDINT(int byteIndex, int value) throws AddressException{
+        super.setDINT(byteIndex, value);
+        dirtyRanges.add(byteIndex, byteIndex + 4);
     }
 
     /**
@@ -47,20 +116,55 @@ public class Data extends org.jpac.plc.Data{
      * @throws AddressException
      */
     public PlcString getSTRING(int byteIndex) throws StringLengthException, AddressException{
-        if (byteIndex < 0 || byteIndex +  1 >= getBytes().length){
-            throw new AddressException("byte index " + byteIndex + " invalid");
-        }
+        checkSTRING(byteIndex);
         int maxLength    = bytes[byteIndex] & 0x000000FF;
         int actualLength = bytes[byteIndex+1] & 0x000000FF;
-        if (byteIndex + 1 + maxLength >= getBytes().length){
-            throw new AddressException("byte index " + byteIndex + " invalid");
-        }
         byte[] bString    = new byte[maxLength];
         System.arraycopy(bytes, byteIndex+2, bString, 0, maxLength);
         PlcString plcString = new PlcString(bString,actualLength);
         return plcString;
     }
 
+    /**
+     * used to read a string value cyclically without allocations. If the bytes of the string inside the data buffer
+     * did not change since the given instance has been returned by this method, the instance is returned again.
+     * Otherwise a new instance is returned. Instances returned before are left untouched.
+     * @param byteIndex byte offset inside the data buffer
+     * @param reuse the value returned by the preceding call for the same byte index, null on the first call
+     * @return the value
+     * @throws AddressException
+     */
+    public PlcString getSTRING(int byteIndex, PlcString reuse) throws StringLengthException, AddressException{
+        checkSTRING(byteIndex);
+        int cached = 0;
+        while(cached < strings.length && strings[cached].byteIndex != byteIndex){
+            cached++;
+        }
+        if (reuse != null && cached < strings.length && strings[cached].value == reuse && strings[cached].matches(bytes)){
+            return reuse;
+        }
+        PlcString plcString = getSTRING(byteIndex);
+        byte[] raw = new byte[2 + (bytes[byteIndex] & 0x000000FF)];
+        System.arraycopy(bytes, byteIndex, raw, 0, raw.length);
+        if (cached == strings.length){
+            CachedString[] newStrings = new CachedString[strings.length + 1];
+            System.arraycopy(strings, 0, newStrings, 0, strings.length);
+            strings = newStrings;
+        }
+        strings[cached] = new CachedString(byteIndex, raw, plcString);
+        return plcString;
+    }
+
+    private void checkSTRING(int byteIndex) throws AddressException{
+        if (byteIndex < 0 || byteIndex +  1 >= getBytes().length){
+            throw new AddressException("byte index " + byteIndex + " invalid");
+        }
+        int maxLength = bytes[byteIndex] & 0x000000FF;
+        if (byteIndex + 1 + maxLength >= getBytes().length){
+            throw new AddressException("byte index " + byteIndex + " invalid");
+        }
+    }
+
     /**
      * used to set a string value.
      * @param byteIndex byte offset inside the data buffer
@@ -74,6 +178,23 @@ public class Data extends org.jpac.plc.Data{
         bytes[byteIndex] = (byte)value.getMaxLength();
         bytes[byteIndex+1] = (byte)value.getActualLength();
         System.arraycopy(value.toString().getBytes(), 0, bytes, byteIndex+2, value.toString().length());
+        dirtyRanges.add(byteIndex, byteIndex + 2 + value.getMaxLength());
+    }
+
+    /**
+     * used to mark a range as modified, if the byte array has been modified directly
+     * @param byteIndex first byte of the range
+     * @param length length of the range
+     */
+    public void markDirty(int byteIndex, int length){
+        dirtyRanges.add(byteIndex, byteIndex + length);
+    }
+
+    /**
+     * @return the byte ranges modified since the last transmission (see {@link TransmitTransaction#setTransmitModifiedOnly(boolean)})
+     */
+    public DirtyRanges getDirtyRanges(){
+        return dirtyRanges;
     }
 
 
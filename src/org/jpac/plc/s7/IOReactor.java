@@ -0,0 +1,217 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : IOReactor.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   :
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.log4j.Logger;
+
+/**
+ * dispatches the receive events of the non blocking socket channels used by connections
+ * running on the {@link Connection.TRANSPORT#SELECTOR} transport.<br>
+ * Every reactor owns one selector and one daemon thread. A small pool of reactors is shared
+ * amongst all connections, so that many plc's can be served by a few I/O threads.
+ * Received bytes are handed over to the {@link ChannelInputStream} of the connection the moment they arrive.
+ * A {@link ChannelOutputStream}, whose channel cannot take further bytes, is woken up as soon as the channel becomes writable again.
+ */
+class IOReactor implements Runnable{
+    static Logger Log = Logger.getLogger("jpac.plc.s7");
+
+    private static final int     DEFAULTNUMBEROFREACTORS = 2;
+
+    private static IOReactor[]   reactors;
+    private static int           numberOfReactors = DEFAULTNUMBEROFREACTORS;
+    private static int           nextReactor;
+
+    private final Selector                                 selector;
+    private final Thread                                   thread;
+    private final ConcurrentLinkedQueue<ChannelInputStream> pendingRegistrations;
+    private final ConcurrentLinkedQueue<SelectionKey>       pendingResumptions;
+    private final ConcurrentLinkedQueue<ChannelOutputStream> pendingWriteInterests;
+    private final HashMap<SelectionKey, ChannelOutputStream> writers; //streams waiting for their channel to become writable. Accessed by the reactor thread only
+
+    private IOReactor(int index) throws IOException{
+        selector              = Selector.open();
+        pendingRegistrations  = new ConcurrentLinkedQueue<ChannelInputStream>();
+        pendingResumptions    = new ConcurrentLinkedQueue<SelectionKey>();
+        pendingWriteInterests = new ConcurrentLinkedQueue<ChannelOutputStream>();
+        writers               = new HashMap<SelectionKey, ChannelOutputStream>();
+        thread                = new Thread(this, "jpac.plc.s7.reactor-" + index);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return one of the shared reactors. The reactors are assigned in a round robin manner.
+     * @throws IOException
+     */
+    static synchronized IOReactor getInstance() throws IOException{
+        if (reactors == null){
+            reactors = new IOReactor[numberOfReactors];
+            for (int i = 0; i < numberOfReactors; i++){
+                reactors[i] = new IOReactor(i);
+            }
+        }
+        IOReactor reactor = reactors[nextReactor];
+        nextReactor = (nextReactor + 1) % reactors.length;
+        return reactor;
+    }
+
+    /**
+     * used to set the number of I/O threads shared by all connections. Must be called before the first
+     * connection using the selector transport is established.
+     * @param n number of reactors (I/O threads)
+     */
+    static synchronized void setNumberOfReactors(int n){
+        if (reactors != null){
+            throw new IllegalStateException("reactors already started");
+        }
+        if (n < 1){
+            throw new IllegalArgumentException("at least one reactor required");
+        }
+        numberOfReactors = n;
+    }
+
+    /**
+     * used to register the channel of the given stream with this reactor.
+     * @param stream
+     */
+    void register(ChannelInputStream stream){
+        pendingRegistrations.add(stream);
+        selector.wakeup();
+    }
+
+    /**
+     * used to re enable the reception of a channel, which had been suspended because its receive buffer was full
+     * @param key
+     */
+    void resume(SelectionKey key){
+        pendingResumptions.add(key);
+        selector.wakeup();
+    }
+
+    /**
+     * used to wake up the given stream, as soon as its channel is able to take further bytes (see {@link ChannelOutputStream#writable()})
+     * @param stream
+     */
+    void awaitWritable(ChannelOutputStream stream){
+        pendingWriteInterests.add(stream);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run(){
+        while(true){
+            try{
+                selector.select();
+                processPendingRegistrations();
+                processPendingResumptions();
+                processPendingWriteInterests();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ChannelInputStream stream = (ChannelInputStream)key.attachment();
+                    try{
+                        if (key.isValid() && key.isWritable()){
+                            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                            ChannelOutputStream writer = writers.remove(key);
+                            if (writer != null){
+                                writer.writable();
+                            }
+                        }
+                        if (key.isValid() && key.isReadable()){
+                            stream.receive(key);
+                        }
+                    }
+                    catch(CancelledKeyException exc){
+                        //channel closed concurrently
+                        stream.abort();
+                        wakeUpWriter(key);
+                    }
+                    catch(IOException exc){
+                        if (Log.isDebugEnabled()) Log.debug("receive failed on " + key.channel() + ": " + exc.getMessage());
+                        key.cancel();
+                        stream.abort();
+                        wakeUpWriter(key);
+                    }
+                }
+            }
+            catch(Exception exc){
+                Log.error("Error: ", exc);
+            }
+        }
+    }
+
+    private void processPendingRegistrations(){
+        ChannelInputStream stream;
+        while((stream = pendingRegistrations.poll()) != null){
+            try{
+                stream.getChannel().register(selector, SelectionKey.OP_READ, stream);
+            }
+            catch(ClosedChannelException exc){
+                stream.abort();
+            }
+        }
+    }
+
+    private void processPendingResumptions(){
+        SelectionKey key;
+        while((key = pendingResumptions.poll()) != null){
+            if (key.isValid()){
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void processPendingWriteInterests(){
+        ChannelOutputStream stream;
+        while((stream = pendingWriteInterests.poll()) != null){
+            SelectionKey key = stream.getChannel().keyFor(selector);
+            try{
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                writers.put(key, stream);
+            }
+            catch(RuntimeException exc){
+                //channel not registered (anymore) or closed concurrently (CancelledKeyException): let the stream retry and fail
+                stream.writable();
+            }
+        }
+    }
+
+    private void wakeUpWriter(SelectionKey key){
+        ChannelOutputStream writer = writers.remove(key);
+        if (writer != null){
+            writer.writable();
+        }
+    }
+}
@@ -44,7 +44,9 @@
 package org.jpac.plc.s7;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import org.apache.log4j.Logger;
+import org.jpac.plc.util.RttEstimator;
 
 /**
  * InputStream is used to convert an incoming input stream of<br>
@@ -54,15 +56,25 @@ import org.apache.log4j.Logger;
  * <br>
  * In addition swapping of the byte order is done to convert from<br>
  * little endian to big endian<br>
+ * <br>
+ * Replies of the plc are received packet wise: {@link #readPacket(int)} reads a complete ISO packet
+ * into a pooled buffer in one go. Until the next packet is requested, all read operations are served
+ * from this buffer.
  */
 public class InputStream extends java.io.FilterInputStream {
     static Logger Log = Logger.getLogger("jpac.plc.s7");
 
-    private byte[] buf = new byte[8];
+    private byte[]     buf     = new byte[8];
+    private ByteBuffer bufView = ByteBuffer.wrap(buf);   //big endian view on buf
+    private ByteBuffer packet;                           //ISO packet currently decoded
+    private boolean    packetMode;                       //true, if the read operations are served from packet
     
     private final int MAXWAITTIME =    5000; //max. period of time to wait for
-                                             //from the Plc controller in ticks (see ONETICK)
+                                             //from the Plc controller in ticks (see ONETICK),
+                                             //if no rtt estimator is assigned
     private final int ONETICK     =       1; //duration of one tick in milliseconds
+
+    private RttEstimator rttEstimator;       //supplies the period of time to wait for the Plc controller
     
     /**
      * indicates that the stream is meant to be operational
@@ -78,6 +90,65 @@ public class InputStream extends java.io.FilterInputStream {
         super(in);
         operational = true;
         debug       = false;
+        packet      = BufferPool.acquire(0, false);
+        packetMode  = false;
+    }
+
+    /**
+     * used to read a complete packet of the given length from the underlying stream. Subsequent read operations
+     * are served from the packet, until {@link #endPacket()} is called.
+     * @param length length of the packet in bytes
+     * @throws IOException
+     */
+    public void readPacket(int length) throws IOException{
+        if (!isOperational()){
+            throw new IOException("stream not operational");
+        }
+        endPacket();
+        if (packet.capacity() < length){
+            BufferPool.release(packet);
+            packet = BufferPool.acquire(length, false);
+        }
+        waitForBytes(length);
+        readFully(packet.array(), packet.arrayOffset(), length);
+        packet.clear();
+        packet.limit(length);
+        packetMode = true;
+    }
+
+    /**
+     * @return the packet read by {@link #readPacket(int)} between position 0 and the length of the packet
+     */
+    ByteBuffer getPacket(){
+        return packet;
+    }
+
+    /**
+     * used to leave the packet mode. Bytes of the current packet not read so far are discarded.
+     */
+    public void endPacket(){
+        packetMode = false;
+        packet.clear();
+    }
+
+    /**
+     * @return true, if the read operations are served from a packet read by {@link #readPacket(int)}
+     */
+    public boolean isPacketMode(){
+        return packetMode;
+    }
+
+    /**
+     * used to read a word at the given position of the current packet without consuming any bytes
+     * @param index byte index inside the packet (0 = first byte following the ISO header)
+     * @return the word value
+     * @throws IOException if no packet is present or the index exceeds the packet
+     */
+    public int peekWORD(int index) throws IOException{
+        if (!packetMode || index + 2 > packet.limit()){
+            throw new EOFException("unexpected end of ISO packet");
+        }
+        return packet.getShort(index) & 0xFFFF;
     }
 
     /**
@@ -91,6 +162,9 @@ public class InputStream extends java.io.FilterInputStream {
      if (!isOperational()){
          throw new IOException("stream not operational");
      }
+     if (packetMode){
+         return packetBytes(1).get();
+     }
      waitForBytes(1);
      readFully(buf, 0, 1);
      return convertToByte(buf);
@@ -106,6 +180,9 @@ public class InputStream extends java.io.FilterInputStream {
     if (!isOperational()){
         throw new IOException("stream not operational");
     }
+    if (packetMode){
+        return packetBytes(1).get();
+    }
     waitForBytes(1);
     readFully(buf, 0, 1);
     return convertToByte(buf);
@@ -139,6 +216,9 @@ public class InputStream extends java.io.FilterInputStream {
     if (!isOperational()){
         throw new IOException("stream not operational");
     }
+    if (packetMode){
+        return packetBytes(4).getInt();
+    }
     waitForBytes(4);
     readFully(buf, 0, 4);
     int int_rc = convertToInt(buf);
@@ -156,6 +236,9 @@ public class InputStream extends java.io.FilterInputStream {
     if (!isOperational()){
         throw new IOException("stream not operational");
     }
+    if (packetMode){
+        return packetBytes(2).getShort() & 0xFFFF;
+    }
     waitForBytes(2);
     readFully(buf, 0, 2);
     //System.out.printf(" read word %x %x",buf[0],buf[1]);
@@ -173,6 +256,9 @@ public class InputStream extends java.io.FilterInputStream {
     if (!isOperational()){
         throw new IOException("stream not operational");
     }
+    if (packetMode){
+        return packetBytes(4).getInt() & 0xFFFFFFFFL;
+    }
     waitForBytes(4);
     readFully(buf, 0, 4);
     return convertToLong(buf);
@@ -194,7 +280,9 @@ public class InputStream extends java.io.FilterInputStream {
         throw new IOException("stream not operational");
     }
 
-    waitForBytes(len+2);
+    if (!packetMode){
+        waitForBytes(len+2);
+    }
     //read max length of the string
     readFully(buf, 0, 1);
     maxlen = (int)buf[0];
@@ -239,6 +327,10 @@ public class InputStream extends java.io.FilterInputStream {
         int numread = 0;
         if (len < 0)
           throw new IndexOutOfBoundsException("Index: "+len);
+        if (packetMode){
+            packetBytes(len).get(buffer, offset, len);
+            return;
+        }
         while (len > 0){
             try{
                 numread = in.read(buffer, offset, len);
@@ -286,8 +378,7 @@ public class InputStream extends java.io.FilterInputStream {
     */
     protected int convertToInt(byte[] buf)
     { //swap byte order
-    return (((buf [ 0 ] & 0xff) << 24) | ((buf [ 1 ] & 0xff) << 16) |
-            ( (buf [ 2 ] & 0xff) <<  8) |  (buf [ 3 ] & 0xff));
+    return buf == this.buf ? bufView.getInt(0) : ByteBuffer.wrap(buf).getInt(0);
     }
 
     /**
@@ -298,7 +389,7 @@ public class InputStream extends java.io.FilterInputStream {
     */
     protected int convertToUnsignedShort(byte[] buf)
     { //swap byte order
-      return ( ( (buf [ 0 ] & 0xff) <<  8) |  (buf [ 1 ] & 0xff));
+      return (buf == this.buf ? bufView.getShort(0) : ByteBuffer.wrap(buf).getShort(0)) & 0xFFFF;
     }
 
     /**
@@ -309,14 +400,13 @@ public class InputStream extends java.io.FilterInputStream {
     */
     protected long convertToLong(byte[] buf)
     { //swap byte order
-    return(((long) (buf [ 0 ] & 0xff) << 24) | ((long) (buf [ 1 ] & 0xff) << 16) |
-           ((long) (buf [ 2 ] & 0xff) <<  8) | ((long) (buf [ 3 ] & 0xff)      ));
+    return (buf == this.buf ? bufView.getInt(0) : ByteBuffer.wrap(buf).getInt(0)) & 0xFFFFFFFFL;
     }
 
     /**
     * used to wait, until the given amount of bytes are available on the stream<br>
     * if a timeout occurs, an IOException is thrown<br>
-    * (see instance variables MAXWAITTIME, ONETICK for further information<br>
+    * (see {@link #setRttEstimator(RttEstimator)}, instance variables MAXWAITTIME, ONETICK for further information<br>
     * @param number of bytes to wait for
     * @exception IOException
     */
@@ -325,15 +415,25 @@ public class InputStream extends java.io.FilterInputStream {
     if (!isOperational()){
         throw new IOException("stream not operational");
     }
-    int ticks = 0;
-    while((available() < n) && (ticks++ < this.MAXWAITTIME)){
-        try{Thread.currentThread().sleep(this.ONETICK);}catch(InterruptedException exc){};
+    long    timeout = rttEstimator != null ? rttEstimator.getTimeout() : MAXWAITTIME * ONETICK;
+    boolean timedOut;
+    if (in instanceof ChannelInputStream){
+        //selector based transport: the reactor wakes us up as soon as the bytes have arrived
+        timedOut = !((ChannelInputStream)in).awaitAvailable(n, timeout);
+    }
+    else{
+        long maxTicks = timeout / ONETICK;
+        long ticks    = 0;
+        while((available() < n) && (ticks++ < maxTicks)){
+            try{Thread.currentThread().sleep(this.ONETICK);}catch(InterruptedException exc){};
+        }
+        timedOut = ticks >= maxTicks && available() < n;
     }
-    if (ticks >= MAXWAITTIME){
+    if (timedOut){
         //if the Plc controller does not answer in time
         //abort reception
         setOperational(false);
-        throw new IOException("incomplete data packet received from Plc controller");
+        throw new InterruptedIOException("incomplete data packet received from Plc controller");
     }
     }
 
@@ -343,6 +443,12 @@ public class InputStream extends java.io.FilterInputStream {
      * @return the double value
      */
     public int clear() throws IOException {
+         if (packetMode){
+             //discard the rest of the current packet
+             int nbytes = packet.remaining();
+             packet.position(packet.limit());
+             return nbytes;
+         }
          int nbytes = available();
          if (nbytes > 0) {
              skip(nbytes);
@@ -350,6 +456,70 @@ public class InputStream extends java.io.FilterInputStream {
          return nbytes;
     }
 
+    /**
+     * @return the number of bytes available. In packet mode the number of bytes of the current packet not read so far.
+     * @throws IOException
+     */
+    @Override
+    public int available() throws IOException {
+        return packetMode ? packet.remaining() : super.available();
+    }
+
+    /**
+     * used to read up to len bytes into the given buffer. In packet mode the bytes are copied directly from the packet
+     * @param buffer the buffer the received data is stored in
+     * @param offset byte offset inside the buffer
+     * @param len number of bytes to be read
+     * @return the number of bytes actually read
+     * @throws IOException
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int len) throws IOException {
+        if (packetMode){
+            if (len > packet.remaining()){
+                throw new EOFException("unexpected end of ISO packet");
+            }
+            packet.get(buffer, offset, len);
+            return len;
+        }
+        return super.read(buffer, offset, len);
+    }
+
+    /**
+     * used to skip n bytes. In packet mode the bytes are skipped inside the current packet.
+     * @param n number of bytes to skip
+     * @return the number of bytes actually skipped
+     * @throws IOException
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (packetMode){
+            packetBytes((int)n);
+            packet.position(packet.position() + (int)n);
+            return n;
+        }
+        return super.skip(n);
+    }
+
+    @Override
+    public void close() throws IOException {
+        endPacket();
+        super.close();
+    }
+
+    /**
+     * checks that n bytes of the current packet are left to be read
+     * @param n
+     * @return the packet buffer
+     * @throws IOException
+     */
+    private ByteBuffer packetBytes(int n) throws IOException {
+        if (packet.remaining() < n){
+            throw new EOFException("unexpected end of ISO packet");
+        }
+        return packet;
+    }
+
     /**
      * indicates, if the input stream is operational
      * @return
@@ -369,4 +539,11 @@ public class InputStream extends java.io.FilterInputStream {
     public void setDebug(boolean debug){
         this.debug = debug;
     }
+
+    /**
+     * @param rttEstimator estimator supplying the period of time to wait for the Plc controller. null: MAXWAITTIME applies
+     */
+    public void setRttEstimator(RttEstimator rttEstimator){
+        this.rttEstimator = rttEstimator;
+    }
 }
@@ -39,6 +39,8 @@ public class NegotiatePDULength extends Command{
             public final byte NEGPDULENRECEIVEDPARAMLEN  = 8; //length of the parameter block
 
             private int maxPDULength;
+            private int maxAmQCalling;   //max. number of pending jobs the client is allowed to issue
+            private int maxAmQCalled;    //max. number of pending jobs the plc is able to process
 
             @Override
             public void write(Connection conn) throws IOException {
@@ -46,10 +48,10 @@ public class NegotiatePDULength extends Command{
                 if (isDebug()) Log.debug("     request: " + NEGOTIATEPDULENGTH);
                 conn.getOutputStream().write(NEGOTIATEPDULENGTH);
                 conn.getOutputStream().write(0x00);
-                conn.getOutputStream().write(0x00);
-                conn.getOutputStream().write(0x01);
-                conn.getOutputStream().write(0x00);
-                conn.getOutputStream().write(0x01);
+                conn.getOutputStream().writeWORD(getMaxAmQCalling());
+                if (isDebug()) Log.debug("     max AmQ calling " + getMaxAmQCalling());
+                conn.getOutputStream().writeWORD(getMaxAmQCalled());
+                if (isDebug()) Log.debug("     max AmQ called " + getMaxAmQCalled());
                 conn.getOutputStream().write(0x03);
                 conn.getOutputStream().write(0xc0);
                 if (isDebug()) Log.debug("     data ... ");
@@ -63,8 +65,12 @@ public class NegotiatePDULength extends Command{
                     throw new IOException("protocol error: invalid length of parameter block");
                 }
                 if (isDebug()) Log.debug("  reading parameters ...");
-                conn.getInputStream().skip(6);
+                conn.getInputStream().skip(2);
                 if (isDebug()) Log.debug("     some data ...");
+                setMaxAmQCalling(conn.getInputStream().readWORD());
+                if (isDebug()) Log.debug("     max AmQ calling " + getMaxAmQCalling());
+                setMaxAmQCalled(conn.getInputStream().readWORD());
+                if (isDebug()) Log.debug("     max AmQ called " + getMaxAmQCalled());
                 setMaxPDULength(conn.getInputStream().readWORD());
                 if (isDebug()) Log.debug("     max PDU length " + getMaxPDULength());
                 if (isDebug()) Log.debug("  parameters read");
@@ -84,6 +90,18 @@ public class NegotiatePDULength extends Command{
             public void setMaxPDULength(int maxPDULength) {
                 this.maxPDULength = maxPDULength;
             }
+            public int getMaxAmQCalling() {
+                return maxAmQCalling;
+            }
+            public void setMaxAmQCalling(int maxAmQCalling) {
+                this.maxAmQCalling = maxAmQCalling;
+            }
+            public int getMaxAmQCalled() {
+                return maxAmQCalled;
+            }
+            public void setMaxAmQCalled(int maxAmQCalled) {
+                this.maxAmQCalled = maxAmQCalled;
+            }
         }
         class Data extends Command.PDU.Data{
             @Override
@@ -119,8 +137,18 @@ public class NegotiatePDULength extends Command{
      * @param conn an open connection to the plc
      */
     public NegotiatePDULength(Connection conn){
+        this(conn, 1);
+    }
+
+    /**
+     * @param conn an open connection to the plc
+     * @param maxPendingJobs number of jobs, which are requested to be processed by the plc concurrently (MaxAmQ)
+     */
+    public NegotiatePDULength(Connection conn, int maxPendingJobs){
         super(conn);
         setPDU(new PDU());
+        ((PDU.Parameters)getPDU().parameters).setMaxAmQCalling(maxPendingJobs);
+        ((PDU.Parameters)getPDU().parameters).setMaxAmQCalled(maxPendingJobs);
     }
 
     /**
@@ -131,4 +159,13 @@ public class NegotiatePDULength extends Command{
         return ((PDU.Parameters)getPDU().parameters).getMaxPDULength();
     }
 
+    /**
+     *
+     * @return the number of jobs, which may be pending concurrently as granted by this plc
+     */
+    public int getMaxPendingJobs() {
+        PDU.Parameters parameters = (PDU.Parameters)getPDU().parameters;
+        return Math.max(1, Math.min(parameters.getMaxAmQCalling(), parameters.getMaxAmQCalled()));
+    }
+
 }
@@ -116,7 +116,9 @@ package org.jpac.plc.s7;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import org.apache.log4j.Logger;
+import org.jpac.plc.util.WireTrace;
 
 /**
  * OutputStream is used to send a sequence of<br>
@@ -128,6 +130,10 @@ import org.apache.log4j.Logger;
  * In addition swapping of the byte order is done to convert from<br>
  * little endian to big endian<br>
  * <br>
+ * All data written to the stream is collected inside a pooled frame buffer. A complete ISO packet
+ * (TPKT + COTP + S7 header + parameter + data block) is handed over to the socket with a single write
+ * on flush().<br>
+ * <br>
  * @see PlcInputStream
  */
 public class OutputStream extends java.io.FilterOutputStream{
@@ -140,11 +146,28 @@ public class OutputStream extends java.io.FilterOutputStream{
      */
     private boolean               operational;
     private boolean               debug;      //indicates debug mode
+    private WireTrace             wireTrace;  //records the frames sent, if not null
+    private boolean               direct;     //true, if the frame buffer is a direct buffer
+    private ByteBuffer            frame;      //encoded data of the current ISO packet
 
     public OutputStream(java.io.OutputStream out){
+        this(out, false);
+    }
+
+    /**
+     * @param out the underlying stream
+     * @param direct true: the frame is encoded into a direct buffer. Only applicable, if the underlying stream
+     *               writes to a socket channel (see {@link Connection.TRANSPORT#SELECTOR})
+     */
+    OutputStream(java.io.OutputStream out, boolean direct){
         super(out);
-        operational = true;
-        debug       = false;
+        if (direct && !(out instanceof ChannelOutputStream)){
+            throw new IllegalArgumentException("direct frame buffers require a channel based transport");
+        }
+        this.operational = true;
+        this.debug       = false;
+        this.direct      = direct;
+        this.frame       = BufferPool.acquire(0, direct);
     }
                     
     /**
@@ -256,13 +279,94 @@ public class OutputStream extends java.io.FilterOutputStream{
     }
 
     /**
-     * write byte b to the output stream
+     * write byte b to the frame buffer
      * @param b: byte value to be written
      * @throws IOException
      */
     @Override
-    public void write(int b) throws IOException {
-        out.write(b);
+    public synchronized void write(int b) throws IOException {
+        ensureCapacity(1);
+        frame.put((byte)b);
+    }
+
+    /**
+     * write len bytes of the given buffer starting at offset to the frame buffer
+     * @param buffer
+     * @param offset
+     * @param len
+     * @throws IOException
+     */
+    @Override
+    public synchronized void write(byte[] buffer, int offset, int len) throws IOException {
+        ensureCapacity(len);
+        frame.put(buffer, offset, len);
+    }
+
+    /**
+     * sends the frame collected since the last flush() to the plc with a single write operation
+     * @throws IOException
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!isOperational()){
+           throw new IOException("stream not operational");
+        }
+        frame.flip();
+        if (wireTrace != null){
+            wireTrace.record(WireTrace.PROTOCOL.S7, WireTrace.DIRECTION.TRANSMITTED, frame);
+        }
+        try{
+            if (out instanceof ChannelOutputStream){
+                ((ChannelOutputStream)out).write(frame);
+            }
+            else{
+                out.write(frame.array(), frame.arrayOffset(), frame.remaining());
+                out.flush();
+            }
+        }
+        catch(IOException exc){
+            setOperational(false);
+            throw exc;
+        }
+        finally{
+            frame.clear();
+        }
+    }
+
+    /**
+     * @return the number of bytes written to the frame buffer since the last flush()
+     */
+    public synchronized int getFrameLength(){
+        return frame.position();
+    }
+
+    /**
+     * discards the data written to the frame buffer since the last flush()
+     */
+    public synchronized void discardFrame(){
+        frame.clear();
+    }
+
+    /**
+     * closes the underlying stream and returns the frame buffer to the pool. Pending data is discarded.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        BufferPool.release(frame);
+        frame = ByteBuffer.allocate(0);
+        out.close();
+    }
+
+    private void ensureCapacity(int n){
+        if (frame.remaining() < n){
+            //frame exceeds the current buffer: continue inside a larger one
+            ByteBuffer largerFrame = BufferPool.acquire(frame.position() + n, direct);
+            frame.flip();
+            largerFrame.put(frame);
+            BufferPool.release(frame);
+            frame = largerFrame;
+        }
     }
 
     /**
@@ -284,4 +388,11 @@ public class OutputStream extends java.io.FilterOutputStream{
     public void setDebug(boolean debug){
         this.debug = debug;
     }
+
+    /**
+     * @param wireTrace trace recording the frames sent. null: no recording
+     */
+    public void setWireTrace(WireTrace wireTrace){
+        this.wireTrace = wireTrace;
+    }
 }
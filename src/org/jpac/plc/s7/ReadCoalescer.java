@@ -0,0 +1,176 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ReadCoalescer.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.jpac.IndexOutOfRangeException;
+import org.jpac.plc.Request;
+import org.jpac.plc.ValueOutOfRangeException;
+
+/**
+ * used to merge byte wise read requests, which access nearby ranges of the same data block, into a single read request.<br>
+ * Every read item costs 12 bytes of request parameters and 4 bytes of result header. Reading the unused gap between
+ * two ranges is therefore cheaper than issuing a separate item, as long as the gap does not exceed these costs.
+ * The merged range is read once and the sub ranges are copied back into the Data objects of the originating requests.
+ */
+public class ReadCoalescer {
+    public  static final int DEFAULTGAP = 16; //12 bytes of request parameters + 4 bytes of result header per read item
+
+    private int gap;
+
+    /**
+     * creates a coalescer using the default gap derived from the costs of a read item
+     */
+    public ReadCoalescer(){
+        this(DEFAULTGAP);
+    }
+
+    /**
+     * @param gap maximum number of unused bytes between two ranges, which are merged. A negative value disables merging.
+     */
+    public ReadCoalescer(int gap){
+        this.gap = gap;
+    }
+
+    /**
+     * used to merge the given read requests
+     * @param requests read requests
+     * @param maxLength maximum length of a merged range
+     * @return list of read requests to be transacted instead of the given ones.
+     * Bitwise requests and requests not worth being merged are returned unchanged.
+     * @throws ValueOutOfRangeException
+     * @throws IndexOutOfRangeException
+     */
+    public List<ReadRequest> coalesce(Collection<ReadRequest> requests, int maxLength) throws ValueOutOfRangeException, IndexOutOfRangeException{
+        ArrayList<ReadRequest> coalesced  = new ArrayList<ReadRequest>(requests.size());
+        ArrayList<ReadRequest> candidates = new ArrayList<ReadRequest>(requests.size());
+        for (ReadRequest request: requests){
+            if (gap >= 0 && request.getDataType() == Request.DATATYPE.BYTE && request.getDataLength() < maxLength){
+                candidates.add(request);
+            }
+            else{
+                coalesced.add(request);
+            }
+        }
+        Collections.sort(candidates, new Comparator<ReadRequest>(){
+            public int compare(ReadRequest r1, ReadRequest r2){
+                int diff = getBlockId(r1) - getBlockId(r2);
+                return diff != 0 ? diff : r1.getByteAddress() - r2.getByteAddress();
+            }
+        });
+        ArrayList<ReadRequest> run = new ArrayList<ReadRequest>();
+        int runStart = 0;
+        int runEnd   = 0;
+        for (ReadRequest request: candidates){
+            int start = request.getByteAddress();
+            int end   = start + request.getDataLength();
+            if (!run.isEmpty() && getBlockId(request) == getBlockId(run.get(0)) && start - runEnd <= gap && Math.max(end, runEnd) - runStart <= maxLength){
+                run.add(request);
+                runEnd = Math.max(end, runEnd);
+            }
+            else{
+                flush(run, runStart, runEnd, coalesced);
+                run.add(request);
+                runStart = start;
+                runEnd   = end;
+            }
+        }
+        flush(run, runStart, runEnd, coalesced);
+        return coalesced;
+    }
+
+    /**
+     * @return maximum number of unused bytes between two ranges, which are merged
+     */
+    public int getGap(){
+        return gap;
+    }
+
+    /**
+     * @param gap maximum number of unused bytes between two ranges, which are merged. A negative value disables merging.
+     */
+    public void setGap(int gap){
+        this.gap = gap;
+    }
+
+    private void flush(List<ReadRequest> run, int runStart, int runEnd, List<ReadRequest> coalesced) throws ValueOutOfRangeException, IndexOutOfRangeException{
+        if (run.size() == 1){
+            coalesced.add(run.get(0));
+        }
+        else if (run.size() > 1){
+            coalesced.add(new MergedRequest(new ArrayList<ReadRequest>(run), (Address)run.get(0).getAddress(), runStart, runEnd - runStart));
+        }
+        run.clear();
+    }
+
+    private static int getBlockId(ReadRequest request){
+        return ((Address)request.getAddress()).getBlockId();
+    }
+
+    /**
+     * read request covering the ranges of several requests. On reception the sub ranges are copied into the
+     * Data objects of the originating requests
+     */
+    class MergedRequest extends ReadRequest{
+        private List<ReadRequest> requests;
+
+        MergedRequest(List<ReadRequest> requests, Address block, int byteAddress, int dataLength) throws ValueOutOfRangeException, IndexOutOfRangeException{
+            super(Request.DATATYPE.BYTE, new Address(block.getArea(), block.getDb(), byteAddress, Address.NA, dataLength), 0, new Data(new byte[dataLength]));
+            this.requests = requests;
+        }
+
+        @Override
+        public void read(org.jpac.plc.Connection conn) throws IOException{
+            try{
+                super.read(conn);
+                byte[] bytes = getData().getBytes();
+                for (ReadRequest request: requests){
+                    int length = request.getDataOffset() + request.getDataLength();
+                    if (request.getData() == null || (!request.isExternalData() && length > request.getData().getBytes().length)){
+                        //allocate a buffer to store it, as ReadRequest.read() does
+                        request.setData(conn.generateDataObject(length));
+                    }
+                    else if (length > request.getData().getBytes().length){
+                        setResult(RESULT.INVALIDDATALENGTH);
+                        throw new IOException("data supplied for " + request.getAddress() + " too small. Length : " + request.getData().getBytes().length + " required: " + length);
+                    }
+                    System.arraycopy(bytes, request.getByteAddress() - getByteAddress(), request.getData().getBytes(), request.getDataOffset(), request.getDataLength());
+                }
+            }
+            finally{
+                //the originating requests share the result, even if the merged range could not be read
+                for (ReadRequest request: requests){
+                    request.setResult(getResult());
+                }
+            }
+        }
+    }
+}
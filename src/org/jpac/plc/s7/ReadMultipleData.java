@@ -145,6 +145,24 @@ public class ReadMultipleData extends Command{
         requestSet.add(request);
     }
 
+    /**
+     * used to check, if the given read request can be added without exceeding the PDU size negotiated by the plc
+     * @param request
+     * @return true, if {@link #addRequest(ReadRequest)} will accept the request
+     */
+    boolean fits(ReadRequest request){
+        return requestSet.size() < RequestSet.MAXSIZE
+               && (pdu.getSendLength() + request.getSendParameterLength() + request.getReceiveParameterLength()) <= conn.getMaxPDULength()
+               && (pdu.getReceiveLength() + request.getSendDataLength() + request.getReceiveDataLength()) <= conn.getMaxPDULength();
+    }
+
+    /**
+     * @return the number of read requests contained
+     */
+    public int getNumberOfRequests(){
+        return requestSet.size();
+    }
+
     /**
      * used to remove a given read request from the set of requests
      * @param request
@@ -0,0 +1,188 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ReadPlanner.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.jpac.IndexOutOfRangeException;
+import org.jpac.plc.Request;
+import org.jpac.plc.TooManyRequestsException;
+import org.jpac.plc.ValueOutOfRangeException;
+
+/**
+ * used to pack an arbitrary collection of read requests into as few {@link ReadMultipleData} jobs as possible.<br>
+ * The requests are placed first fit decreasing by their expected receive length, using the per item costs
+ * supplied by the requests themselves. Before, nearby ranges of the same data block are merged by a {@link ReadCoalescer}.
+ * Requests whose data would not fit into a single PDU are split into chunks
+ * which read directly into the Data object of the originating request.
+ */
+public class ReadPlanner {
+    private final int  READREQUESTRECEIVEHEADERLENGTH = 4;
+
+    private Connection    conn;
+    private ReadCoalescer coalescer;
+
+    public ReadPlanner(Connection conn){
+        this.conn      = conn;
+        this.coalescer = new ReadCoalescer();
+    }
+
+    /**
+     * used to pack the given read requests into jobs
+     * @param requests collection of read requests
+     * @return list of jobs, which can be transacted by {@link Connection#transact(java.util.List)}
+     * @throws TooManyRequestsException thrown, if a request cannot be placed into an empty job
+     * @throws ValueOutOfRangeException
+     * @throws IndexOutOfRangeException
+     */
+    public List<ReadMultipleData> plan(Collection<ReadRequest> requests) throws TooManyRequestsException, ValueOutOfRangeException, IndexOutOfRangeException{
+        ArrayList<ReadRequest> items = new ArrayList<ReadRequest>(requests.size());
+        //merge nearby ranges first
+        for (ReadRequest request: coalescer.coalesce(requests, getMaxItemLength())){
+            if (request.getReceiveDataLength() > getMaxItemLength() + READREQUESTRECEIVEHEADERLENGTH){
+                split(request, items);
+            }
+            else{
+                items.add(request);
+            }
+        }
+        //first fit decreasing
+        Collections.sort(items, new Comparator<ReadRequest>(){
+            public int compare(ReadRequest r1, ReadRequest r2){
+                return r2.getReceiveDataLength() - r1.getReceiveDataLength();
+            }
+        });
+        ArrayList<ReadMultipleData> jobs = new ArrayList<ReadMultipleData>();
+        for (ReadRequest item: items){
+            ReadMultipleData job = null;
+            for (int i = 0; i < jobs.size() && job == null; i++){
+                if (jobs.get(i).fits(item)){
+                    job = jobs.get(i);
+                }
+            }
+            if (job == null){
+                job = new ReadMultipleData(conn);
+                jobs.add(job);
+            }
+            job.addRequest(item);
+        }
+        return jobs;
+    }
+
+    /**
+     * @param gap maximum number of unused bytes between two ranges of a data block, which are read as one item.
+     * A negative value disables merging (see {@link ReadCoalescer})
+     */
+    public void setCoalescingGap(int gap){
+        coalescer.setGap(gap);
+    }
+
+    /**
+     * @return maximum number of unused bytes between two ranges of a data block, which are read as one item.
+     */
+    public int getCoalescingGap(){
+        return coalescer.getGap();
+    }
+
+    /**
+     * @return the maximum length of the data of a single read request, which fits into an otherwise empty job.
+     * The length is even, so no fill byte is required
+     */
+    int getMaxItemLength(){
+        ReadMultipleData emptyJob = new ReadMultipleData(conn);
+        int maxLength = conn.getMaxPDULength() - emptyJob.getPDU().getReceiveLength() - READREQUESTRECEIVEHEADERLENGTH;
+        return maxLength & ~1;
+    }
+
+    /**
+     * used to split a request into chunks of the maximum item length. The chunks read into the Data object of the request
+     */
+    void split(ReadRequest request, List<ReadRequest> items) throws ValueOutOfRangeException, IndexOutOfRangeException{
+        Address address = (Address)request.getAddress();
+        if (request.getData() == null){
+            //allocate the Data object here, because all chunks have to share it
+            request.setData(conn.generateDataObject(request.getDataOffset() + request.getDataLength()));
+        }
+        int         chunkLength = getMaxItemLength();
+        List<Chunk> siblings    = new ArrayList<Chunk>();
+        for (int offset = 0; offset < request.getDataLength(); offset += chunkLength){
+            int length = Math.min(chunkLength, request.getDataLength() - offset);
+            items.add(new Chunk(request, siblings, new Address(address.getArea(), address.getDb(), address.getByteIndex() + offset, Address.NA, length), request.getDataOffset() + offset));
+        }
+    }
+
+    /**
+     * portion of a read request, which exceeds the size of a PDU. The results of the chunks are propagated to the originating request:
+     * it reports the result of the first chunk, which failed, or DATAOK, if all of them succeeded
+     */
+    class Chunk extends ReadRequest{
+        private ReadRequest request;
+        private List<Chunk> siblings; //all chunks of the request, including this one
+
+        Chunk(ReadRequest request, List<Chunk> siblings, Address address, int dataOffset) throws ValueOutOfRangeException, IndexOutOfRangeException{
+            super(Request.DATATYPE.BYTE, address, dataOffset, request.getData());
+            this.request  = request;
+            this.siblings = siblings;
+            siblings.add(this);
+        }
+
+        @Override
+        public void read(org.jpac.plc.Connection conn) throws IOException{
+            try{
+                super.read(conn);
+            }
+            finally{
+                propagateResult();
+            }
+        }
+
+        /**
+         * used to pass the results of the chunks to the originating request. The chunks may be read in any order,
+         * so a chunk read successfully must not hide the error of a sibling read before.
+         * As long as some chunks have not been read yet, the request reports NORESULT
+         */
+        void propagateResult(){
+            synchronized(siblings){
+                Object result = RESULT.DATAOK;
+                for (Chunk chunk: siblings){
+                    Object chunkResult = chunk.getResult();
+                    if (chunkResult == null || chunkResult == RESULT.NORESULT){
+                        result = RESULT.NORESULT;
+                    }
+                    else if (chunkResult != RESULT.DATAOK){
+                        result = chunkResult;
+                        break;
+                    }
+                }
+                request.setResult(result);
+            }
+        }
+    }
+}
@@ -28,39 +28,200 @@ package org.jpac.plc.s7;
 import org.jpac.ProcessException;
 import org.jpac.plc.Request;
 import org.jpac.plc.TooManyRequestsException;
+import org.jpac.plc.util.PlcImage;
+import org.jpac.plc.util.PriorityLanes.PRIORITY;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.Map;
 
 /**
  *
  * @author Ulbrich
  */
 public class ReceiveTransaction extends org.jpac.plc.ReceiveTransaction {
-    private ReadMultipleData rxCmd;
+    private static final int MAXCACHEDPLANS = 16; //number of request sets, whose packing is retained
+
+    private ArrayList<ReadRequest>      requests;
+    private ReadPlanner                 planner;
+    private List<ReadMultipleData>      jobs;    //requests packed into PDUs, null if the requests have been changed since the last transaction
+    private LinkedHashMap<RequestList, List<ReadMultipleData>> plans; //recently used request sets and their packing
+    private PlcImage                    image;
+    private PRIORITY                    priority = PRIORITY.NORMAL;
+    private int                         plannedPDULength; //PDU length the cached packings are based on
+    private TransactionFuture<ReceiveTransaction> future; //asynchronous transaction started last
 
     public ReceiveTransaction(Connection conn) {
         super(conn);
-        rxCmd = new ReadMultipleData(conn);
+        requests = new ArrayList<ReadRequest>();
+        planner  = new ReadPlanner(conn);
+        jobs     = null;
+        plans    = new LinkedHashMap<RequestList, List<ReadMultipleData>>(MAXCACHEDPLANS, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RequestList, List<ReadMultipleData>> eldest){
+                return size() > MAXCACHEDPLANS;
+            }
+        };
     }
 
+    /**
+     * used to read the data of all requests added. The requests are packed into as few PDUs as possible,
+     * which are transacted concurrently as far as supported by the plc.
+     * @throws IOException
+     */
     @Override
     public void transact() throws IOException {
-        rxCmd.transact();
+        if (((Connection)getConnection()).getMaxPDULength() != plannedPDULength){
+            //the PDU length has been renegotiated (e.g. on a reconnect): the requests must be packed again
+            plannedPDULength = ((Connection)getConnection()).getMaxPDULength();
+            plans.clear();
+            jobs = null;
+        }
+        if (jobs == null){
+            //request sets, which are transacted alternately, are packed only once
+            RequestList key = new RequestList(requests);
+            jobs = plans.get(key);
+            if (jobs == null){
+                try{
+                    jobs = planner.plan(requests);
+                }
+                catch(Exception exc){
+                    throw new IOException(exc.getMessage(), exc);
+                }
+                plans.put(key, jobs);
+            }
+        }
+        ((Connection)getConnection()).transact(jobs, priority);
+        if (image != null){
+            for (int i = 0; i < requests.size(); i++){
+                ReadRequest request = requests.get(i);
+                if (request.getDataType() != Request.DATATYPE.BIT && request.getData() != null){
+                    image.confirm(((Address)request.getAddress()).getBlockId(), request.getByteAddress(), request.getData().getBytes(), request.getDataOffset(), request.getDataLength());
+                }
+            }
+        }
     }
 
     @Override
     public void addRequest(Request request) throws TooManyRequestsException {
-        // pass request to the transacting s7 command
-        rxCmd.addRequest((ReadRequest)request);
+        // requests are packed into PDUs on the next transaction
+        requests.add((ReadRequest)request);
+        jobs = null;
     }
 
     @Override
     public void removeAllRequests() {
-        // pass request to the transacting s7 command
-        rxCmd.removeAllRequests();
+        requests.clear();
+        jobs = null;
+    }
+
+    /**
+     * @return the number of requests added
+     */
+    public int getNumberOfRequests(){
+        return requests.size();
+    }
+
+    /**
+     * @param gap maximum number of unused bytes between two ranges of a data block, which are read as one item.
+     * A negative value disables merging (see {@link ReadCoalescer})
+     */
+    public void setCoalescingGap(int gap){
+        planner.setCoalescingGap(gap);
+        plans.clear();
+        jobs = null;
+    }
+
+    /**
+     * @param image image of the plc, which is updated with the values read. Used to suppress redundant
+     * writes (see {@link TransmitTransaction#setWriteElision(PlcImage, long)}). null: no image is maintained
+     */
+    public void setImage(PlcImage image){
+        this.image = image;
+    }
+
+    public PlcImage getImage(){
+        return image;
+    }
+
+    /**
+     * @param priority priority class of the transaction. Concurrent transactions of the connection are served by priority
+     * (see {@link Connection#transact(java.util.List, PRIORITY)})
+     */
+    public void setPriority(PRIORITY priority){
+        this.priority = priority;
+    }
+
+    public PRIORITY getPriority(){
+        return priority;
+    }
+
+    /**
+     * used to read the data of all requests added in the background. The round trip to the plc overlaps with the processing done by the caller
+     * and with the transactions of other connections. Asynchronous transactions of the same connection are transacted one after another.
+     * The Data objects of the requests must not be accessed and the requests must not be changed until the transaction has been completed.
+     * @param listener notified on completion by the transacting thread, null if not required
+     * @return future completing, when the data read has been stored in the Data objects of the requests. Its get() methods throw an ExecutionException
+     * caused by the IOException, if the transaction failed
+     * @throws IllegalStateException thrown, if the preceding asynchronous transaction is still pending
+     */
+    public Future<ReceiveTransaction> transactAsync(TransactionListener listener){
+        if (future != null && !future.isDone()){
+            throw new IllegalStateException("preceding asynchronous transaction still pending");
+        }
+        future = new TransactionFuture<ReceiveTransaction>(this, listener);
+        ((Connection)getConnection()).transactAsynchronously(future);
+        return future;
     }
 
+    /**
+     * used to read the data of all requests added asynchronously and to wait for its completion inside a jPac module.
+     * @param waitCycles maximum number of cycles to wait for the completion. 0: wait until completed
+     * @throws IOException thrown, if the transaction failed
+     * @throws ProcessException thrown, if the transaction has not been completed in time (EventTimedoutException). The transaction
+     * remains pending and is completed in the background
+     */
     @Override
     public void transact(int waitCycles) throws IOException, ProcessException {
-        throw new UnsupportedOperationException("Not supported yet.");
+        transactAsync(null);
+        future.await(waitCycles);
+    }
+
+    /**
+     * immutable copy of a list of read requests. Two lists are equal, if they contain the same request instances in the same order
+     */
+    private static class RequestList{
+        private final ReadRequest[] requests;
+        private final int           hashCode;
+
+        RequestList(List<ReadRequest> requests){
+            this.requests = requests.toArray(new ReadRequest[requests.size()]);
+            int h = 1;
+            for (ReadRequest request: this.requests){
+                h = 31 * h + System.identityHashCode(request);
+            }
+            this.hashCode = h;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (!(o instanceof RequestList) || ((RequestList)o).requests.length != requests.length){
+                return false;
+            }
+            ReadRequest[] other = ((RequestList)o).requests;
+            for (int i = 0; i < requests.length; i++){
+                if (requests[i] != other[i]){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode(){
+            return hashCode;
+        }
     }
 }
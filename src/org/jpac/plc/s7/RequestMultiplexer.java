@@ -0,0 +1,230 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : RequestMultiplexer.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * used by several threads to share the round trips to the plc.<br>
+ * The requests submitted concurrently are packed into as few jobs as possible and transacted together.
+ * There is no dispatcher thread: a caller finding the connection idle transacts the requests of all callers,
+ * which have been queued meanwhile, on their behalf (flat combining). Thus an uncontended caller transacts its requests
+ * without a thread switch, while N concurrent callers share about one round trip.<br>
+ * Every caller returns, when its own requests have been transacted. If the transaction of a batch fails,
+ * all callers contributing to it receive the IOException.<br>
+ * The order of submission is kept between reads and writes: a batch is split into runs of consecutive reads or writes,
+ * which are transacted one after another. Only the requests of a run are transacted concurrently.
+ */
+public class RequestMultiplexer {
+    private final Connection            conn;
+    private final ReadPlanner           planner;
+    private final ArrayList<Submission> queue;        //submissions waiting for the next batch
+    private boolean                     dispatching;  //true, while a caller transacts a batch
+    private long                        batches;      //number of batches transacted
+    private long                        submissions;  //number of submissions transacted
+
+    public RequestMultiplexer(Connection conn){
+        this.conn    = conn;
+        this.planner = new ReadPlanner(conn);
+        this.queue   = new ArrayList<Submission>();
+    }
+
+    /**
+     * used to read the data of the given requests. Blocks, until the data has been stored in the Data objects of the requests
+     * @param requests the read requests
+     * @throws IOException
+     */
+    public void read(Collection<ReadRequest> requests) throws IOException{
+        transact(new Submission(new ArrayList<ReadRequest>(requests), Collections.<WriteRequest>emptyList()));
+    }
+
+    /**
+     * used to read the data of a single request (see {@link #read(Collection)})
+     * @param request the read request
+     * @throws IOException
+     */
+    public void read(ReadRequest request) throws IOException{
+        read(Collections.singletonList(request));
+    }
+
+    /**
+     * used to write the data of the given requests. Blocks, until the plc has acknowledged them
+     * @param requests the write requests. Every request must fit into a single PDU
+     * @throws IOException
+     */
+    public void write(Collection<WriteRequest> requests) throws IOException{
+        WriteMultipleData emptyJob = new WriteMultipleData(conn);
+        for (WriteRequest request: requests){
+            if (!emptyJob.fits(request)){
+                throw new IOException("write request exceeds size negotiated by the PLC: " + request);
+            }
+        }
+        transact(new Submission(Collections.<ReadRequest>emptyList(), new ArrayList<WriteRequest>(requests)));
+    }
+
+    /**
+     * used to write the data of a single request (see {@link #write(Collection)})
+     * @param request the write request
+     * @throws IOException
+     */
+    public void write(WriteRequest request) throws IOException{
+        write(Collections.singletonList(request));
+    }
+
+    /**
+     * @return the number of batches transacted so far
+     */
+    public synchronized long getBatches(){
+        return batches;
+    }
+
+    /**
+     * @return the number of submissions (calls of read() or write()) transacted so far.
+     * The ratio to {@link #getBatches()} is the number of callers sharing a round trip on average
+     */
+    public synchronized long getSubmissions(){
+        return submissions;
+    }
+
+    private void transact(Submission submission) throws IOException{
+        ArrayList<Submission> batch;
+        synchronized(this){
+            queue.add(submission);
+            //wait, until another caller has transacted the submission or the connection is idle
+            while(dispatching && !submission.done){
+                try{
+                    wait();
+                }
+                catch(InterruptedException exc){
+                    //withdraw the submission, unless it is being transacted by another caller already
+                    queue.remove(submission);
+                    throw new InterruptedIOException("interrupted while waiting for the plc");
+                }
+            }
+            if (submission.done){
+                submission.complete();
+                return;
+            }
+            dispatching = true;
+            batch       = new ArrayList<Submission>(queue);
+            queue.clear();
+        }
+        IOException error = null;
+        int         begin = 0;
+        try{
+            while(begin < batch.size()){
+                //transact the next run of consecutive reads or writes
+                int end = begin + 1;
+                while(end < batch.size() && batch.get(end).isRead() == batch.get(begin).isRead()){
+                    end++;
+                }
+                conn.transact(pack(batch.subList(begin, end)));
+                begin = end;
+            }
+        }
+        catch(IOException exc){
+            error = exc;
+        }
+        catch(RuntimeException exc){
+            error = new IOException(exc.getMessage(), exc);
+        }
+        synchronized(this){
+            for (int i = 0; i < batch.size(); i++){
+                //the runs following a failed one are not transacted at all
+                batch.get(i).done  = true;
+                batch.get(i).error = i >= begin ? error : null;
+            }
+            batches++;
+            submissions += batch.size();
+            dispatching  = false;
+            //wake up the callers of the batch and a caller taking over the submissions queued meanwhile
+            notifyAll();
+        }
+        submission.complete();
+    }
+
+    /**
+     * packs the requests of a run of submissions into jobs
+     */
+    private List<Command> pack(List<Submission> batch) throws IOException{
+        ArrayList<ReadRequest>  reads  = new ArrayList<ReadRequest>();
+        ArrayList<WriteRequest> writes = new ArrayList<WriteRequest>();
+        for (Submission s: batch){
+            reads.addAll(s.reads);
+            writes.addAll(s.writes);
+        }
+        ArrayList<Command> jobs = new ArrayList<Command>();
+        try{
+            if (!reads.isEmpty()){
+                //nearby ranges of different callers are merged as well
+                jobs.addAll(planner.plan(reads));
+            }
+            WriteMultipleData job = null;
+            for (WriteRequest request: writes){
+                if (job == null || !job.fits(request)){
+                    job = new WriteMultipleData(conn);
+                    jobs.add(job);
+                }
+                job.addRequest(request);
+            }
+        }
+        catch(Exception exc){
+            throw new IOException(exc.getMessage(), exc);
+        }
+        return jobs;
+    }
+
+    /**
+     * requests of a single caller
+     */
+    private static class Submission{
+        final List<ReadRequest>  reads;
+        final List<WriteRequest> writes;
+        boolean                  done;
+        IOException              error;
+
+        Submission(List<ReadRequest> reads, List<WriteRequest> writes){
+            this.reads  = reads;
+            this.writes = writes;
+        }
+
+        boolean isRead(){
+            return writes.isEmpty();
+        }
+
+        void complete() throws IOException{
+            if (error != null){
+                //thrown in the context of the caller
+                throw new IOException(error.getMessage(), error);
+            }
+        }
+    }
+}
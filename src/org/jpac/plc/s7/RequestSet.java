@@ -38,7 +38,7 @@ import org.jpac.plc.TooManyRequestsException;
 class RequestSet{
     static Logger Log = Logger.getLogger("jpac.plc.s7");
 
-    private final int MAXSIZE = 255; //maximum number of requests per PDU
+    static final int MAXSIZE = 255; //maximum number of requests per PDU
 
     private ArrayList<Request> requests;
 
@@ -62,7 +62,7 @@ class RequestSet{
      * a pdu, if the given request would be added.
      */
     void add(org.jpac.plc.Request request) throws TooManyRequestsException{
-        if (requests.size() > MAXSIZE){
+        if (requests.size() >= MAXSIZE){
             throw new TooManyRequestsException("try to send more than 255 requests inside one PDU");
         }
         requests.add(request);
@@ -0,0 +1,132 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : TransactionFuture.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import org.apache.log4j.Logger;
+import org.jpac.JPac;
+import org.jpac.ProcessEvent;
+import org.jpac.ProcessException;
+import org.jpac.plc.Transaction;
+
+/**
+ * pending asynchronous transaction. Completes, when the transaction has been transacted by the background thread of its connection
+ * and notifies the listener given, if any.
+ * @param <T> type of the transaction
+ */
+class TransactionFuture<T extends Transaction> extends FutureTask<T>{
+    static Logger Log = Logger.getLogger("jpac.plc.s7");
+
+    private final T                   transaction;
+    private final TransactionListener listener;
+
+    TransactionFuture(final T transaction, TransactionListener listener){
+        super(new Callable<T>(){
+            public T call() throws IOException{
+                transaction.transact();
+                return transaction;
+            }
+        });
+        this.transaction = transaction;
+        this.listener    = listener;
+    }
+
+    @Override
+    protected void done(){
+        if (listener == null || isCancelled()){
+            return;
+        }
+        try{
+            IOException exc = null;
+            try{
+                get();
+            }
+            catch(ExecutionException ex){
+                exc = toIOException(ex.getCause());
+            }
+            if (exc == null){
+                listener.transacted(transaction);
+            }
+            else{
+                listener.failed(transaction, exc);
+            }
+        }
+        catch(InterruptedException exc){
+            //cannot occur: the transaction is done already
+        }
+        catch(RuntimeException exc){
+            Log.error("Error: ", exc);
+        }
+    }
+
+    /**
+     * used to wait for the completion of the transaction inside a jPac module
+     * @param waitCycles maximum number of cycles to wait. 0: wait until completed
+     * @return the transaction
+     * @throws IOException thrown, if the transaction failed
+     * @throws ProcessException thrown, if the transaction has not been completed in time (EventTimedoutException)
+     */
+    T await(int waitCycles) throws IOException, ProcessException{
+        ProcessEvent completed = new ProcessEvent(){
+            @Override
+            public boolean fire() throws ProcessException{
+                return isDone();
+            }
+        };
+        if (waitCycles > 0){
+            completed.await(waitCycles * JPac.getInstance().getCycleTime());
+        }
+        else{
+            completed.await();
+        }
+        return getResult();
+    }
+
+    /**
+     * used to wait for the completion of the transaction
+     * @return the transaction
+     * @throws IOException thrown, if the transaction failed
+     */
+    T getResult() throws IOException{
+        try{
+            return get();
+        }
+        catch(InterruptedException exc){
+            throw new InterruptedIOException("interrupted while waiting for the transaction");
+        }
+        catch(ExecutionException exc){
+            throw toIOException(exc.getCause());
+        }
+    }
+
+    private static IOException toIOException(Throwable cause){
+        return cause instanceof IOException ? (IOException)cause : new IOException(cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : TransactionListener.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import org.jpac.plc.Transaction;
+
+/**
+ * used to be notified on the completion of a transaction transacted asynchronously
+ * (see {@link ReceiveTransaction#transactAsync(TransactionListener)}, {@link TransmitTransaction#transactAsync(TransactionListener)}).<br>
+ * The methods are called by the thread transacting in the background and must return quickly:
+ * further transactions of the connection are delayed meanwhile.
+ */
+public interface TransactionListener {
+    /**
+     * called, when the transaction has been completed successfully. The data received is stored in the Data objects of the requests
+     * @param transaction the transaction
+     */
+    public void transacted(Transaction transaction);
+
+    /**
+     * called, when the transaction failed
+     * @param transaction the transaction
+     * @param exc the cause of the failure
+     */
+    public void failed(Transaction transaction, IOException exc);
+}
@@ -25,43 +25,315 @@
 
 package org.jpac.plc.s7;
 
+import org.jpac.IndexOutOfRangeException;
 import org.jpac.ProcessException;
 import org.jpac.plc.Request;
 import org.jpac.plc.TooManyRequestsException;
+import org.jpac.plc.ValueOutOfRangeException;
+import org.jpac.plc.util.DirtyRanges;
+import org.jpac.plc.util.PlcImage;
+import org.jpac.plc.util.PriorityLanes.PRIORITY;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  *
  * @author Ulbrich
  */
 public class TransmitTransaction extends org.jpac.plc.TransmitTransaction {
-    private WriteMultipleData txCmd;
+    private WriteMultipleData       txCmd;           //all requests packed into a single job, null if they do not fit
+    private ArrayList<WriteMultipleData> txJobs;     //list holding txCmd, retained to avoid allocations on every transaction
+    private int                     plannedPDULength; //PDU length txCmd is based on
+    private ArrayList<WriteRequest> requests;
+    private boolean                 transmitModifiedOnly;
+    private PlcImage                image;
+    private PRIORITY                priority = PRIORITY.NORMAL;
+    private long                    forcedRefreshInterval;
+    private TransactionFuture<TransmitTransaction> future; //asynchronous transaction started last
 
     public TransmitTransaction(Connection conn) {
         super(conn);
-        txCmd = new WriteMultipleData((Connection) getConnection());
+        txCmd    = new WriteMultipleData((Connection) getConnection());
+        txJobs   = new ArrayList<WriteMultipleData>(1);
+        txJobs.add(txCmd);
+        requests = new ArrayList<WriteRequest>();
+        plannedPDULength = conn.getMaxPDULength();
     }
 
     @Override
     public void transact() throws IOException {
-        // transact the s7 command
-        txCmd.transact();
+        if (((Connection)getConnection()).getMaxPDULength() != plannedPDULength){
+            //the PDU length has been renegotiated (e.g. on a reconnect)
+            repack();
+        }
+        if (transmitModifiedOnly || image != null || txCmd == null){
+            transactPortions();
+        }
+        else{
+            // transact the s7 command
+            ((Connection)getConnection()).transact(txJobs, priority);
+        }
     }
 
     @Override
     public void addRequest(Request request) throws TooManyRequestsException {
         // pass request to the transacting s7 command
-        txCmd.addRequest((WriteRequest)request);
+        if (txCmd != null){
+            txCmd.addRequest((WriteRequest)request);
+        }
+        requests.add((WriteRequest)request);
     }
 
     @Override
     public void removeAllRequests() {
         // pass request to the transacting s7 command
+        if (txCmd == null){
+            txCmd = new WriteMultipleData((Connection)getConnection());
+            txJobs.set(0, txCmd);
+        }
         txCmd.removeAllRequests();
+        requests.clear();
     }
 
+    /**
+     * used to transmit only the byte ranges modified by the setters of {@link Data} since the last transmission.
+     * Requests for Data objects not tracking their modifications are transmitted completely.
+     * @param transmitModifiedOnly true: only modified ranges are transmitted
+     */
+    public void setTransmitModifiedOnly(boolean transmitModifiedOnly){
+        this.transmitModifiedOnly = transmitModifiedOnly;
+    }
+
+    public boolean isTransmitModifiedOnly(){
+        return transmitModifiedOnly;
+    }
+
+    /**
+     * used to suppress the transmission of items, whose values are known to be held by the plc already.
+     * The image is updated on every successful transmission and may be shared with {@link ReceiveTransaction}s
+     * reading the same areas (see {@link ReceiveTransaction#setImage(PlcImage)}). Bit items are always transmitted.
+     * @param image last known image of the plc, null: write elision is disabled
+     * @param forcedRefreshInterval items are transmitted anyway, if their values have not been confirmed for this period [ms].
+     * Guards against modifications made by other parties.
+     */
+    public void setWriteElision(PlcImage image, long forcedRefreshInterval){
+        this.image                 = image;
+        this.forcedRefreshInterval = forcedRefreshInterval;
+    }
+
+    public PlcImage getImage(){
+        return image;
+    }
+
+    /**
+     * @param priority priority class of the transaction. Concurrent transactions of the connection are served by priority
+     * (see {@link Connection#transact(java.util.List, PRIORITY)})
+     */
+    public void setPriority(PRIORITY priority){
+        this.priority = priority;
+    }
+
+    public PRIORITY getPriority(){
+        return priority;
+    }
+
+    public long getForcedRefreshInterval(){
+        return forcedRefreshInterval;
+    }
+
+    /**
+     * used to write the data of all requests added in the background. The round trip to the plc overlaps with the processing done by the caller
+     * and with the transactions of other connections. Asynchronous transactions of the same connection are transacted one after another.
+     * The Data objects of the requests must not be modified and the requests must not be changed until the transaction has been completed.
+     * @param listener notified on completion by the transacting thread, null if not required
+     * @return future completing, when the data has been written to the plc. Its get() methods throw an ExecutionException
+     * caused by the IOException, if the transaction failed
+     * @throws IllegalStateException thrown, if the preceding asynchronous transaction is still pending
+     */
+    public Future<TransmitTransaction> transactAsync(TransactionListener listener){
+        if (future != null && !future.isDone()){
+            throw new IllegalStateException("preceding asynchronous transaction still pending");
+        }
+        future = new TransactionFuture<TransmitTransaction>(this, listener);
+        ((Connection)getConnection()).transactAsynchronously(future);
+        return future;
+    }
+
+    /**
+     * used to write the data of all requests added asynchronously and to wait for its completion inside a jPac module.
+     * @param waitCycles maximum number of cycles to wait for the completion. 0: wait until completed
+     * @throws IOException thrown, if the transaction failed
+     * @throws ProcessException thrown, if the transaction has not been completed in time (EventTimedoutException). The transaction
+     * remains pending and is completed in the background
+     */
     @Override
     public void transact(int waitCycles) throws IOException, ProcessException {
-        throw new UnsupportedOperationException("Not supported yet.");
+        transactAsync(null);
+        future.await(waitCycles);
+    }
+
+    /**
+     * packs the requests into a single job according to the current PDU length. If they do not fit anymore,
+     * they are transmitted in portions.
+     */
+    private void repack(){
+        plannedPDULength = ((Connection)getConnection()).getMaxPDULength();
+        txCmd = new WriteMultipleData((Connection)getConnection());
+        try{
+            for (WriteRequest request: requests){
+                txCmd.addRequest(request);
+            }
+            txJobs.set(0, txCmd);
+        }
+        catch(TooManyRequestsException exc){
+            txCmd = null;
+        }
+    }
+
+    /**
+     * transmits the requests or the modified ranges covered by them, omitting items already held by the plc.
+     * The ranges are marked as unmodified before and marked again, if the transmission fails. Thus, modifications made meanwhile are never lost.
+     */
+    private void transactPortions() throws IOException{
+        Connection              conn     = (Connection)getConnection();
+        ArrayList<WriteRequest> portions = new ArrayList<WriteRequest>();
+        ArrayList<int[]>        taken    = new ArrayList<int[]>(requests.size());
+        try{
+            if (transmitModifiedOnly){
+                //collect the ranges of all requests before marking them as unmodified: requests may share bytes
+                //of the data (e.g. the bits of a byte), whose modifications must not be taken by the first one only
+                for (WriteRequest request: requests){
+                    taken.add(getModifiedRanges(request));
+                }
+                for (WriteRequest request: requests){
+                    clearModifiedRanges(request);
+                }
+                for (int i = 0; i < requests.size(); i++){
+                    addPortions(requests.get(i), taken.get(i), portions, conn);
+                }
+            }
+            else{
+                portions.addAll(requests);
+            }
+            if (image != null){
+                for (int i = portions.size() - 1; i >= 0; i--){
+                    if (isHeldByPlc(portions.get(i))){
+                        portions.remove(i);
+                    }
+                }
+            }
+            //pack the portions into as few jobs as possible
+            ArrayList<WriteMultipleData> jobs = new ArrayList<WriteMultipleData>();
+            for (WriteRequest portion: portions){
+                if (jobs.isEmpty() || !jobs.get(jobs.size() - 1).fits(portion)){
+                    jobs.add(new WriteMultipleData(conn));
+                }
+                jobs.get(jobs.size() - 1).addRequest(portion);
+            }
+            if (!jobs.isEmpty()){
+                conn.transact(jobs, priority);
+            }
+            if (image != null){
+                for (WriteRequest portion: portions){
+                    confirm(portion);
+                }
+            }
+        }
+        catch(Exception exc){
+            if (image != null){
+                //the state of the plc is unknown
+                for (WriteRequest portion: portions){
+                    image.invalidate(((Address)portion.getAddress()).getBlockId(), portion.getByteAddress(), getByteLength(portion));
+                }
+            }
+            //mark the ranges taken as modified again
+            for (int i = 0; i < taken.size(); i++){
+                DirtyRanges dirtyRanges = getDirtyRanges(requests.get(i));
+                int[]       ranges      = taken.get(i);
+                for (int r = 0; dirtyRanges != null && r < ranges.length; r += 2){
+                    dirtyRanges.add(ranges[r], ranges[r + 1]);
+                }
+            }
+            if (exc instanceof IOException){
+                throw (IOException)exc;
+            }
+            throw new IOException(exc.getMessage(), exc);
+        }
+    }
+
+    /**
+     * @return the modified ranges of the data covered by the request.
+     * null, if the Data object of the request does not track its modifications
+     */
+    private int[] getModifiedRanges(WriteRequest request){
+        DirtyRanges dirtyRanges = getDirtyRanges(request);
+        if (dirtyRanges == null){
+            return null;
+        }
+        int begin = request.getDataOffset();
+        //only adjacent ranges are merged: bytes in between may have been changed by the plc meanwhile
+        return dirtyRanges.toArray(begin, begin + getByteLength(request), 0);
+    }
+
+    /**
+     * used to mark the data covered by the request as unmodified
+     */
+    private void clearModifiedRanges(WriteRequest request){
+        DirtyRanges dirtyRanges = getDirtyRanges(request);
+        if (dirtyRanges != null){
+            dirtyRanges.remove(request.getDataOffset(), request.getDataOffset() + getByteLength(request));
+        }
+    }
+
+    private void addPortions(WriteRequest request, int[] ranges, List<WriteRequest> portions, Connection conn) throws ValueOutOfRangeException, IndexOutOfRangeException{
+        if (ranges == null || (request.getDataType() == Request.DATATYPE.BIT && ranges.length > 0)){
+            //no tracking of modifications or a modified bit
+            portions.add(request);
+            return;
+        }
+        if (request.getDataType() == Request.DATATYPE.BIT){
+            return;
+        }
+        Address address     = (Address)request.getAddress();
+        int     chunkLength = new WriteMultipleData(conn).getMaxItemLength();
+        for (int r = 0; r < ranges.length; r += 2){
+            int begin = ranges[r];
+            int end   = ranges[r + 1];
+            if (address.getArea().isWordArray()){
+                //timers and counters are written as a whole
+                begin -= (request.getByteAddress() + begin - request.getDataOffset()) & 1;
+                end   += (request.getByteAddress() + end - request.getDataOffset()) & 1;
+            }
+            for (int offset = begin; offset < end; offset += chunkLength){
+                int length = Math.min(chunkLength, end - offset);
+                portions.add(new WriteRequest(Request.DATATYPE.BYTE, new Address(address.getArea(), address.getDb(), request.getByteAddress() + offset - request.getDataOffset(), Address.NA, length), offset, request.getData()));
+            }
+        }
+    }
+
+    private DirtyRanges getDirtyRanges(WriteRequest request){
+        return request.getData() instanceof Data ? ((Data)request.getData()).getDirtyRanges() : null;
+    }
+
+    private boolean isHeldByPlc(WriteRequest request){
+        return request.getDataType() != Request.DATATYPE.BIT &&
+               image.matches(((Address)request.getAddress()).getBlockId(), request.getByteAddress(), request.getData().getBytes(), request.getDataOffset(), request.getDataLength(), forcedRefreshInterval);
+    }
+
+    private void confirm(WriteRequest request){
+        int block = ((Address)request.getAddress()).getBlockId();
+        if (request.getDataType() == Request.DATATYPE.BIT){
+            //the values of the other bits of the byte are unknown
+            image.invalidate(block, request.getByteAddress(), 1);
+        }
+        else{
+            image.confirm(block, request.getByteAddress(), request.getData().getBytes(), request.getDataOffset(), request.getDataLength());
+        }
+    }
+
+    private int getByteLength(WriteRequest request){
+        return request.getDataType() == Request.DATATYPE.BIT ? 1 : request.getDataLength();
     }
 }
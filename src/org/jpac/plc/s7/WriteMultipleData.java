@@ -118,6 +118,8 @@ public class WriteMultipleData extends Command{
 
     }
 
+    private final int WRITEITEMOVERHEAD = 16; //12 bytes of request parameters + 4 bytes of data header per write item
+
     RequestSet requestSet;
 
     /**
@@ -139,6 +141,25 @@ public class WriteMultipleData extends Command{
         requestSet.add(request);
     }
 
+    /**
+     * used to check, if the given write request can be added without exceeding the PDU size negotiated by the plc
+     * @param request
+     * @return true, if {@link #addRequest(WriteRequest)} will accept the request
+     */
+    boolean fits(WriteRequest request){
+        return requestSet.size() < RequestSet.MAXSIZE
+               && (pdu.getSendLength() + request.getSendParameterLength() + request.getSendDataLength()) <= conn.getMaxPDULength()
+               && (pdu.getReceiveLength() + request.getReceiveParameterLength()+ request.getReceiveDataLength()) <= conn.getMaxPDULength();
+    }
+
+    /**
+     * @return the maximum length of the data of a single write request, which fits into this otherwise empty command.
+     * The length is even, so no fill byte is required
+     */
+    int getMaxItemLength(){
+        return (conn.getMaxPDULength() - getPDU().getSendLength() - WRITEITEMOVERHEAD) & ~1;
+    }
+
     /**
      * used to remove the given request from the set of requests
      * @param request a request
@@ -52,6 +52,7 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
 
 
         private final int n;
+        private static final RESULT[] VALUES = values(); //values() returns a new copy on every call
 
         RESULT(int n){
             this.n = n;
@@ -72,7 +73,7 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
          */
         public static RESULT getValue(int n){
             RESULT match = null;
-            for (RESULT p : RESULT.values()){
+            for (RESULT p : VALUES){
                 if (p.toInt() == n) {
                     match = p;
                     break;
@@ -90,6 +91,7 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
         DB     (0x84);
 
         private final int n;
+        private static final AREA[] VALUES = values();
 
         AREA(int n){
             this.n = n;
@@ -110,7 +112,7 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
          */
         public static AREA getValue(int n)throws WrongOrdinaryException{
             AREA match = null;
-            for (AREA p : AREA.values()){
+            for (AREA p : VALUES){
                 if (p.toInt() == n) {
                     match = p;
                     break;
@@ -130,6 +132,7 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
         LENGTHINBYTES   (9);
 
         private final int n;
+        private static final DATAFORMAT[] VALUES = values();
 
         DATAFORMAT(int n){
             this.n = n;
@@ -150,7 +153,7 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
          */
         public static DATAFORMAT getValue(int n){
             DATAFORMAT match = null;
-            for (DATAFORMAT p : DATAFORMAT.values()){
+            for (DATAFORMAT p : VALUES){
                 if (p.toInt() == n) {
                     match = p;
                     break;
@@ -180,9 +183,23 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
      */
     public WriteRequest(DATATYPE dataType, int db, int byteAddress, int bitAddress,  int dataOffset, int dataLength, org.jpac.plc.Data data) throws ValueOutOfRangeException, IndexOutOfRangeException{
         super(dataType, new Address(db, byteAddress, bitAddress, dataLength), dataOffset, data);
-        if (dataType == DATATYPE.BIT && address.getSize() != 1){
-            throw new ValueOutOfRangeException("exactly one bit per bitwise request can be accessed");
-        }
+        checkDataType();
+    }
+
+    /**
+     * @param dataType actually two data types are supported: DATATYPE.BIT for accessing BOOL type data items and DATATYPE.BYTE for all other data types
+     * @param area the memory area of the plc, which contains the data to be written to (inputs, outputs, markers, timers or counters)
+     * @param byteAddress the byte address of the data inside the area. Timer or counter n is located at byte address 2 * n
+     * @param bitAddress the bit address of data inside the byte addressed by "byteAddress". Applicable, if the data to be written is of the plc type BOOL
+     * @param dataOffset the offset of the data item inside the local copy of the data (see parameter "data")
+     * @param dataLength the length of the data item, to be written. 2 bytes per timer or counter
+     * @param data a local copy of the data, to be written to the plc
+     * @throws ValueOutOfRangeException thrown, if the combination of the given parameters is inconsistent
+     * @throws IndexOutOfRangeException thrown, if one of the address of offset values are out of range.
+     */
+    public WriteRequest(DATATYPE dataType, Address.AREA area, int byteAddress, int bitAddress,  int dataOffset, int dataLength, org.jpac.plc.Data data) throws ValueOutOfRangeException, IndexOutOfRangeException{
+        super(dataType, new Address(area, byteAddress, bitAddress, dataLength), dataOffset, data);
+        checkDataType();
     }
 
     /**
@@ -193,9 +210,7 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
      */
     public WriteRequest(DATATYPE dataType, org.jpac.plc.Address address, int dataOffset, org.jpac.plc.Data data) throws ValueOutOfRangeException, IndexOutOfRangeException{
         super(dataType, address, dataOffset, data);
-        if (dataType == DATATYPE.BIT && address.getSize() != 1){
-            throw new ValueOutOfRangeException("exactly one bit per bitwise request can be accessed");
-        }
+        checkDataType();
     }
 
     /**
@@ -211,18 +226,34 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
         ownConn.getOutputStream().write(0x0a);
         ownConn.getOutputStream().write(0x10);
         if (ownConn.isDebug()) Log.debug("         some data ...");
-        ownConn.getOutputStream().write(getDataType().toInt());
-        if (ownConn.isDebug()) Log.debug("         data type " + getDataType());
-        ownConn.getOutputStream().writeWORD(getDataLength());
+        Address address = (Address)getAddress();
+        if (address.getArea().isWordArray()){
+            //timers and counters are transported as such
+            ownConn.getOutputStream().write(address.getArea().toInt());
+            if (ownConn.isDebug()) Log.debug("         data type " + address.getArea());
+            ownConn.getOutputStream().writeWORD(getDataLength() / 2);
+        }
+        else{
+            ownConn.getOutputStream().write(getDataType().toInt());
+            if (ownConn.isDebug()) Log.debug("         data type " + getDataType());
+            ownConn.getOutputStream().writeWORD(getDataLength());
+        }
         if (ownConn.isDebug()) Log.debug("         size of data block [byte] " + getDataLength());
-        ownConn.getOutputStream().writeWORD(getDb());
-        if (ownConn.isDebug()) Log.debug("         DB " + getDb());
-        ownConn.getOutputStream().write(AREA.DB.toInt());
+        ownConn.getOutputStream().writeWORD(address.getEncodedDb());
+        if (ownConn.isDebug()) Log.debug("         DB " + address.getEncodedDb());
+        ownConn.getOutputStream().write(address.getArea().toInt());
+        if (ownConn.isDebug()) Log.debug("         area " + address.getArea());
         int bitOffset = 0;
-        if (getByteAddress() != Address.NA)
-            bitOffset = getByteAddress() * 8;
-        if (getBitAddress() != Address.NA)
-            bitOffset += getBitAddress();
+        if (address.getArea().isWordArray()){
+            //timers and counters are addressed by their number
+            bitOffset = getByteAddress() / 2;
+        }
+        else{
+            if (getByteAddress() != Address.NA)
+                bitOffset = getByteAddress() * 8;
+            if (getBitAddress() != Address.NA)
+                bitOffset += getBitAddress();
+        }
         ownConn.getOutputStream().write((bitOffset & 0x00FF0000) >> 16); //most significant byte of the 3 Byte bit address
         ownConn.getOutputStream().writeWORD(bitOffset & 0x0000FFFF);     //2 trailing bytes of the 3 Byte bit address
 
@@ -255,18 +286,25 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
         if (conn.isDebug()) Log.debug("       write request data ...");
         //write out some header information ...
         ownConn.getOutputStream().write(WRITEREQUESTHEADERTAG);
-        switch(getDataType()){
-            case BIT : dataFormat = DATAFORMAT.ONEBYTEPERBIT;
-                       actualDataLength = getDataLength(); //data length in byte
-                       break;
-            case BYTE: dataFormat = DATAFORMAT.LENGTHINBITS;// data length in bit
-                       actualDataLength = 8 * getDataLength();
-                       break;
-            //not supported yet
-            //case WORD: dataFormat = DATAFORMAT.LENGTHINBITS;// data length in bit
-            //           actualDataLength = 16 * getDataLength();
-            //           break;
-            default: throw new IOException(" don't know how to write this data type: " + getDataType());
+        if (((Address)getAddress()).getArea().isWordArray()){
+            //timers and counters are transported as an octet string
+            dataFormat = DATAFORMAT.LENGTHINBYTES;
+            actualDataLength = getDataLength();
+        }
+        else{
+            switch(getDataType()){
+                case BIT : dataFormat = DATAFORMAT.ONEBYTEPERBIT;
+                           actualDataLength = getDataLength(); //data length in byte
+                           break;
+                case BYTE: dataFormat = DATAFORMAT.LENGTHINBITS;// data length in bit
+                           actualDataLength = 8 * getDataLength();
+                           break;
+                //not supported yet
+                //case WORD: dataFormat = DATAFORMAT.LENGTHINBITS;// data length in bit
+                //           actualDataLength = 16 * getDataLength();
+                //           break;
+                default: throw new IOException(" don't know how to write this data type: " + getDataType());
+            }
         }
         ownConn.getOutputStream().write(dataFormat.toInt());
         if (ownConn.isDebug()) Log.debug("          data format: " + dataFormat);
@@ -283,8 +321,13 @@ public class WriteRequest extends org.jpac.plc.WriteRequest{
         if (ownConn.isDebug()) Log.debug("       request data written ...");
     }
 
-    private int getDb(){
-        return ((Address)address).getDb();
+    private void checkDataType() throws ValueOutOfRangeException{
+        if (dataType == DATATYPE.BIT && address.getSize() != 1){
+            throw new ValueOutOfRangeException("exactly one bit per bitwise request can be accessed");
+        }
+        if (dataType == DATATYPE.BIT && address instanceof Address && ((Address)address).getArea().isWordArray()){
+            throw new ValueOutOfRangeException("timers and counters cannot be accessed bitwise");
+        }
     }
 
     /**
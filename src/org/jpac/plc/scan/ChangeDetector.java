@@ -0,0 +1,198 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ChangeDetector.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.scan;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.jpac.plc.Data;
+import org.jpac.plc.s7.symaddr.StructType;
+import org.jpac.plc.s7.symaddr.Type;
+
+/**
+ * used to detect the modifications of a Data object between two receive transactions.<br>
+ * The detector keeps a copy of the previous contents of the Data object and compares it word wise
+ * with the current contents. The listeners are notified about the modified byte ranges only. If a StructType
+ * describing the layout of the Data object is attached, the field listeners are notified about the modified fields.
+ * The first detection reports the whole Data object as modified.
+ */
+public class ChangeDetector {
+    private static final int WORDLENGTH = 8;
+
+    private final Data                      data;
+    private final List<ChangeListener>      listeners;
+    private final List<FieldChangeListener> fieldListeners;
+    private StructType.Field[]              fields;
+    private int                             structOffset;
+    private byte[]                          image;        //contents of the Data object on the last detection
+    private ByteBuffer                      imageView;
+    private byte[]                          current;
+    private ByteBuffer                      currentView;
+    private int[]                           ranges;       //modified ranges: pairs of begin (inclusive) and end (exclusive)
+    private int                             numberOfRanges;
+    private boolean                         initial;      //true during the first detection
+
+    /**
+     * @param data the Data object to be observed
+     */
+    public ChangeDetector(Data data){
+        this.data           = data;
+        this.listeners      = new ArrayList<ChangeListener>();
+        this.fieldListeners = new ArrayList<FieldChangeListener>();
+        this.ranges         = new int[16];
+    }
+
+    /**
+     * used to attach the layout of the Data object. The listeners are notified about modified fields afterwards.
+     * @param struct the layout of the data
+     * @param structOffset offset of the struct inside the Data object
+     */
+    public synchronized void setLayout(StructType struct, int structOffset){
+        this.fields       = struct.getFields().values().toArray(new StructType.Field[0]);
+        this.structOffset = structOffset;
+    }
+
+    public synchronized void addListener(ChangeListener listener){
+        listeners.add(listener);
+    }
+
+    public synchronized void removeListener(ChangeListener listener){
+        listeners.remove(listener);
+    }
+
+    public synchronized void addListener(FieldChangeListener listener){
+        fieldListeners.add(listener);
+    }
+
+    public synchronized void removeListener(FieldChangeListener listener){
+        fieldListeners.remove(listener);
+    }
+
+    /**
+     * used to compare the Data object with its contents on the last detection and to notify the listeners about the modifications
+     * @return the number of modified byte ranges
+     */
+    public synchronized int detect(){
+        byte[] bytes = data.getBytes();
+        if (bytes != current){
+            current     = bytes;
+            currentView = ByteBuffer.wrap(bytes);
+        }
+        numberOfRanges = 0;
+        initial        = image == null || image.length != bytes.length;
+        if (initial){
+            //first detection: report everything
+            image     = new byte[bytes.length];
+            imageView = ByteBuffer.wrap(image);
+            addRange(0, bytes.length);
+        }
+        else{
+            compare();
+        }
+        if (numberOfRanges > 0){
+            notifyListeners();
+            for (int i = 0; i < numberOfRanges; i++){
+                System.arraycopy(bytes, ranges[2 * i], image, ranges[2 * i], ranges[2 * i + 1] - ranges[2 * i]);
+            }
+        }
+        return numberOfRanges;
+    }
+
+    /**
+     * @return the observed Data object
+     */
+    public Data getData(){
+        return data;
+    }
+
+    private void compare(){
+        int length = current.length;
+        int i      = 0;
+        //compare word wise and determine the modified bytes inside a modified word
+        for (; i + WORDLENGTH <= length; i += WORDLENGTH){
+            if (currentView.getLong(i) != imageView.getLong(i)){
+                compareBytes(i, i + WORDLENGTH);
+            }
+        }
+        compareBytes(i, length);
+    }
+
+    private void compareBytes(int begin, int end){
+        for (int i = begin; i < end; i++){
+            if (current[i] != image[i]){
+                addRange(i, i + 1);
+            }
+        }
+    }
+
+    private void addRange(int begin, int end){
+        if (numberOfRanges > 0 && ranges[2 * numberOfRanges - 1] == begin){
+            //adjacent to the preceding range
+            ranges[2 * numberOfRanges - 1] = end;
+            return;
+        }
+        if (2 * numberOfRanges == ranges.length){
+            int[] newRanges = new int[2 * ranges.length];
+            System.arraycopy(ranges, 0, newRanges, 0, ranges.length);
+            ranges = newRanges;
+        }
+        ranges[2 * numberOfRanges]     = begin;
+        ranges[2 * numberOfRanges + 1] = end;
+        numberOfRanges++;
+    }
+
+    private void notifyListeners(){
+        for (ChangeListener listener: listeners){
+            for (int i = 0; i < numberOfRanges; i++){
+                listener.bytesChanged(data, ranges[2 * i], ranges[2 * i + 1] - ranges[2 * i]);
+            }
+        }
+        if (fields != null && !fieldListeners.isEmpty()){
+            for (StructType.Field field: fields){
+                if (isModified(field)){
+                    for (FieldChangeListener listener: fieldListeners){
+                        listener.fieldChanged(data, field);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isModified(StructType.Field field){
+        int begin = structOffset + field.getByteOffset();
+        int end   = begin + Math.max(1, field.getSize());
+        if (!initial && field.getType().getTypeId() == Type.SupportedTypes.BOOL && !field.isArray()){
+            //only the addressed bit is relevant. On the first detection every field is reported, regardless of its value
+            return begin < current.length && ((current[begin] ^ image[begin]) & (1 << field.getBitOffset())) != 0;
+        }
+        for (int i = 0; i < numberOfRanges; i++){
+            if (ranges[2 * i] < end && ranges[2 * i + 1] > begin){
+                return true;
+            }
+        }
+        return false;
+    }
+}
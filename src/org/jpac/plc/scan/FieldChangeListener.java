@@ -0,0 +1,41 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : FieldChangeListener.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.scan;
+
+import org.jpac.plc.Data;
+import org.jpac.plc.s7.symaddr.StructType;
+
+/**
+ * notified by a {@link ChangeDetector} about modified fields of a Data object, whose layout is described by a StructType
+ */
+public interface FieldChangeListener {
+    /**
+     * called for every field modified since the last detection
+     * @param data the Data object
+     * @param field the modified field. Its byte offset is relative to the offset of the struct inside the Data object
+     */
+    public void fieldChanged(Data data, StructType.Field field);
+}
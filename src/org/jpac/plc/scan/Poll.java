@@ -0,0 +1,215 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : Poll.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.scan;
+
+import java.util.concurrent.ScheduledFuture;
+import org.jpac.plc.s7.Connection;
+import org.jpac.plc.s7.ReceiveTransaction;
+import org.jpac.plc.s7.TransmitTransaction;
+
+/**
+ * cyclic poll of a single plc scheduled by a {@link PollScheduler}.<br>
+ * Keeps track of the poll rate actually achieved and of the failures of the plc.
+ */
+public class Poll {
+    private static final double SMOOTHING = 0.1; //weight of the latest sample inside the moving averages
+
+    private final String              name;
+    private final Connection          conn;
+    private final ReceiveTransaction  receiveTransaction;
+    private final TransmitTransaction transmitTransaction;
+    private final long                period;       //[ms]
+
+    private ScheduledFuture<?>  future;
+    private boolean             cancelled;
+    private long                lastStart;    //[ns]
+    private double              avgPeriod;    //[ns] moving average of the period of time between two polls
+    private double              avgDuration;  //[ns] moving average of the duration of a poll
+    private long                polls;
+    private long                failures;
+    private long                skips;
+    private int                 consecutiveFailures;
+    private Exception           lastError;
+
+    Poll(String name, long period, Connection conn, ReceiveTransaction receiveTransaction, TransmitTransaction transmitTransaction){
+        this.name                = name;
+        this.period              = period;
+        this.conn                = conn;
+        this.receiveTransaction  = receiveTransaction;
+        this.transmitTransaction = transmitTransaction;
+        this.lastStart    = 0;
+        this.avgPeriod    = period * 1000000.0;
+        this.avgDuration  = 0.0;
+    }
+
+    /**
+     * used to perform a single poll: the receive transaction is transacted first, followed by the transmit transaction
+     * @throws Exception
+     */
+    void poll() throws Exception{
+        long start = System.nanoTime();
+        try{
+            if (receiveTransaction != null){
+                receiveTransaction.transact();
+            }
+            if (transmitTransaction != null){
+                transmitTransaction.transact();
+            }
+            succeeded(start);
+        }
+        catch(Exception exc){
+            failed(exc);
+            throw exc;
+        }
+    }
+
+    private synchronized void succeeded(long start){
+        long now = System.nanoTime();
+        if (lastStart != 0){
+            avgPeriod = (1.0 - SMOOTHING) * avgPeriod + SMOOTHING * (start - lastStart);
+        }
+        avgDuration         = (1.0 - SMOOTHING) * avgDuration + SMOOTHING * (now - start);
+        lastStart           = start;
+        consecutiveFailures = 0;
+        polls++;
+    }
+
+    private synchronized void failed(Exception exc){
+        lastStart = 0;
+        lastError = exc;
+        failures++;
+        consecutiveFailures++;
+    }
+
+    /**
+     * used to count a poll skipped, because another poll of the connection was in progress
+     */
+    synchronized void skipped(){
+        skips++;
+    }
+
+    /**
+     * used to stop polling this plc
+     */
+    public synchronized void cancel(){
+        cancelled = true;
+        if (future != null){
+            future.cancel(false);
+        }
+    }
+
+    synchronized boolean isCancelled(){
+        return cancelled;
+    }
+
+    synchronized void setFuture(ScheduledFuture<?> future){
+        this.future = future;
+    }
+
+    /**
+     * @return the connection to the plc
+     */
+    public Connection getConnection(){
+        return conn;
+    }
+
+    /**
+     * @return the name of the poll
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * @return the requested period of time between two polls [ms]
+     */
+    public long getPeriod(){
+        return period;
+    }
+
+    /**
+     * @return the requested poll rate [Hz]
+     */
+    public double getRequestedRate(){
+        return 1000.0 / period;
+    }
+
+    /**
+     * @return the poll rate actually achieved [Hz]. 0.0 if the plc actually fails
+     */
+    public synchronized double getAchievedRate(){
+        return consecutiveFailures > 0 ? 0.0 : 1.0E9 / avgPeriod;
+    }
+
+    /**
+     * @return the average duration of a poll [ms]
+     */
+    public synchronized double getAverageDuration(){
+        return avgDuration / 1.0E6;
+    }
+
+    /**
+     * @return the number of successful polls
+     */
+    public synchronized long getPolls(){
+        return polls;
+    }
+
+    /**
+     * @return the number of failed polls
+     */
+    public synchronized long getFailures(){
+        return failures;
+    }
+
+    /**
+     * @return the number of polls skipped, because another poll of the connection was in progress
+     */
+    public synchronized long getSkips(){
+        return skips;
+    }
+
+    /**
+     * @return the number of failed polls since the last successful one
+     */
+    public synchronized int getConsecutiveFailures(){
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return the exception which caused the last failure, null if none
+     */
+    public synchronized Exception getLastError(){
+        return lastError;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return getClass().getSimpleName() + "(" + name + ": requested " + String.format("%.1f", getRequestedRate()) + " Hz, achieved "
+               + String.format("%.1f", getAchievedRate()) + " Hz, duration " + String.format("%.1f", getAverageDuration()) + " ms, polls "
+               + polls + ", failures " + failures + ", skips " + skips + ")";
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : PollScheduler.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.scan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.jpac.plc.s7.Connection;
+import org.jpac.plc.s7.ReceiveTransaction;
+import org.jpac.plc.s7.TransmitTransaction;
+
+/**
+ * used to poll the transactions of many S7 plc's concurrently by a small pool of threads.<br>
+ * Every plc is polled with its own period. A poll is rescheduled not before the previous poll has finished, and a poll is
+ * skipped, while another poll of the same connection is in progress. Thus, a slow plc can never occupy more than one thread of the pool.<br>
+ * A dead plc occupies a thread at most for one response timeout of its connection: the connections are reestablished in the
+ * background (see {@link Connection#setAutoReconnect(boolean)}) and the polls fail immediately, while the connection
+ * is being reestablished. A failing plc is retried with a reduced rate (see {@link #setRetryPeriod(long)}).
+ * The transactions must be repeatable: they are transacted again on every poll.<br>
+ * Restricted to S7: the MODBUS transactions are meant to be transacted inside a jPac module (they wait for the answer by
+ * use of process events) and cannot be polled by foreign threads.
+ */
+public class PollScheduler {
+    static Logger Log = Logger.getLogger("jpac.plc.scan");
+
+    public  static final long DEFAULTRETRYPERIOD = 5000; //[ms]
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final List<Poll>                  polls;
+    private final HashSet<Connection>         inProgress;  //connections actually polled
+    private long                              retryPeriod;
+
+    /**
+     * @param numberOfThreads number of threads used to poll the plc's
+     */
+    public PollScheduler(int numberOfThreads){
+        this.executor = new ScheduledThreadPoolExecutor(numberOfThreads, new ThreadFactory(){
+            private int n = 0;
+            public synchronized Thread newThread(Runnable runnable){
+                Thread thread = new Thread(runnable, "jpac.plc.scan.poller-" + n++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.polls       = new ArrayList<Poll>();
+        this.inProgress  = new HashSet<Connection>();
+        this.retryPeriod = DEFAULTRETRYPERIOD;
+    }
+
+    /**
+     * used to schedule the cyclic poll of a plc. The connection is owned by the scheduler afterwards.
+     * @param name name of the poll used in reports
+     * @param period requested period of time between two polls [ms]
+     * @param conn connection to the plc. Auto reconnect is enabled. Closed on {@link #shutdown()}
+     * @param receiveTransaction receive transaction transacted on every poll (may be null)
+     * @param transmitTransaction transmit transaction transacted on every poll after the receive transaction (may be null)
+     * @return the poll, which supplies the achieved poll rate
+     */
+    public Poll schedule(String name, long period, Connection conn, ReceiveTransaction receiveTransaction, TransmitTransaction transmitTransaction){
+        if (period <= 0){
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        Poll poll = new Poll(name, period, conn, receiveTransaction, transmitTransaction);
+        conn.setAutoReconnect(true);
+        synchronized(polls){
+            polls.add(poll);
+        }
+        submit(poll, 0);
+        return poll;
+    }
+
+    /**
+     * @return the polls scheduled
+     */
+    public List<Poll> getPolls(){
+        synchronized(polls){
+            return new ArrayList<Poll>(polls);
+        }
+    }
+
+    /**
+     * @return a report of the requested and achieved poll rates of all plc's (one line per plc)
+     */
+    public String report(){
+        StringBuilder report = new StringBuilder();
+        for (Poll poll: getPolls()){
+            report.append(poll.toString()).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * @param retryPeriod period of time between two polls of a failing plc [ms]
+     */
+    public void setRetryPeriod(long retryPeriod){
+        this.retryPeriod = retryPeriod;
+    }
+
+    public long getRetryPeriod(){
+        return retryPeriod;
+    }
+
+    /**
+     * used to stop polling and to close the connections of all polls
+     */
+    public void shutdown(){
+        executor.shutdownNow();
+        HashSet<Connection> connections = new HashSet<Connection>();
+        for (Poll poll: getPolls()){
+            poll.cancel();
+            if (poll.getConnection() != null){
+                connections.add(poll.getConnection());
+            }
+        }
+        for (Connection conn: connections){
+            try{
+                conn.close();
+            }
+            catch(IOException exc){
+                Log.error("Error: ", exc);
+            }
+        }
+    }
+
+    private void submit(final Poll poll, long delay){
+        synchronized(poll){
+            if (poll.isCancelled() || executor.isShutdown()){
+                return;
+            }
+            poll.setFuture(executor.schedule(new Runnable(){
+                public void run(){
+                    execute(poll);
+                }
+            }, delay, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void execute(Poll poll){
+        long start = System.currentTimeMillis();
+        long delay;
+        synchronized(inProgress){
+            if (!inProgress.add(poll.getConnection())){
+                //another poll of the connection is in progress: do not tie up a second thread
+                poll.skipped();
+                submit(poll, poll.getPeriod());
+                return;
+            }
+        }
+        try{
+            poll.poll();
+            //keep the requested rate: the duration of the poll is part of the period
+            delay = Math.max(0, start + poll.getPeriod() - System.currentTimeMillis());
+        }
+        catch(Exception exc){
+            if (poll.getConsecutiveFailures() == 1){
+                Log.error("poll of " + poll.getName() + " failed: ", exc);
+            }
+            delay = Math.max(poll.getPeriod(), retryPeriod);
+        }
+        finally{
+            synchronized(inProgress){
+                inProgress.remove(poll.getConnection());
+            }
+        }
+        submit(poll, delay);
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ScanEngine.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.scan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import org.jpac.plc.ReadRequest;
+import org.jpac.plc.TooManyRequestsException;
+import org.jpac.plc.s7.Connection;
+import org.jpac.plc.s7.ReceiveTransaction;
+
+/**
+ * cyclic scan of several {@link ScanGroup}'s with individual periods over a single connection.<br>
+ * Whenever a scan group reaches its deadline, the requests of all groups due are transacted by one receive transaction,
+ * so they share the same PDUs. Groups whose deadline will be reached within a fraction of their period (see {@link #setSlack(double)})
+ * are scanned ahead of time along with them. Thereby the phases of the groups are aligned and the overall number of
+ * transactions per second is minimised.<br>
+ * After every scan the change detectors of the scanned groups are invoked (see {@link ScanGroup#addChangeDetector(ChangeDetector)}).<br>
+ * The receive transaction of a set of groups scanned together is set up once and reused, as long as the requests of the groups are
+ * unchanged. Thus, the requests are packed into PDUs only once per set of groups.<br>
+ * Restricted to S7: the MODBUS transactions are meant to be transacted inside a jPac module and cannot be driven by the thread of the scan engine.
+ */
+public class ScanEngine implements Runnable{
+    static Logger Log = Logger.getLogger("jpac.plc.scan");
+
+    public  static final double DEFAULTSLACK      = 0.25;
+    private static final long   DEFAULTRETRYDELAY = 1000; //[ms] delay after a failed scan
+    private static final int    MAXCACHEDSCANS    = 16;   //number of sets of groups, whose receive transaction is retained
+
+    private final Connection         conn;
+    private final List<ScanGroup>    groups;
+    private final LinkedHashMap<ScanSet, ReceiveTransaction> transactions; //recently scanned sets of groups and their receive transactions
+    private double                   slack;
+    private long                     scans;
+    private Thread                   thread;
+    private volatile boolean         running;
+
+    /**
+     * @param conn connection to the plc
+     */
+    public ScanEngine(Connection conn){
+        this.conn         = conn;
+        this.groups       = new ArrayList<ScanGroup>();
+        this.slack        = DEFAULTSLACK;
+        this.transactions = new LinkedHashMap<ScanSet, ReceiveTransaction>(MAXCACHEDSCANS, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ScanSet, ReceiveTransaction> eldest){
+                return size() > MAXCACHEDSCANS;
+            }
+        };
+    }
+
+    /**
+     * used to add a scan group. Its first scan is due immediately.
+     * @param group
+     */
+    public synchronized void addGroup(ScanGroup group){
+        group.setNextDeadline(System.currentTimeMillis());
+        groups.add(group);
+    }
+
+    /**
+     * used to remove a scan group
+     * @param group
+     */
+    public synchronized void removeGroup(ScanGroup group){
+        groups.remove(group);
+    }
+
+    /**
+     * used to perform a single scan: the requests of the groups due and of those, which are due shortly, are transacted together.
+     * @return the period of time until the next deadline [ms]
+     * @throws IOException
+     */
+    public synchronized long scan() throws IOException{
+        long now = System.currentTimeMillis();
+        ArrayList<ScanGroup> due     = new ArrayList<ScanGroup>();
+        ArrayList<ScanGroup> ahead   = new ArrayList<ScanGroup>();
+        for (ScanGroup group: groups){
+            long timeLeft = group.getNextDeadline() - now;
+            if (timeLeft <= 0){
+                due.add(group);
+            }
+            else if (timeLeft <= slack * group.getPeriod()){
+                ahead.add(group);
+            }
+        }
+        if (!due.isEmpty()){
+            ArrayList<ScanGroup> scanned = new ArrayList<ScanGroup>(due);
+            scanned.addAll(ahead);
+            getReceiveTransaction(scanned).transact();
+            scans++;
+            for (ScanGroup group: due){
+                group.scanned(now, true);
+                group.detectChanges();
+            }
+            for (ScanGroup group: ahead){
+                group.scanned(now, false);
+                group.detectChanges();
+            }
+        }
+        long nextDeadline = Long.MAX_VALUE;
+        for (ScanGroup group: groups){
+            nextDeadline = Math.min(nextDeadline, group.getNextDeadline());
+        }
+        return groups.isEmpty() ? DEFAULTRETRYDELAY : Math.max(0, nextDeadline - System.currentTimeMillis());
+    }
+
+    /**
+     * used to start scanning inside a thread of its own
+     */
+    public synchronized void start(){
+        if (thread == null){
+            running = true;
+            thread  = new Thread(this, "jpac.plc.scan.engine-" + conn.getHost());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * used to stop scanning
+     */
+    public void stop(){
+        Thread t;
+        synchronized(this){
+            running = false;
+            t       = thread;
+            thread  = null;
+        }
+        if (t != null){
+            t.interrupt();
+        }
+    }
+
+    public void run(){
+        while(running){
+            long delay;
+            try{
+                delay = scan();
+            }
+            catch(IOException exc){
+                Log.error("Error: ", exc);
+                delay = DEFAULTRETRYDELAY;
+            }
+            if (delay > 0){
+                try{
+                    Thread.sleep(delay);
+                }
+                catch(InterruptedException exc){
+                    //stopped
+                }
+            }
+        }
+    }
+
+    /**
+     * @param slack fraction of its period, a scan group may be scanned ahead of its deadline to share the PDUs of other groups (0.0 .. 1.0)
+     */
+    public synchronized void setSlack(double slack){
+        this.slack = slack;
+    }
+
+    public synchronized double getSlack(){
+        return slack;
+    }
+
+    /**
+     * @return the number of receive transactions performed so far
+     */
+    public synchronized long getTransactions(){
+        return scans;
+    }
+
+    /**
+     * @param scanned groups to be scanned together
+     * @return the receive transaction reading the requests of the given groups. Set up on the first scan of the groups
+     * and whenever the requests of one of them have been changed since. Every set of groups gets a receive transaction of its own,
+     * the one shared by the connection (see {@link Connection#generateReceiveTransaction()}) is not used
+     * @throws IOException
+     */
+    ReceiveTransaction getReceiveTransaction(List<ScanGroup> scanned) throws IOException{
+        ScanSet            key = new ScanSet(scanned);
+        ReceiveTransaction rx  = transactions.get(key);
+        if (rx == null){
+            rx = new ReceiveTransaction(conn);
+            try{
+                for (ScanGroup group: scanned){
+                    for (ReadRequest request: group.getRequests()){
+                        rx.addRequest(request);
+                    }
+                }
+            }
+            catch(TooManyRequestsException exc){
+                throw new IOException(exc.getMessage(), exc);
+            }
+            transactions.put(key, rx);
+        }
+        return rx;
+    }
+
+    /**
+     * set of groups scanned together. Two sets are equal, if they contain the same group instances in the same order
+     * with their requests unchanged
+     */
+    private static class ScanSet{
+        private final ScanGroup[] groups;
+        private final long[]      modifications;
+        private final int         hashCode;
+
+        ScanSet(List<ScanGroup> groups){
+            this.groups        = groups.toArray(new ScanGroup[groups.size()]);
+            this.modifications = new long[this.groups.length];
+            int h = 1;
+            for (int i = 0; i < this.groups.length; i++){
+                modifications[i] = this.groups[i].getModifications();
+                h = 31 * h + System.identityHashCode(this.groups[i]);
+            }
+            this.hashCode = h;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (!(o instanceof ScanSet) || ((ScanSet)o).groups.length != groups.length){
+                return false;
+            }
+            ScanSet other = (ScanSet)o;
+            for (int i = 0; i < groups.length; i++){
+                if (groups[i] != other.groups[i]){
+                    return false;
+                }
+            }
+            return Arrays.equals(modifications, other.modifications);
+        }
+
+        @Override
+        public int hashCode(){
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ScanGroup.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.scan;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jpac.plc.ReadRequest;
+
+/**
+ * set of read requests scanned with a common period by a {@link ScanEngine}
+ */
+public class ScanGroup {
+    private final String               name;
+    private final long                 period;       //[ms]
+    private final List<ReadRequest>    requests;
+    private final List<ChangeDetector> detectors;
+
+    private long                       nextDeadline; //[ms]
+    private long                       lastScan;     //[ms]
+    private long                       scans;
+    private long                       modifications; //number of changes of the requests
+
+    /**
+     * @param name name of the scan group
+     * @param period period of time between two scans [ms]
+     */
+    public ScanGroup(String name, long period){
+        if (period <= 0){
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        this.name      = name;
+        this.period    = period;
+        this.requests  = new ArrayList<ReadRequest>();
+        this.detectors = new ArrayList<ChangeDetector>();
+    }
+
+    /**
+     * used to add a read request to the group
+     * @param request
+     */
+    public synchronized void addRequest(ReadRequest request){
+        requests.add(request);
+        modifications++;
+    }
+
+    /**
+     * used to remove all read requests from the group
+     */
+    public synchronized void removeAllRequests(){
+        requests.clear();
+        modifications++;
+    }
+
+    /**
+     * used to add a change detector, which is invoked after every scan of the group.
+     * @param detector change detector observing a Data object read by the requests of this group
+     */
+    public synchronized void addChangeDetector(ChangeDetector detector){
+        detectors.add(detector);
+    }
+
+    /**
+     * used to remove a change detector
+     * @param detector
+     */
+    public synchronized void removeChangeDetector(ChangeDetector detector){
+        detectors.remove(detector);
+    }
+
+    /**
+     * used to invoke the change detectors of the group
+     */
+    void detectChanges(){
+        ChangeDetector[] actualDetectors;
+        synchronized(this){
+            actualDetectors = detectors.toArray(new ChangeDetector[detectors.size()]);
+        }
+        for (ChangeDetector detector: actualDetectors){
+            detector.detect();
+        }
+    }
+
+    synchronized List<ReadRequest> getRequests(){
+        return new ArrayList<ReadRequest>(requests);
+    }
+
+    /**
+     * @return the number of changes of the requests of the group. Used to detect outdated receive transactions
+     */
+    synchronized long getModifications(){
+        return modifications;
+    }
+
+    /**
+     * called by the scan engine, after the requests of the group have been transacted
+     * @param now point in time of the scan [ms]
+     * @param due true, if the deadline of the group was reached, false, if the group has been scanned ahead of time
+     */
+    synchronized void scanned(long now, boolean due){
+        if (due && now - nextDeadline < period){
+            //keep the phase
+            nextDeadline += period;
+        }
+        else{
+            //scanned ahead of time or late: align the phase to this scan
+            nextDeadline = now + period;
+        }
+        lastScan = now;
+        scans++;
+    }
+
+    synchronized void setNextDeadline(long nextDeadline){
+        this.nextDeadline = nextDeadline;
+    }
+
+    synchronized long getNextDeadline(){
+        return nextDeadline;
+    }
+
+    /**
+     * @return the name of the group
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * @return the period of time between two scans [ms]
+     */
+    public long getPeriod(){
+        return period;
+    }
+
+    /**
+     * @return the point in time of the last scan [ms]
+     */
+    public synchronized long getLastScan(){
+        return lastScan;
+    }
+
+    /**
+     * @return the number of scans performed
+     */
+    public synchronized long getScans(){
+        return scans;
+    }
+
+    @Override
+    public String toString(){
+        return getClass().getSimpleName() + "(" + name + ", " + period + " ms)";
+    }
+}
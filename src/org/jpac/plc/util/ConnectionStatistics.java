@@ -0,0 +1,276 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ConnectionStatistics.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.log4j.Logger;
+
+/**
+ * throughput counters and latency histograms per command type of a plc connection.<br>
+ * Once registered, the statistics, their histograms and the estimator of the response timeout (see {@link RttEstimator})
+ * are exposed as MBeans below the domain "org.jpac.plc".
+ * All counters are lock free.
+ */
+public class ConnectionStatistics implements ConnectionStatisticsMBean {
+    static Logger Log = Logger.getLogger("jpac.plc");
+
+    private static final String DOMAIN = "org.jpac.plc";
+
+    private final String                                      name;
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms;
+    private final AtomicLong                                  bytesIn;
+    private final AtomicLong                                  bytesOut;
+    private final AtomicLong                                  timeouts;
+    private final AtomicLong                                  reconnects;
+    private final AtomicLong                                  pdus;
+    private final AtomicLong                                  pduFill;    //sum of the fill ratios of the pdus [ppm]
+    private final RttEstimator                                rttEstimator;
+    private ObjectName                                        objectName; //null, if not registered
+
+    /**
+     * @param name name of the connection (e.g. "s7 192.168.0.1 0/2")
+     */
+    public ConnectionStatistics(String name){
+        this(name, new RttEstimator());
+    }
+
+    /**
+     * @param name name of the connection (e.g. "s7 192.168.0.1 0/2")
+     * @param rttEstimator estimator of the response timeout of the connection. Exposed together with the statistics
+     */
+    public ConnectionStatistics(String name, RttEstimator rttEstimator){
+        this.name         = name;
+        this.rttEstimator = rttEstimator;
+        this.histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+        this.bytesIn    = new AtomicLong();
+        this.bytesOut   = new AtomicLong();
+        this.timeouts   = new AtomicLong();
+        this.reconnects = new AtomicLong();
+        this.pdus       = new AtomicLong();
+        this.pduFill    = new AtomicLong();
+    }
+
+    /**
+     * @param commandType type of the command (e.g. "ReadMultipleData")
+     * @return the latency histogram of the command type. Created on first use
+     */
+    public LatencyHistogram getHistogram(String commandType){
+        LatencyHistogram histogram = histograms.get(commandType);
+        if (histogram == null){
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(commandType, newHistogram);
+            if (histogram == null){
+                histogram = newHistogram;
+                registerHistogram(commandType, histogram);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * @return the estimator of the response timeout of the connection
+     */
+    public RttEstimator getRttEstimator(){
+        return rttEstimator;
+    }
+
+    public void addBytesIn(int n){
+        bytesIn.addAndGet(n);
+    }
+
+    public void addBytesOut(int n){
+        bytesOut.addAndGet(n);
+    }
+
+    /**
+     * used to record the fill ratio of a pdu
+     * @param length length of the pdu
+     * @param maxLength maximum length of a pdu
+     */
+    public void addPdu(int length, int maxLength){
+        if (maxLength > 0){
+            pdus.incrementAndGet();
+            pduFill.addAndGet(1000000L * length / maxLength);
+        }
+    }
+
+    public void timedOut(){
+        timeouts.incrementAndGet();
+    }
+
+    public void reconnected(){
+        reconnects.incrementAndGet();
+    }
+
+    public long getBytesIn(){
+        return bytesIn.get();
+    }
+
+    public long getBytesOut(){
+        return bytesOut.get();
+    }
+
+    /**
+     * @return the number of transactions recorded by the histograms of the command types
+     */
+    public long getTransactions(){
+        long n = 0;
+        for (String commandType: histograms.keySet()){
+            if (!commandType.startsWith(PriorityLanes.LANEPREFIX)){
+                //the lanes record the same transactions once more
+                n += histograms.get(commandType).getCount();
+            }
+        }
+        return n;
+    }
+
+    public long getTimeouts(){
+        return timeouts.get();
+    }
+
+    public long getReconnects(){
+        return reconnects.get();
+    }
+
+    /**
+     * @return the average fill ratio of the pdus recorded (0.0 .. 1.0)
+     */
+    public double getAveragePduFillRatio(){
+        long n = pdus.get();
+        return n == 0 ? 0.0 : pduFill.get() / 1000000.0 / n;
+    }
+
+    public String[] getCommandTypes(){
+        return histograms.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * used to reset the counters and histograms. The estimation of the response timeout is kept
+     */
+    public void reset(){
+        bytesIn.set(0);
+        bytesOut.set(0);
+        timeouts.set(0);
+        reconnects.set(0);
+        pdus.set(0);
+        pduFill.set(0);
+        for (LatencyHistogram histogram: histograms.values()){
+            histogram.reset();
+        }
+    }
+
+    /**
+     * used to expose the statistics as MBeans. If the name is already in use, a number is appended.
+     * Failures are logged, but do not affect the connection.
+     */
+    public synchronized void register(){
+        if (objectName != null){
+            return;
+        }
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            String      unique = name;
+            for (int n = 2; objectName == null; n++){
+                ObjectName candidate = new ObjectName(DOMAIN + ":type=ConnectionStatistics,name=" + ObjectName.quote(unique));
+                try{
+                    server.registerMBean(this, candidate);
+                    objectName = candidate;
+                }
+                catch(InstanceAlreadyExistsException exc){
+                    unique = name + " #" + n;
+                }
+            }
+            for (String commandType: histograms.keySet()){
+                registerHistogram(commandType, histograms.get(commandType));
+            }
+            server.registerMBean(rttEstimator, getRttEstimatorName());
+        }
+        catch(Exception exc){
+            Log.error("failed to register statistics of " + name + " : ", exc);
+        }
+    }
+
+    /**
+     * used to remove the MBeans of the statistics
+     */
+    public synchronized void unregister(){
+        if (objectName == null){
+            return;
+        }
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (String commandType: histograms.keySet()){
+                ObjectName histogramName = getHistogramName(commandType);
+                if (server.isRegistered(histogramName)){
+                    server.unregisterMBean(histogramName);
+                }
+            }
+            if (server.isRegistered(getRttEstimatorName())){
+                server.unregisterMBean(getRttEstimatorName());
+            }
+            server.unregisterMBean(objectName);
+        }
+        catch(Exception exc){
+            Log.error("failed to unregister statistics of " + name + " : ", exc);
+        }
+        objectName = null;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    @Override
+    public String toString(){
+        return getClass().getSimpleName() + "(" + name + ": in = " + getBytesIn() + " bytes, out = " + getBytesOut() + " bytes, timeouts = " + getTimeouts()
+               + ", reconnects = " + getReconnects() + ", pdu fill ratio = " + getAveragePduFillRatio() + ", " + rttEstimator + ", " + histograms + ")";
+    }
+
+    private synchronized void registerHistogram(String commandType, LatencyHistogram histogram){
+        if (objectName == null){
+            return;
+        }
+        try{
+            ManagementFactory.getPlatformMBeanServer().registerMBean(histogram, getHistogramName(commandType));
+        }
+        catch(Exception exc){
+            Log.error("failed to register latency histogram " + commandType + " of " + name + " : ", exc);
+        }
+    }
+
+    private ObjectName getHistogramName(String commandType) throws Exception{
+        return new ObjectName(objectName.toString() + ",command=" + ObjectName.quote(commandType));
+    }
+
+    private ObjectName getRttEstimatorName() throws Exception{
+        return new ObjectName(objectName.toString() + ",estimator=rtt");
+    }
+}
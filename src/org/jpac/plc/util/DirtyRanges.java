@@ -0,0 +1,188 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : DirtyRanges.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.util;
+
+/**
+ * set of modified byte ranges of a Data object.<br>
+ * The ranges are kept sorted. Overlapping and adjacent ranges are merged on insertion.
+ */
+public class DirtyRanges {
+    private int[] ranges;         //pairs of begin (inclusive) and end (exclusive)
+    private int   numberOfRanges;
+
+    public DirtyRanges(){
+        this.ranges         = new int[16];
+        this.numberOfRanges = 0;
+    }
+
+    /**
+     * used to mark a range as modified
+     * @param begin first byte of the range
+     * @param end first byte following the range
+     */
+    public synchronized void add(int begin, int end){
+        if (begin >= end){
+            return;
+        }
+        //find the first range ending at or behind begin
+        int first = 0;
+        while(first < numberOfRanges && ranges[2 * first + 1] < begin){
+            first++;
+        }
+        //find the ranges starting at or before end
+        int last = first;
+        while(last < numberOfRanges && ranges[2 * last] <= end){
+            last++;
+        }
+        if (last > first){
+            //merge with the overlapping or adjacent ranges [first, last)
+            begin = Math.min(begin, ranges[2 * first]);
+            end   = Math.max(end,   ranges[2 * (last - 1) + 1]);
+        }
+        replace(first, last, begin, end);
+    }
+
+    /**
+     * used to mark a range as unmodified
+     * @param begin first byte of the range
+     * @param end first byte following the range
+     */
+    public synchronized void remove(int begin, int end){
+        if (begin >= end){
+            return;
+        }
+        int[] remaining = new int[2 * numberOfRanges + 2];
+        int   n         = 0;
+        for (int i = 0; i < numberOfRanges; i++){
+            int b = ranges[2 * i];
+            int e = ranges[2 * i + 1];
+            if (e <= begin || b >= end){
+                remaining[2 * n] = b; remaining[2 * n + 1] = e; n++;
+            }
+            else{
+                if (b < begin){
+                    remaining[2 * n] = b; remaining[2 * n + 1] = begin; n++;
+                }
+                if (e > end){
+                    remaining[2 * n] = end; remaining[2 * n + 1] = e; n++;
+                }
+            }
+        }
+        ranges         = remaining.length >= 16 ? remaining : grow(remaining, 16);
+        numberOfRanges = n;
+    }
+
+    /**
+     * used to mark all bytes as unmodified
+     */
+    public synchronized void clear(){
+        numberOfRanges = 0;
+    }
+
+    /**
+     * @return true, if no byte is marked as modified
+     */
+    public synchronized boolean isEmpty(){
+        return numberOfRanges == 0;
+    }
+
+    /**
+     * @param begin first byte of the range
+     * @param end first byte following the range
+     * @return true, if at least one byte inside the given range is marked as modified
+     */
+    public synchronized boolean intersects(int begin, int end){
+        for (int i = 0; i < numberOfRanges; i++){
+            if (ranges[2 * i] < end && ranges[2 * i + 1] > begin){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * used to retrieve the modified ranges inside a given range
+     * @param begin first byte of the range
+     * @param end first byte following the range
+     * @param gap modified ranges separated by no more than gap unmodified bytes are merged
+     * @return the modified ranges clipped to the given range as pairs of begin (inclusive) and end (exclusive)
+     */
+    public synchronized int[] toArray(int begin, int end, int gap){
+        int[] result = new int[2 * numberOfRanges];
+        int   n      = 0;
+        for (int i = 0; i < numberOfRanges; i++){
+            int b = Math.max(begin, ranges[2 * i]);
+            int e = Math.min(end, ranges[2 * i + 1]);
+            if (b < e){
+                if (n > 0 && b - result[2 * n - 1] <= gap){
+                    result[2 * n - 1] = e;
+                }
+                else{
+                    result[2 * n] = b; result[2 * n + 1] = e; n++;
+                }
+            }
+        }
+        int[] clipped = new int[2 * n];
+        System.arraycopy(result, 0, clipped, 0, clipped.length);
+        return clipped;
+    }
+
+    /**
+     * @return the number of modified ranges
+     */
+    public synchronized int size(){
+        return numberOfRanges;
+    }
+
+    @Override
+    public synchronized String toString(){
+        StringBuilder str = new StringBuilder(getClass().getSimpleName()).append('(');
+        for (int i = 0; i < numberOfRanges; i++){
+            str.append(i > 0 ? "," : "").append('[').append(ranges[2 * i]).append(',').append(ranges[2 * i + 1]).append(')');
+        }
+        return str.append(')').toString();
+    }
+
+    /**
+     * replaces the ranges [first, last) by the given range
+     */
+    private void replace(int first, int last, int begin, int end){
+        int newNumberOfRanges = numberOfRanges - (last - first) + 1;
+        if (2 * newNumberOfRanges > ranges.length){
+            ranges = grow(ranges, 2 * ranges.length);
+        }
+        System.arraycopy(ranges, 2 * last, ranges, 2 * (first + 1), 2 * (numberOfRanges - last));
+        ranges[2 * first]     = begin;
+        ranges[2 * first + 1] = end;
+        numberOfRanges        = newNumberOfRanges;
+    }
+
+    private static int[] grow(int[] array, int length){
+        int[] newArray = new int[length];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
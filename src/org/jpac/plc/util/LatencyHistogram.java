@@ -0,0 +1,154 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : LatencyHistogram.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * lock free histogram of latencies given in nanoseconds.<br>
+ * The buckets are log linear: every power of two is divided into 32 buckets, which limits the error of the percentiles to about 3 %.
+ * Recording takes a few atomic increments and does not allocate memory.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    private static final int  SUBBUCKETBITS = 5;
+    private static final int  SUBBUCKETS    = 1 << SUBBUCKETBITS;
+    private static final int  MAXMAGNITUDE  = 42;               //about 73 minutes
+    private static final long MAXVALUE      = (1L << MAXMAGNITUDE) - 1;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong      count;
+    private final AtomicLong      sum;
+    private final AtomicLong      max;
+
+    public LatencyHistogram(){
+        this.buckets = new AtomicLongArray(bucketIndex(MAXVALUE) + 1);
+        this.count   = new AtomicLong();
+        this.sum     = new AtomicLong();
+        this.max     = new AtomicLong();
+    }
+
+    /**
+     * used to record a latency
+     * @param nanos latency in nanoseconds. Negative values are recorded as 0
+     */
+    public void record(long nanos){
+        long value = Math.min(Math.max(nanos, 0), MAXVALUE);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while(value > currentMax && !max.compareAndSet(currentMax, value)){
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @param fraction fraction of the recorded latencies (0.0 .. 1.0)
+     * @return the latency in nanoseconds, which is not exceeded by the given fraction of the recorded latencies
+     */
+    public long getValueAtFraction(double fraction){
+        long total = count.get();
+        if (total == 0){
+            return 0;
+        }
+        long rank      = (long)Math.ceil(fraction * total);
+        long cumulated = 0;
+        for (int i = 0; i < buckets.length(); i++){
+            cumulated += buckets.get(i);
+            if (cumulated >= rank && cumulated > 0){
+                return Math.min(bucketValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount(){
+        return count.get();
+    }
+
+    public double getMean(){
+        long n = count.get();
+        return n == 0 ? 0.0 : sum.get() / 1000.0 / n;
+    }
+
+    public double getMax(){
+        return max.get() / 1000.0;
+    }
+
+    public double getMedian(){
+        return getValueAtFraction(0.5) / 1000.0;
+    }
+
+    public double getPercentile90(){
+        return getValueAtFraction(0.9) / 1000.0;
+    }
+
+    public double getPercentile99(){
+        return getValueAtFraction(0.99) / 1000.0;
+    }
+
+    public double getPercentile999(){
+        return getValueAtFraction(0.999) / 1000.0;
+    }
+
+    /**
+     * used to discard all recorded latencies. Latencies recorded concurrently may be lost partially.
+     */
+    public void reset(){
+        for (int i = 0; i < buckets.length(); i++){
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString(){
+        return getClass().getSimpleName() + "(count = " + getCount() + ", mean = " + getMean() + " us, median = " + getMedian()
+               + " us, 99% = " + getPercentile99() + " us, max = " + getMax() + " us)";
+    }
+
+    private static int bucketIndex(long value){
+        if (value < SUBBUCKETS){
+            return (int)value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUBBUCKETBITS - 1;
+        return (shift + 1) * SUBBUCKETS + (int)(value >> shift) - SUBBUCKETS;
+    }
+
+    /**
+     * @return the highest value covered by the given bucket
+     */
+    private static long bucketValue(int index){
+        if (index < SUBBUCKETS){
+            return index;
+        }
+        int shift = index / SUBBUCKETS - 1;
+        return ((long)(index % SUBBUCKETS + SUBBUCKETS + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : PlcImage.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * last known contents of the memory areas of a plc.<br>
+ * Every byte carries the point in time, its value has been confirmed by a read or a successful write.
+ * Used to suppress writes of values the plc already holds.
+ */
+public class PlcImage {
+    private static final int  INITIALBLOCKSIZE = 256;
+    private static final long UNKNOWN          = Long.MIN_VALUE; //time stamp of bytes not confirmed
+
+    /**
+     * image of a single memory area (e.g. a data block)
+     */
+    private class Block{
+        byte[] bytes     = new byte[INITIALBLOCKSIZE];
+        long[] confirmed = newStamps(INITIALBLOCKSIZE);  //point in time of the confirmation (see now()) [ms], UNKNOWN if not confirmed
+
+        void ensureSize(int size){
+            if (size > bytes.length){
+                int newSize = Math.max(size, 2 * bytes.length);
+                byte[] newBytes     = new byte[newSize];
+                long[] newConfirmed = newStamps(newSize);
+                System.arraycopy(bytes, 0, newBytes, 0, bytes.length);
+                System.arraycopy(confirmed, 0, newConfirmed, 0, confirmed.length);
+                bytes     = newBytes;
+                confirmed = newConfirmed;
+            }
+        }
+    }
+
+    private final HashMap<Integer, Block> blocks;
+
+    public PlcImage(){
+        this.blocks = new HashMap<Integer, Block>();
+    }
+
+    /**
+     * used to store values confirmed by the plc
+     * @param area identifies the memory area (e.g. the number of a data block)
+     * @param address byte address of the first value inside the area
+     * @param bytes buffer containing the values
+     * @param offset offset of the first value inside the buffer
+     * @param length number of bytes
+     */
+    public synchronized void confirm(int area, int address, byte[] bytes, int offset, int length){
+        Block block = blocks.get(area);
+        if (block == null){
+            block = new Block();
+            blocks.put(area, block);
+        }
+        block.ensureSize(address + length);
+        System.arraycopy(bytes, offset, block.bytes, address, length);
+        long now = now();
+        for (int i = address; i < address + length; i++){
+            block.confirmed[i] = now;
+        }
+    }
+
+    /**
+     * used to check, if the plc is known to hold the given values
+     * @param area identifies the memory area (e.g. the number of a data block)
+     * @param address byte address of the first value inside the area
+     * @param bytes buffer containing the values
+     * @param offset offset of the first value inside the buffer
+     * @param length number of bytes
+     * @param maxAge maximum age of the confirmation [ms]
+     * @return true, if all values are equal to the image and have been confirmed within maxAge
+     */
+    public synchronized boolean matches(int area, int address, byte[] bytes, int offset, int length, long maxAge){
+        Block block = blocks.get(area);
+        if (block == null || address + length > block.bytes.length){
+            return false;
+        }
+        long now = now();
+        for (int i = 0; i < length; i++){
+            long confirmed = block.confirmed[address + i];
+            //ages are compared as differences of time stamps, which stay valid when the clock wraps around
+            if (confirmed == UNKNOWN || now - confirmed > maxAge || block.bytes[address + i] != bytes[offset + i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * used to mark the given range as unknown
+     * @param area identifies the memory area (e.g. the number of a data block)
+     * @param address byte address of the first byte inside the area
+     * @param length number of bytes
+     */
+    public synchronized void invalidate(int area, int address, int length){
+        Block block = blocks.get(area);
+        if (block != null){
+            for (int i = address; i < Math.min(address + length, block.confirmed.length); i++){
+                block.confirmed[i] = UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * used to mark the whole image as unknown
+     */
+    public synchronized void clear(){
+        blocks.clear();
+    }
+
+    /**
+     * @return the actual point in time [ms]. Taken from the monotonic System.nanoTime(), so that changes of the system time
+     * do not affect the age of confirmations. Overridden by tests
+     */
+    long now(){
+        return System.nanoTime() / 1000000L;
+    }
+
+    private static long[] newStamps(int size){
+        long[] stamps = new long[size];
+        Arrays.fill(stamps, UNKNOWN);
+        return stamps;
+    }
+}
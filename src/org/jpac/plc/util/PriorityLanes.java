@@ -0,0 +1,201 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : PriorityLanes.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.util;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * arbitrates the access of several threads to a plc connection by priority.<br>
+ * Every caller enters the lane of its priority class. When the connection gets idle, it is handed over to the
+ * first caller of the highest priority lane occupied. Starvation of the lower lanes is prevented by aging: a caller,
+ * which has been waiting longer than the aging limit of its lane, is served before all others.<br>
+ * The period of time from entering a lane until leaving the connection (queueing and round trip)
+ * is recorded per lane in the histograms "lane URGENT", "lane NORMAL" and "lane BULK" of the connection statistics.
+ */
+public class PriorityLanes {
+    /**
+     * priority class of a request
+     */
+    public enum PRIORITY {
+        URGENT,  //e.g. acknowledgements of safety related states. May overtake jobs already queued
+        NORMAL,  //cyclic process data
+        BULK;    //background traffic (e.g. archiving of large data blocks)
+    }
+
+    public  static final String LANEPREFIX              = "lane ";
+    public  static final long   DEFAULTNORMALAGINGLIMIT = 50;   //[ms]
+    public  static final long   DEFAULTBULKAGINGLIMIT   = 200;  //[ms]
+
+    private static final PRIORITY[] PRIORITIES = PRIORITY.values();
+
+    private final ArrayList<LinkedList<Ticket>> lanes;
+    private final LatencyHistogram[]            latencies;
+    private final long[]                        agingLimits;  //[ns]
+    private boolean                             busy;         //true, while a caller holds the connection
+    private int                                 waiting;      //number of callers waiting in all lanes
+
+    /**
+     * @param statistics statistics of the connection, the latencies of the lanes are recorded in
+     */
+    public PriorityLanes(ConnectionStatistics statistics){
+        this.lanes       = new ArrayList<LinkedList<Ticket>>(PRIORITIES.length);
+        this.latencies   = new LatencyHistogram[PRIORITIES.length];
+        this.agingLimits = new long[PRIORITIES.length];
+        for (PRIORITY priority: PRIORITIES){
+            lanes.add(new LinkedList<Ticket>());
+            latencies[priority.ordinal()] = statistics.getHistogram(LANEPREFIX + priority);
+        }
+        setAgingLimit(PRIORITY.NORMAL, DEFAULTNORMALAGINGLIMIT);
+        setAgingLimit(PRIORITY.BULK, DEFAULTBULKAGINGLIMIT);
+    }
+
+    /**
+     * @param priority the lane
+     * @param agingLimit maximum period of time a caller of the lane waits, before it is served with precedence [ms].
+     * Not applicable to the URGENT lane
+     */
+    public synchronized void setAgingLimit(PRIORITY priority, long agingLimit){
+        agingLimits[priority.ordinal()] = agingLimit * 1000000L;
+    }
+
+    public synchronized long getAgingLimit(PRIORITY priority){
+        return agingLimits[priority.ordinal()] / 1000000L;
+    }
+
+    /**
+     * used to wait for the connection. Must be followed by {@link #leave(PRIORITY, long)}
+     * @param priority lane of the caller
+     * @return the point in time the lane was entered [ns]
+     * @throws InterruptedIOException thrown, if the caller was interrupted while waiting
+     */
+    public long enter(PRIORITY priority) throws InterruptedIOException{
+        long enteredAt = System.nanoTime();
+        synchronized(this){
+            if (!busy){
+                //uncontended
+                busy = true;
+                return enteredAt;
+            }
+            Ticket ticket = new Ticket(enteredAt);
+            lanes.get(priority.ordinal()).add(ticket);
+            waiting++;
+            while(!ticket.granted){
+                try{
+                    wait();
+                }
+                catch(InterruptedException exc){
+                    if (ticket.granted){
+                        //pass the connection on
+                        handOver();
+                    }
+                    else{
+                        lanes.get(priority.ordinal()).remove(ticket);
+                        waiting--;
+                    }
+                    throw new InterruptedIOException("interrupted while waiting for the connection");
+                }
+            }
+            return enteredAt;
+        }
+    }
+
+    /**
+     * used to release the connection to the next caller waiting
+     * @param priority lane of the caller
+     * @param enteredAt point in time the lane was entered (see {@link #enter(PRIORITY)})
+     */
+    public void leave(PRIORITY priority, long enteredAt){
+        record(priority, enteredAt);
+        synchronized(this){
+            handOver();
+        }
+    }
+
+    /**
+     * used to record the latency of a request, which has been transacted without entering a lane
+     * @param priority lane of the caller
+     * @param enteredAt point in time the request was issued [ns]
+     */
+    public void record(PRIORITY priority, long enteredAt){
+        latencies[priority.ordinal()].record(System.nanoTime() - enteredAt);
+    }
+
+    /**
+     * @param priority the lane
+     * @return the histogram of the latencies of the lane
+     */
+    public LatencyHistogram getLatencyHistogram(PRIORITY priority){
+        return latencies[priority.ordinal()];
+    }
+
+    /**
+     * @return the number of callers waiting for the connection
+     */
+    public synchronized int getWaiting(){
+        return waiting;
+    }
+
+    private void handOver(){
+        if (waiting == 0){
+            busy = false;
+            return;
+        }
+        LinkedList<Ticket> lane   = null;
+        long               now    = System.nanoTime();
+        long               oldest = Long.MAX_VALUE;
+        //callers exceeding the aging limit of their lane first, the longest waiting one of them
+        for (int i = PRIORITY.NORMAL.ordinal(); i < PRIORITIES.length; i++){
+            Ticket head = lanes.get(i).peek();
+            if (head != null && now - head.enteredAt > agingLimits[i] && head.enteredAt < oldest){
+                lane   = lanes.get(i);
+                oldest = head.enteredAt;
+            }
+        }
+        //otherwise by priority
+        for (int i = 0; lane == null && i < PRIORITIES.length; i++){
+            if (!lanes.get(i).isEmpty()){
+                lane = lanes.get(i);
+            }
+        }
+        lane.poll().granted = true;
+        waiting--;
+        notifyAll();
+    }
+
+    /**
+     * caller waiting in a lane
+     */
+    private static class Ticket{
+        final long enteredAt;
+        boolean    granted;
+
+        Ticket(long enteredAt){
+            this.enteredAt = enteredAt;
+        }
+    }
+}
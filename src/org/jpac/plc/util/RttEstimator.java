@@ -0,0 +1,170 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : RttEstimator.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.util;
+
+/**
+ * estimates the period of time to wait for the response of a plc from the round trip times measured on the connection.<br>
+ * The estimation follows the retransmission timer of TCP (RFC 6298): the smoothed round trip time and its mean variation are
+ * updated with the gains 1/8 and 1/4, and the timeout is the smoothed round trip time plus four times its variation, limited to
+ * [minTimeout, maxTimeout]. Until the first round trip has been measured, the initial timeout applies. Each timeout doubles the
+ * timeout (up to maxTimeout), until the next round trip is measured.<br>
+ * The timeout is read without locking and the estimation does not allocate memory.
+ */
+public class RttEstimator implements RttEstimatorMBean {
+    public static final long DEFAULTINITIALTIMEOUT = 5000; //[ms]
+    public static final long DEFAULTMINTIMEOUT     = 100;  //[ms]
+    public static final long DEFAULTMAXTIMEOUT     = 5000; //[ms]
+
+    private final long    initialTimeout;  //[ms]
+    private long          minTimeout;      //[ms]
+    private long          maxTimeout;      //[ms]
+    private long          samples;
+    private long          backoffs;
+    private long          lastRtt;         //[ns]
+    private long          srtt;            //smoothed round trip time [ns]
+    private long          rttvar;          //mean variation of the round trip time [ns]
+    private volatile long timeout;         //[ms]
+
+    public RttEstimator(){
+        this(DEFAULTINITIALTIMEOUT, DEFAULTMINTIMEOUT, DEFAULTMAXTIMEOUT);
+    }
+
+    /**
+     * @param initialTimeout timeout applied until the first round trip has been measured [ms]
+     * @param minTimeout lower limit of the timeout [ms]
+     * @param maxTimeout upper limit of the timeout [ms]
+     */
+    public RttEstimator(long initialTimeout, long minTimeout, long maxTimeout){
+        if (minTimeout <= 0 || maxTimeout < minTimeout){
+            throw new IllegalArgumentException("invalid timeout limits: " + minTimeout + " .. " + maxTimeout);
+        }
+        this.initialTimeout = initialTimeout;
+        this.minTimeout     = minTimeout;
+        this.maxTimeout     = maxTimeout;
+        this.timeout        = limit(initialTimeout);
+    }
+
+    /**
+     * used to feed a round trip time measured on the connection
+     * @param nanos round trip time [ns]
+     */
+    public synchronized void sample(long nanos){
+        long rtt = Math.max(nanos, 0);
+        if (samples == 0){
+            srtt   = rtt;
+            rttvar = rtt / 2;
+        }
+        else{
+            rttvar += (Math.abs(srtt - rtt) - rttvar) >> 2;
+            srtt   += (rtt - srtt) >> 3;
+        }
+        lastRtt = rtt;
+        samples++;
+        timeout = limit((srtt + 4 * rttvar + 999999) / 1000000);
+    }
+
+    /**
+     * used to signal, that the plc did not respond in time. The timeout is doubled (up to maxTimeout)
+     */
+    public synchronized void timedOut(){
+        backoffs++;
+        timeout = limit(2 * timeout);
+    }
+
+    /**
+     * used to alter the limits of the timeout
+     * @param minTimeout lower limit [ms]
+     * @param maxTimeout upper limit [ms]
+     */
+    public synchronized void setTimeoutLimits(long minTimeout, long maxTimeout){
+        if (minTimeout <= 0 || maxTimeout < minTimeout){
+            throw new IllegalArgumentException("invalid timeout limits: " + minTimeout + " .. " + maxTimeout);
+        }
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+        this.timeout    = limit(timeout);
+    }
+
+    /**
+     * @return the period of time to wait for the response of the plc [ms]
+     */
+    public long getTimeout(){
+        return timeout;
+    }
+
+    public synchronized long getMinTimeout(){
+        return minTimeout;
+    }
+
+    public synchronized long getMaxTimeout(){
+        return maxTimeout;
+    }
+
+    public synchronized long getSamples(){
+        return samples;
+    }
+
+    /**
+     * @return the number of timeouts signaled
+     */
+    public synchronized long getBackoffs(){
+        return backoffs;
+    }
+
+    public synchronized double getLastRtt(){
+        return lastRtt / 1000.0;
+    }
+
+    public synchronized double getSmoothedRtt(){
+        return srtt / 1000.0;
+    }
+
+    public synchronized double getRttVariation(){
+        return rttvar / 1000.0;
+    }
+
+    /**
+     * used to discard the estimation. The initial timeout applies again
+     */
+    public synchronized void reset(){
+        samples  = 0;
+        backoffs = 0;
+        lastRtt  = 0;
+        srtt     = 0;
+        rttvar   = 0;
+        timeout  = limit(initialTimeout);
+    }
+
+    @Override
+    public synchronized String toString(){
+        return getClass().getSimpleName() + "(samples = " + samples + ", srtt = " + getSmoothedRtt() + " us, rttvar = " + getRttVariation()
+               + " us, timeout = " + timeout + " ms)";
+    }
+
+    private long limit(long timeout){
+        return Math.min(Math.max(timeout, minTimeout), maxTimeout);
+    }
+}
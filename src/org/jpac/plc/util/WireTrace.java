@@ -0,0 +1,263 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : WireTrace.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ring buffer recording the raw frames interchanged with a plc (ISO packets including the TPKT header, MODBUS ADU's).<br>
+ * Every frame is stored together with a nanosecond time stamp inside a fixed size off heap buffer.
+ * If the buffer is full, the oldest frames are discarded. Recording does not allocate memory and is cheap enough to be left enabled.
+ * The recorded frames can be dumped on demand and examined by {@link WireTraceDecoder}.
+ */
+public class WireTrace {
+    public enum PROTOCOL  {S7, MODBUS}
+    public enum DIRECTION {TRANSMITTED, RECEIVED}
+
+    public  static final int DEFAULTCAPACITY = 1024 * 1024;
+    private static final int MAGIC           = 0x4A505754; //"JPWT"
+    private static final int VERSION         = 1;
+    private static final int RECORDHEADER    = 16;         //time stamp (8), protocol and direction (4), length (4)
+
+    private final ByteBuffer ring;
+    private final int        capacity;
+    private long             head;        //number of bytes written since the creation of the trace
+    private long             tail;        //position of the oldest record retained
+    private int              position;    //write position of the record currently stored
+
+    public WireTrace(){
+        this(DEFAULTCAPACITY);
+    }
+
+    /**
+     * @param capacity size of the ring buffer in bytes
+     */
+    public WireTrace(int capacity){
+        if (capacity < 2 * RECORDHEADER){
+            throw new IllegalArgumentException("capacity too small: " + capacity);
+        }
+        this.ring     = ByteBuffer.allocateDirect(capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * used to record a frame
+     * @param protocol protocol of the frame
+     * @param direction direction of the frame
+     * @param bytes buffer containing the frame
+     * @param offset offset of the frame inside the buffer
+     * @param length length of the frame
+     */
+    public synchronized void record(PROTOCOL protocol, DIRECTION direction, byte[] bytes, int offset, int length){
+        int n = begin(protocol, direction, length);
+        for (int i = 0; i < n; i++){
+            put(bytes[offset + i]);
+        }
+    }
+
+    /**
+     * used to record a frame. The position of the buffer is not changed.
+     * @param protocol protocol of the frame
+     * @param direction direction of the frame
+     * @param frame buffer containing the frame between its position and limit
+     */
+    public synchronized void record(PROTOCOL protocol, DIRECTION direction, ByteBuffer frame){
+        int n = begin(protocol, direction, frame.remaining());
+        for (int i = 0; i < n; i++){
+            put(frame.get(frame.position() + i));
+        }
+    }
+
+    /**
+     * used to record a frame, which is held in two separate buffers (e.g. a header already decoded and the remaining packet).
+     * The position of the body is not changed.
+     * @param protocol protocol of the frame
+     * @param direction direction of the frame
+     * @param head buffer containing the first part of the frame starting at index 0
+     * @param headLength length of the first part
+     * @param body buffer containing the remaining part of the frame between its position and limit
+     */
+    public synchronized void record(PROTOCOL protocol, DIRECTION direction, byte[] head, int headLength, ByteBuffer body){
+        int n = begin(protocol, direction, headLength + body.remaining());
+        for (int i = 0; i < n; i++){
+            put(i < headLength ? head[i] : body.get(body.position() + i - headLength));
+        }
+    }
+
+    /**
+     * used to discard all frames recorded so far
+     */
+    public synchronized void clear(){
+        head = 0;
+        tail = 0;
+    }
+
+    /**
+     * @return the number of frames currently retained
+     */
+    public synchronized int size(){
+        int  n = 0;
+        for (long r = tail; r < head; r += RECORDHEADER + getInt(r + 12)){
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * used to write the frames currently retained to a stream. The trace is not modified.
+     * @param stream stream to write to
+     * @throws IOException
+     */
+    public synchronized void dump(OutputStream stream) throws IOException{
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (long r = tail; r < head; r += RECORDHEADER + getInt(r + 12)){
+            int length = getInt(r + 12);
+            out.writeLong(getLong(r));
+            out.writeInt(getInt(r + 8));
+            out.writeInt(length);
+            for (int i = 0; i < length; i++){
+                out.write(ring.get((int)((r + RECORDHEADER + i) % capacity)));
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * used to read the frames written by {@link #dump(OutputStream)}
+     * @param stream stream to read from
+     * @return the frames in the order of their recording
+     * @throws IOException
+     */
+    public static List<Frame> load(InputStream stream) throws IOException{
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION){
+            throw new IOException("not a wire trace");
+        }
+        ArrayList<Frame> frames = new ArrayList<Frame>();
+        while(true){
+            long timestamp;
+            try{
+                timestamp = in.readLong();
+            }
+            catch(EOFException exc){
+                break;
+            }
+            int    type  = in.readInt();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            frames.add(new Frame(timestamp, PROTOCOL.values()[type >> 8], DIRECTION.values()[type & 0xFF], bytes));
+        }
+        return frames;
+    }
+
+    /**
+     * reserves space for a record, discarding the oldest records as required, and writes its header
+     * @return the number of bytes of the frame to be stored. Frames exceeding the capacity of the trace are truncated.
+     */
+    private int begin(PROTOCOL protocol, DIRECTION direction, int length){
+        int n = Math.min(length, capacity - RECORDHEADER);
+        while(head + RECORDHEADER + n - tail > capacity){
+            tail += RECORDHEADER + getInt(tail + 12);
+        }
+        position = (int)(head % capacity);
+        head    += RECORDHEADER + n;
+        long timestamp = System.nanoTime();
+        for (int shift = 56; shift >= 0; shift -= 8){
+            put((byte)(timestamp >> shift));
+        }
+        int type = protocol.ordinal() << 8 | direction.ordinal();
+        for (int shift = 24; shift >= 0; shift -= 8){
+            put((byte)(type >> shift));
+        }
+        for (int shift = 24; shift >= 0; shift -= 8){
+            put((byte)(n >> shift));
+        }
+        return n;
+    }
+
+    private void put(byte b){
+        ring.put(position, b);
+        position = position + 1 == capacity ? 0 : position + 1;
+    }
+
+    private int getInt(long index){
+        int value = 0;
+        for (int i = 0; i < 4; i++){
+            value = value << 8 | ring.get((int)((index + i) % capacity)) & 0xFF;
+        }
+        return value;
+    }
+
+    private long getLong(long index){
+        return (long)getInt(index) << 32 | getInt(index + 4) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * frame read from a dumped trace
+     */
+    public static class Frame{
+        private final long      timestamp;
+        private final PROTOCOL  protocol;
+        private final DIRECTION direction;
+        private final byte[]    bytes;
+
+        public Frame(long timestamp, PROTOCOL protocol, DIRECTION direction, byte[] bytes){
+            this.timestamp = timestamp;
+            this.protocol  = protocol;
+            this.direction = direction;
+            this.bytes     = bytes;
+        }
+
+        /**
+         * @return the time stamp of the frame as returned by System.nanoTime()
+         */
+        public long getTimestamp(){
+            return timestamp;
+        }
+
+        public PROTOCOL getProtocol(){
+            return protocol;
+        }
+
+        public DIRECTION getDirection(){
+            return direction;
+        }
+
+        public byte[] getBytes(){
+            return bytes;
+        }
+    }
+}
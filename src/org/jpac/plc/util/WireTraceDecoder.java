@@ -0,0 +1,283 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : WireTraceDecoder.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.plc.util;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * decodes the frames recorded by a {@link WireTrace} into a human readable form.<br>
+ * S7 frames are decoded down to the items of read and write jobs, MODBUS frames down to the fields of the function.<br>
+ * usage: WireTraceDecoder &lt;trace file&gt;
+ */
+public class WireTraceDecoder {
+    private static final int TPKTLENGTH   = 4;
+    private static final int S7PROTOCOLID = 0x32;
+
+    private final StringBuilder text;
+
+    public WireTraceDecoder(){
+        this.text = new StringBuilder();
+    }
+
+    public static void main(String[] args) throws IOException{
+        if (args.length < 1){
+            System.out.println("usage: WireTraceDecoder <trace file>");
+            System.exit(1);
+        }
+        FileInputStream stream = new FileInputStream(args[0]);
+        try{
+            List<WireTrace.Frame> frames  = WireTrace.load(stream);
+            WireTraceDecoder      decoder = new WireTraceDecoder();
+            long                  start   = frames.isEmpty() ? 0 : frames.get(0).getTimestamp();
+            for (WireTrace.Frame frame: frames){
+                System.out.println(String.format("%12.3f ms ", (frame.getTimestamp() - start) / 1000000.0) + decoder.decode(frame));
+            }
+        }
+        finally{
+            stream.close();
+        }
+    }
+
+    /**
+     * @param frame a recorded frame
+     * @return a one line description of the frame
+     */
+    public String decode(WireTrace.Frame frame){
+        text.setLength(0);
+        text.append(frame.getDirection() == WireTrace.DIRECTION.TRANSMITTED ? "TX " : "RX ");
+        text.append(frame.getProtocol()).append(' ');
+        try{
+            switch(frame.getProtocol()){
+                case S7:
+                    decodeS7(frame.getBytes());
+                    break;
+                case MODBUS:
+                    decodeModbus(frame.getBytes(), frame.getDirection() == WireTrace.DIRECTION.TRANSMITTED);
+                    break;
+            }
+        }
+        catch(ArrayIndexOutOfBoundsException exc){
+            text.append(" <truncated frame>");
+        }
+        return text.toString();
+    }
+
+    private void decodeS7(byte[] b){
+        int length = word(b, 2);
+        text.append("len=").append(length);
+        if (b.length < TPKTLENGTH + 2){
+            return;
+        }
+        int cotpLength = b[TPKTLENGTH] & 0xFF;
+        int cotpType   = b[TPKTLENGTH + 1] & 0xFF;
+        switch(cotpType){
+            case 0xE0:
+                text.append(" COTP connect request");
+                return;
+            case 0xD0:
+                text.append(" COTP connect confirm");
+                return;
+            case 0xF0:
+                break;
+            default:
+                text.append(" COTP type 0x").append(Integer.toHexString(cotpType));
+                return;
+        }
+        int h = TPKTLENGTH + 1 + cotpLength;
+        if (h >= b.length || (b[h] & 0xFF) != S7PROTOCOLID){
+            text.append(" no S7 PDU");
+            return;
+        }
+        int type            = b[h + 1] & 0xFF;
+        int parameterLength = word(b, h + 6);
+        int dataLength      = word(b, h + 8);
+        text.append(" pdu=").append(word(b, h + 4));
+        int p = h + 10;
+        switch(type){
+            case 1:
+                text.append(" job");
+                break;
+            case 2:
+            case 3:
+                text.append(type == 2 ? " ack" : " ack data");
+                int error = word(b, h + 10);
+                if (error != 0){
+                    text.append(" error=0x").append(Integer.toHexString(error));
+                }
+                p += 2;
+                break;
+            default:
+                text.append(" type=").append(type);
+        }
+        if (parameterLength == 0){
+            return;
+        }
+        int d        = p + parameterLength;
+        int function = b[p] & 0xFF;
+        switch(function){
+            case 0xF0:
+                text.append(" setup communication: jobs=").append(word(b, p + 2)).append('/').append(word(b, p + 4)).append(" pdu length=").append(word(b, p + 6));
+                break;
+            case 0x04:
+            case 0x05:
+                int items = b[p + 1] & 0xFF;
+                text.append(function == 0x04 ? " read var " : " write var ").append(items).append(" items:");
+                if (type == 1){
+                    decodeItemAddresses(b, p + 2, items);
+                    if (function == 0x05){
+                        decodeDataItems(b, d, items);
+                    }
+                }
+                else if (function == 0x04){
+                    decodeDataItems(b, d, items);
+                }
+                else{
+                    for (int i = 0; i < items && i < dataLength; i++){
+                        text.append(" 0x").append(Integer.toHexString(b[d + i] & 0xFF));
+                    }
+                }
+                break;
+            default:
+                text.append(" function=0x").append(Integer.toHexString(function));
+        }
+    }
+
+    private void decodeItemAddresses(byte[] b, int q, int items){
+        for (int i = 0; i < items; i++, q += 12){
+            int transportSize = b[q + 3] & 0xFF;
+            int count         = word(b, q + 4);
+            int db            = word(b, q + 6);
+            int area          = b[q + 8] & 0xFF;
+            int address       = (b[q + 9] & 0xFF) << 16 | (b[q + 10] & 0xFF) << 8 | b[q + 11] & 0xFF;
+            text.append(' ');
+            switch(area){
+                case 0x81: text.append("I");
+                           break;
+                case 0x82: text.append("Q");
+                           break;
+                case 0x83: text.append("M");
+                           break;
+                case 0x84: text.append("DB").append(db).append('.');
+                           break;
+                case 0x1C:
+                case 0x1D: break;
+                default:   text.append("area 0x").append(Integer.toHexString(area)).append(' ');
+            }
+            if (transportSize == 0x1C || transportSize == 0x1D){
+                //timers and counters are addressed by their number
+                text.append(transportSize == 0x1C ? "C" : "T").append(address).append('[').append(count).append(']');
+            }
+            else if (transportSize == 1){
+                text.append("X").append(address >> 3).append('.').append(address & 0x07);
+            }
+            else{
+                text.append("B").append(address >> 3).append('[').append(count).append(']');
+            }
+        }
+    }
+
+    private void decodeDataItems(byte[] b, int d, int items){
+        text.append(" data:");
+        for (int i = 0; i < items; i++){
+            int returnCode    = b[d] & 0xFF;
+            int transportSize = b[d + 1] & 0xFF;
+            int length        = word(b, d + 2);
+            if (transportSize == 3 || transportSize == 4 || transportSize == 5){
+                //length in bits
+                length = transportSize == 3 ? 1 : length / 8;
+            }
+            text.append(" [");
+            if (returnCode != 0xFF && returnCode != 0x00){
+                text.append("error 0x").append(Integer.toHexString(returnCode)).append(']');
+                d += 4;
+                continue;
+            }
+            text.append(length).append(" bytes:");
+            appendHex(b, d + 4, Math.min(length, 16));
+            if (length > 16){
+                text.append(" ...");
+            }
+            text.append(']');
+            d += 4 + length + (length % 2);
+        }
+    }
+
+    private void decodeModbus(byte[] b, boolean request){
+        text.append("tid=").append(word(b, 0)).append(" unit=").append(b[6] & 0xFF);
+        int function = b[7] & 0xFF;
+        if ((function & 0x80) != 0){
+            text.append(" fc=").append(function & 0x7F).append(" exception=").append(b[8] & 0xFF);
+            return;
+        }
+        text.append(" fc=").append(function);
+        switch(function){
+            case 1:
+            case 2:
+            case 3:
+            case 4:
+                if (request){
+                    text.append(" address=").append(word(b, 8)).append(" quantity=").append(word(b, 10));
+                }
+                else{
+                    text.append(" byte count=").append(b[8] & 0xFF).append(" data:");
+                    appendHex(b, 9, b.length - 9);
+                }
+                break;
+            case 5:
+            case 6:
+                text.append(" address=").append(word(b, 8)).append(" value=0x").append(Integer.toHexString(word(b, 10)));
+                break;
+            case 15:
+            case 16:
+                text.append(" address=").append(word(b, 8)).append(" quantity=").append(word(b, 10));
+                if (request){
+                    text.append(" data:");
+                    appendHex(b, 13, b.length - 13);
+                }
+                break;
+            default:
+                text.append(" data:");
+                appendHex(b, 8, b.length - 8);
+        }
+    }
+
+    private void appendHex(byte[] b, int offset, int length){
+        for (int i = offset; i < offset + length && i < b.length; i++){
+            text.append(' ');
+            int v = b[i] & 0xFF;
+            if (v < 0x10){
+                text.append('0');
+            }
+            text.append(Integer.toHexString(v));
+        }
+    }
+
+    private static int word(byte[] b, int index){
+        return (b[index] & 0xFF) << 8 | b[index + 1] & 0xFF;
+    }
+}
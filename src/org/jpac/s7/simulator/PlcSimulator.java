@@ -0,0 +1,507 @@
+/**
+ * PROJECT   : jPAC S7 communication library
+ * MODULE    : PlcSimulator.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   :
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.s7.simulator;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * simulates a S7 plc speaking the subset of ISO on TCP used by org.jpac.plc.s7.Connection:
+ * COTP connect, PDU length negotiation and read/write var on data blocks.<br>
+ * The data blocks are held in memory and can be accessed by the application concurrently. An artificial latency
+ * may be applied to every PDU. Replies of pipelined jobs are delayed independently, like a plc processing several jobs in parallel.<br>
+ * Simulators share their threads, so many instances fit into one JVM.<br>
+ * usage: PlcSimulator &lt;port&gt; &lt;db&gt;:&lt;size&gt; [&lt;db&gt;:&lt;size&gt; ...] [latency=&lt;microseconds&gt;]
+ */
+public class PlcSimulator {
+    static Logger Log = Logger.getLogger("jpac.plc.s7");
+
+    public  static final int DEFAULTMAXPDULENGTH   = 480;
+    public  static final int DEFAULTMAXPENDINGJOBS = 8;
+
+    //result codes of data items
+    static final int DATAOK                = 0xFF;
+    static final int ADDRESSOUTOFRANGE     = 0x05;
+    static final int INVALIDTRANSPORTSIZE  = 0x06;
+    static final int WRITEDATASIZEMISMATCH = 0x07;
+    static final int ITEMNOTAVAILABLE      = 0x0A;
+
+    private static final int TPKTLENGTH     = 4;
+    private static final int COTPDATALENGTH = 3;
+    private static final int AREADB         = 0x84;
+
+    private static final ExecutorService          sessions;
+    private static final ScheduledExecutorService replies;
+
+    static{
+        ThreadFactory daemons = new ThreadFactory(){
+            private int n = 0;
+            public synchronized Thread newThread(Runnable runnable){
+                Thread thread = new Thread(runnable, "jpac.s7.simulator-" + n++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        sessions = Executors.newCachedThreadPool(daemons);
+        replies  = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), daemons);
+    }
+
+    private final HashMap<Integer, byte[]> dataBlocks;
+    private final List<Socket>             clients;
+    private ServerSocket                   serverSocket;
+    private int                            maxPDULength;
+    private int                            maxPendingJobs;
+    private volatile long                  latency;     //[us]
+    private final AtomicLong               jobs;        //number of jobs processed
+
+    public PlcSimulator(){
+        this.dataBlocks     = new HashMap<Integer, byte[]>();
+        this.clients        = new ArrayList<Socket>();
+        this.maxPDULength   = DEFAULTMAXPDULENGTH;
+        this.maxPendingJobs = DEFAULTMAXPENDINGJOBS;
+        this.jobs           = new AtomicLong();
+    }
+
+    public static void main(String[] args) throws Exception{
+        if (args.length < 2){
+            System.out.println("usage: PlcSimulator <port> <db>:<size> [<db>:<size> ...] [latency=<microseconds>]");
+            System.exit(1);
+        }
+        PlcSimulator simulator = new PlcSimulator();
+        for (int i = 1; i < args.length; i++){
+            if (args[i].startsWith("latency=")){
+                simulator.setLatency(Long.parseLong(args[i].substring("latency=".length())));
+            }
+            else{
+                String[] db = args[i].split(":");
+                simulator.addDataBlock(Integer.parseInt(db[0]), Integer.parseInt(db[1]));
+            }
+        }
+        simulator.start(Integer.parseInt(args[0]));
+        System.out.println("simulator listening on port " + simulator.getPort());
+        while(true){
+            Thread.sleep(10000);
+            System.out.println(simulator.getJobs() + " jobs processed");
+        }
+    }
+
+    /**
+     * used to create a data block. An existing data block is replaced
+     * @param db number of the data block
+     * @param size size of the data block in bytes
+     * @return the memory of the data block. Accesses must be synchronized on the returned array
+     */
+    public synchronized byte[] addDataBlock(int db, int size){
+        byte[] memory = new byte[size];
+        dataBlocks.put(db, memory);
+        return memory;
+    }
+
+    /**
+     * @param db number of the data block
+     * @return the memory of the data block, null if not present. Accesses must be synchronized on the returned array
+     */
+    public synchronized byte[] getDataBlock(int db){
+        return dataBlocks.get(db);
+    }
+
+    /**
+     * @param latency period of time every PDU is delayed before it is answered [us]
+     */
+    public void setLatency(long latency){
+        this.latency = latency;
+    }
+
+    public long getLatency(){
+        return latency;
+    }
+
+    /**
+     * @param maxPDULength maximum PDU length offered on negotiation
+     */
+    public void setMaxPDULength(int maxPDULength){
+        this.maxPDULength = maxPDULength;
+    }
+
+    /**
+     * @param maxPendingJobs maximum number of concurrently pending jobs offered on negotiation
+     */
+    public void setMaxPendingJobs(int maxPendingJobs){
+        this.maxPendingJobs = maxPendingJobs;
+    }
+
+    /**
+     * @return the number of jobs processed since the start of the simulator
+     */
+    public long getJobs(){
+        return jobs.get();
+    }
+
+    /**
+     * used to start listening for connections
+     * @param port port to listen on. 0: an ephemeral port is chosen (see {@link #getPort()})
+     * @throws IOException
+     */
+    public synchronized void start(int port) throws IOException{
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        final ServerSocket listening = serverSocket;
+        sessions.execute(new Runnable(){
+            public void run(){
+                try{
+                    while(true){
+                        final Socket client = listening.accept();
+                        synchronized(clients){
+                            clients.add(client);
+                        }
+                        sessions.execute(new Runnable(){
+                            public void run(){
+                                serve(client);
+                            }
+                        });
+                    }
+                }
+                catch(IOException exc){
+                    //simulator stopped
+                }
+            }
+        });
+    }
+
+    /**
+     * used to stop listening and to close all connections
+     */
+    public synchronized void stop(){
+        try{
+            if (serverSocket != null){
+                serverSocket.close();
+            }
+            synchronized(clients){
+                for (Socket client: clients){
+                    client.close();
+                }
+                clients.clear();
+            }
+        }
+        catch(IOException exc){
+            Log.error("Error: ", exc);
+        }
+    }
+
+    /**
+     * @return the port the simulator is listening on
+     */
+    public int getPort(){
+        return serverSocket.getLocalPort();
+    }
+
+    private void serve(Socket client){
+        try{
+            client.setTcpNoDelay(true);
+            DataInputStream    in  = new DataInputStream(client.getInputStream());
+            final OutputStream out = client.getOutputStream();
+            while(true){
+                //read the TPKT header and the remaining packet
+                in.readUnsignedByte();
+                in.readUnsignedByte();
+                int    length = in.readUnsignedShort();
+                byte[] packet = new byte[length - TPKTLENGTH];
+                in.readFully(packet);
+                final byte[] reply = process(packet);
+                if (reply == null){
+                    continue;
+                }
+                if (latency > 0){
+                    replies.schedule(new Runnable(){
+                        public void run(){
+                            send(out, reply);
+                        }
+                    }, latency, TimeUnit.MICROSECONDS);
+                }
+                else{
+                    send(out, reply);
+                }
+            }
+        }
+        catch(EOFException exc){
+            //connection closed by the client
+        }
+        catch(IOException exc){
+            if (Log.isDebugEnabled()) Log.debug("simulated plc connection closed: " + exc.getMessage());
+        }
+        finally{
+            try{
+                client.close();
+            }
+            catch(IOException exc){}
+            synchronized(clients){
+                clients.remove(client);
+            }
+        }
+    }
+
+    private void send(OutputStream out, byte[] reply){
+        try{
+            synchronized(out){
+                out.write(reply);
+                out.flush();
+            }
+        }
+        catch(IOException exc){
+            //connection closed meanwhile
+        }
+    }
+
+    /**
+     * @param packet an ISO packet without the TPKT header
+     * @return the complete reply including the TPKT header, null if no reply is required
+     */
+    byte[] process(byte[] packet){
+        int cotpType = packet[1] & 0xFF;
+        if (cotpType == 0xE0){
+            //COTP connect request: confirm it, echoing the parameters (TSAP's, TPDU size)
+            Frame reply = new Frame();
+            reply.put(packet.length - 1).put(0xD0);
+            reply.putWord(word(packet, 4)).putWord(0x0001).put(0x00);
+            reply.put(packet, 7, packet.length - 7);
+            return reply.toPacket();
+        }
+        if (cotpType != 0xF0){
+            return null;
+        }
+        jobs.incrementAndGet();
+        int h               = COTPDATALENGTH;
+        int pduReference    = word(packet, h + 4);
+        int parameterLength = word(packet, h + 6);
+        int p               = h + 10;
+        int d               = p + parameterLength;
+        int function        = packet[p] & 0xFF;
+        Frame parameters    = new Frame();
+        Frame data          = new Frame();
+        int   error         = 0;
+        switch(function){
+            case 0xF0:
+                int jobsCalling = Math.min(word(packet, p + 2), maxPendingJobs);
+                int jobsCalled  = Math.min(word(packet, p + 4), maxPendingJobs);
+                int pduLength   = Math.min(word(packet, p + 6), maxPDULength);
+                parameters.put(0xF0).put(0x00).putWord(jobsCalling).putWord(jobsCalled).putWord(pduLength);
+                break;
+            case 0x04:
+                read(packet, p, parameters, data);
+                break;
+            case 0x05:
+                write(packet, p, d, parameters, data);
+                break;
+            default:
+                //function not supported
+                error = 0x8104;
+                parameters.put(function).put(0);
+        }
+        Frame reply = new Frame();
+        reply.put(0x02).put(0xF0).put(0x80);
+        reply.put(0x32).put(0x03).putWord(0x0000).putWord(pduReference);
+        reply.putWord(parameters.length()).putWord(data.length()).putWord(error);
+        reply.put(parameters).put(data);
+        return reply.toPacket();
+    }
+
+    private void read(byte[] packet, int p, Frame parameters, Frame data){
+        int items = packet[p + 1] & 0xFF;
+        parameters.put(0x04).put(items);
+        for (int i = 0, q = p + 2; i < items; i++, q += 12){
+            Item   item   = new Item(packet, q);
+            byte[] memory = getDataBlock(item.db);
+            int    result = item.check(memory);
+            if (result != DATAOK){
+                data.put(result).put(0x00).putWord(0);
+                continue;
+            }
+            synchronized(memory){
+                if (item.transportSize == Item.BIT){
+                    data.put(DATAOK).put(0x03).putWord(1);
+                    data.put((memory[item.byteAddress] >> item.bitAddress) & 0x01);
+                }
+                else{
+                    data.put(DATAOK).put(0x04).putWord(item.length * 8);
+                    data.put(memory, item.byteAddress, item.length);
+                }
+            }
+            if (item.getByteLength() % 2 == 1 && i < items - 1){
+                data.put(0x00);
+            }
+        }
+    }
+
+    private void write(byte[] packet, int p, int d, Frame parameters, Frame data){
+        int items = packet[p + 1] & 0xFF;
+        parameters.put(0x05).put(items);
+        for (int i = 0, q = p + 2; i < items; i++, q += 12){
+            Item   item          = new Item(packet, q);
+            int    transportSize = packet[d + 1] & 0xFF;
+            int    length        = word(packet, d + 2);
+            if (transportSize == 0x03 || transportSize == 0x04 || transportSize == 0x05){
+                //length given in bits
+                length = transportSize == 0x03 ? 1 : length / 8;
+            }
+            int    offset = d + 4;
+            d += 4 + length + (length % 2);
+            byte[] memory = getDataBlock(item.db);
+            int    result = item.check(memory);
+            if (result == DATAOK && length != item.getByteLength()){
+                result = WRITEDATASIZEMISMATCH;
+            }
+            if (result == DATAOK){
+                synchronized(memory){
+                    if (item.transportSize == Item.BIT){
+                        if (packet[offset] != 0){
+                            memory[item.byteAddress] |= 1 << item.bitAddress;
+                        }
+                        else{
+                            memory[item.byteAddress] &= ~(1 << item.bitAddress);
+                        }
+                    }
+                    else{
+                        System.arraycopy(packet, offset, memory, item.byteAddress, length);
+                    }
+                }
+            }
+            data.put(result);
+        }
+    }
+
+    private static int word(byte[] b, int index){
+        return (b[index] & 0xFF) << 8 | b[index + 1] & 0xFF;
+    }
+
+    /**
+     * address of a read or write item
+     */
+    private static class Item{
+        static final int BIT  = 0x01;
+        static final int BYTE = 0x02;
+
+        final int transportSize;
+        final int length;
+        final int db;
+        final int area;
+        final int byteAddress;
+        final int bitAddress;
+
+        Item(byte[] packet, int q){
+            transportSize = packet[q + 3] & 0xFF;
+            length        = word(packet, q + 4);
+            db            = word(packet, q + 6);
+            area          = packet[q + 8] & 0xFF;
+            int address   = (packet[q + 9] & 0xFF) << 16 | (packet[q + 10] & 0xFF) << 8 | packet[q + 11] & 0xFF;
+            byteAddress   = address >> 3;
+            bitAddress    = address & 0x07;
+        }
+
+        int getByteLength(){
+            return transportSize == BIT ? 1 : length;
+        }
+
+        int check(byte[] memory){
+            if (area != AREADB || memory == null){
+                return ITEMNOTAVAILABLE;
+            }
+            if (transportSize != BIT && transportSize != BYTE){
+                return INVALIDTRANSPORTSIZE;
+            }
+            if (byteAddress + getByteLength() > memory.length){
+                return ADDRESSOUTOFRANGE;
+            }
+            return DATAOK;
+        }
+    }
+
+    /**
+     * growable buffer used to compose a reply
+     */
+    private static class Frame{
+        private byte[] bytes = new byte[256];
+        private int    length;
+
+        Frame put(int b){
+            ensureCapacity(1);
+            bytes[length++] = (byte)b;
+            return this;
+        }
+
+        Frame putWord(int w){
+            return put(w >> 8).put(w);
+        }
+
+        Frame put(byte[] b, int offset, int n){
+            ensureCapacity(n);
+            System.arraycopy(b, offset, bytes, length, n);
+            length += n;
+            return this;
+        }
+
+        Frame put(Frame frame){
+            return put(frame.bytes, 0, frame.length);
+        }
+
+        int length(){
+            return length;
+        }
+
+        byte[] toPacket(){
+            byte[] packet = new byte[TPKTLENGTH + length];
+            packet[0] = 0x03;
+            packet[1] = 0x00;
+            packet[2] = (byte)(packet.length >> 8);
+            packet[3] = (byte)packet.length;
+            System.arraycopy(bytes, 0, packet, TPKTLENGTH, length);
+            return packet;
+        }
+
+        private void ensureCapacity(int n){
+            if (length + n > bytes.length){
+                byte[] larger = new byte[Math.max(2 * bytes.length, length + n)];
+                System.arraycopy(bytes, 0, larger, 0, length);
+                bytes = larger;
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * PROJECT   : jPAC S7 communication library
+ * MODULE    : AllocationBenchmark.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   :
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.s7.toolbox;
+
+import java.lang.management.ManagementFactory;
+import org.jpac.plc.Request;
+import org.jpac.plc.s7.Address;
+import org.jpac.plc.s7.Connection;
+import org.jpac.plc.s7.Data;
+import org.jpac.plc.s7.ReadRequest;
+import org.jpac.plc.s7.ReceiveTransaction;
+import org.jpac.plc.s7.TransmitTransaction;
+import org.jpac.plc.s7.WriteRequest;
+
+/**
+ * checks, that cyclic S7 transactions do not allocate memory once warmed up. The bytes allocated by the calling thread
+ * are taken from the allocation counters of the ThreadMXBean. The range read is written back unchanged.<br>
+ * Exits with status 1, if any transaction allocated memory.<br>
+ * usage: AllocationBenchmark &lt;ip&gt; &lt;rack&gt; &lt;slot&gt; &lt;db&gt; &lt;byteAddress&gt; &lt;length&gt; [&lt;iterations&gt;]
+ */
+public class AllocationBenchmark {
+    final static int DEFAULTITERATIONS = 10000;
+    final static int WARMUPITERATIONS  = 20000;
+
+    public static void main(String[] args) throws Exception{
+        if (args.length < 6){
+            System.out.println("usage: AllocationBenchmark <ip> <rack> <slot> <db> <byteAddress> <length> [<iterations>]");
+            System.exit(1);
+        }
+        String host        = args[0];
+        int    rack        = Integer.parseInt(args[1]);
+        int    slot        = Integer.parseInt(args[2]);
+        int    db          = Integer.parseInt(args[3]);
+        int    byteAddress = Integer.parseInt(args[4]);
+        int    length      = Integer.parseInt(args[5]);
+        int    iterations  = args.length > 6 ? Integer.parseInt(args[6]) : DEFAULTITERATIONS;
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        if (!threadMXBean.isThreadAllocatedMemorySupported()){
+            System.out.println("allocation counters not supported by this JVM");
+            System.exit(1);
+        }
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        boolean allocationFree = true;
+        for (Connection.TRANSPORT transport: Connection.TRANSPORT.values()){
+            Connection conn = new Connection(host, rack, slot, false, true, transport);
+            try{
+                Data                data  = new Data(new byte[length + 1]);
+                ReceiveTransaction  rxTrx = new ReceiveTransaction(conn);
+                TransmitTransaction txTrx = new TransmitTransaction(conn);
+                rxTrx.addRequest(new ReadRequest(Request.DATATYPE.BYTE, db, byteAddress, Address.NA, 0, length, data));
+                rxTrx.addRequest(new ReadRequest(Request.DATATYPE.BIT, db, byteAddress, 0, length, 1, data));
+                txTrx.addRequest(new WriteRequest(Request.DATATYPE.BYTE, db, byteAddress, Address.NA, 0, length, data));
+                for (int i = 0; i < WARMUPITERATIONS; i++){
+                    rxTrx.transact();
+                    txTrx.transact();
+                }
+                long threadId = Thread.currentThread().getId();
+                long start    = threadMXBean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < iterations; i++){
+                    rxTrx.transact();
+                }
+                long received = threadMXBean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < iterations; i++){
+                    txTrx.transact();
+                }
+                long transmitted = threadMXBean.getThreadAllocatedBytes(threadId);
+                allocationFree &= report(transport + " receive", received - start, iterations);
+                allocationFree &= report(transport + " transmit", transmitted - received, iterations);
+            }
+            finally{
+                conn.close();
+            }
+        }
+        System.exit(allocationFree ? 0 : 1);
+    }
+
+    static boolean report(String title, long allocatedBytes, int iterations){
+        System.out.println(title + ": " + iterations + " transactions, " + allocatedBytes + " bytes allocated ("
+                           + ((double)allocatedBytes / iterations) + " bytes per transaction)");
+        return allocatedBytes == 0;
+    }
+}
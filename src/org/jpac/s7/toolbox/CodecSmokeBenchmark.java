@@ -0,0 +1,231 @@
+/**
+ * PROJECT   : jPAC S7 communication library
+ * MODULE    : CodecSmokeBenchmark.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   :
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.s7.toolbox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import org.jpac.plc.Request;
+import org.jpac.plc.TooManyRequestsException;
+import org.jpac.plc.s7.Address;
+import org.jpac.plc.s7.Command;
+import org.jpac.plc.s7.Connection;
+import org.jpac.plc.s7.Data;
+import org.jpac.plc.s7.ReadMultipleData;
+import org.jpac.plc.s7.ReadRequest;
+import org.jpac.plc.s7.WriteMultipleData;
+import org.jpac.plc.s7.WriteRequest;
+
+/**
+ * measures the encoding and decoding throughput and the allocation rate of the S7 codec without a plc.<br>
+ * ReadMultipleData and WriteMultipleData jobs containing 1, 20 and the maximum number of items are transacted
+ * over an in memory stream pair, which answers every request like a plc. Encoding is measured from the call of transact()
+ * until the request is flushed, decoding from the first byte of the reply read until transact() returns.<br>
+ * This is a smoke benchmark, not a JMH harness: it runs in a single jvm with a fixed warm up and neither forks
+ * nor guards against dead code elimination or JIT artifacts. Its figures show gross codec regressions and
+ * unexpected allocations, but they are no proof for small gains, and the loopback does not exercise the transport at all.<br>
+ * usage: CodecSmokeBenchmark [&lt;pdu length&gt; [&lt;item length&gt; [&lt;iterations&gt;]]]
+ */
+public class CodecSmokeBenchmark {
+    final static int DEFAULTPDULENGTH  = 960;
+    final static int DEFAULTITEMLENGTH = 4;
+    final static int DEFAULTITERATIONS = 200000;
+    final static int WARMUPITERATIONS  = 50000;
+
+    public static void main(String[] args) throws Exception{
+        int pduLength  = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULTPDULENGTH;
+        int itemLength = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULTITEMLENGTH;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULTITERATIONS;
+
+        Loopback   loopback = new Loopback(pduLength);
+        Connection conn     = new LoopbackConnection(loopback, pduLength);
+        System.out.println("pdu length = " + pduLength + ", item length = " + itemLength + ", iterations = " + iterations);
+        for (int items: new int[]{1, 20, Integer.MAX_VALUE}){
+            ReadMultipleData readJob = new ReadMultipleData(conn);
+            Data             data    = new Data(new byte[pduLength]);
+            int              n       = 0;
+            try{
+                while(n < items){
+                    readJob.addRequest(new ReadRequest(Request.DATATYPE.BYTE, 1, n * itemLength, Address.NA, 0, itemLength, data));
+                    n++;
+                }
+            }
+            catch(TooManyRequestsException exc){
+                //maximum number of items reached
+            }
+            measure("ReadMultipleData  " + n + " items", readJob, loopback, iterations);
+        }
+        for (int items: new int[]{1, 20, Integer.MAX_VALUE}){
+            WriteMultipleData writeJob = new WriteMultipleData(conn);
+            Data              data     = new Data(new byte[pduLength]);
+            int               n        = 0;
+            try{
+                while(n < items){
+                    writeJob.addRequest(new WriteRequest(Request.DATATYPE.BYTE, 1, n * itemLength, Address.NA, 0, itemLength, data));
+                    n++;
+                }
+            }
+            catch(TooManyRequestsException exc){
+                //maximum number of items reached
+            }
+            measure("WriteMultipleData " + n + " items", writeJob, loopback, iterations);
+        }
+    }
+
+    static void measure(String title, Command job, Loopback loopback, int iterations) throws IOException{
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUPITERATIONS; i++){
+            job.transact();
+        }
+        long encoding  = 0;
+        long decoding  = 0;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++){
+            long start = System.nanoTime();
+            job.transact();
+            long end   = System.nanoTime();
+            encoding  += loopback.requestFlushed - start;
+            decoding  += end - loopback.replyStarted;
+        }
+        allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+        System.out.println(title + ": request " + loopback.lastRequestLength + " bytes, reply " + loopback.replyLength + " bytes"
+                           + ", encode " + (encoding / iterations) + " ns (" + (long)(iterations * 1e9 / encoding) + " jobs/s)"
+                           + ", decode " + (decoding / iterations) + " ns (" + (long)(iterations * 1e9 / decoding) + " jobs/s)"
+                           + ", allocated " + (allocated / iterations) + " bytes per job");
+    }
+
+    /**
+     * connection operated on the loopback instead of a socket
+     */
+    static class LoopbackConnection extends Connection{
+        LoopbackConnection(Loopback loopback, int pduLength) throws IOException{
+            super("loopback", 0, 0, false, false);
+            attachStreams(loopback.replies, loopback.requests, pduLength, 1);
+        }
+    }
+
+    /**
+     * in memory stream pair answering read and write jobs like a plc. Replies are composed without allocations
+     */
+    static class Loopback{
+        private static final int PARAMETERS = 17;  //TPKT (4) + COTP (3) + S7 job header (10)
+
+        final byte[] request;
+        final byte[] reply;
+        int          requestLength;
+        int          lastRequestLength;
+        int          replyLength;
+        int          replyPosition;
+        long         requestFlushed;
+        long         replyStarted;
+
+        final OutputStream requests = new OutputStream(){
+            @Override
+            public void write(int b){
+                request[requestLength++] = (byte)b;
+            }
+            @Override
+            public void write(byte[] b, int off, int len){
+                System.arraycopy(b, off, request, requestLength, len);
+                requestLength += len;
+            }
+            @Override
+            public void flush(){
+                requestFlushed = System.nanoTime();
+                answer();
+            }
+        };
+
+        final InputStream replies = new InputStream(){
+            @Override
+            public int read(){
+                if (replyPosition == 0){
+                    replyStarted = System.nanoTime();
+                }
+                return replyPosition < replyLength ? reply[replyPosition++] & 0xFF : -1;
+            }
+            @Override
+            public int read(byte[] b, int off, int len){
+                if (replyPosition == 0){
+                    replyStarted = System.nanoTime();
+                }
+                int n = Math.min(len, replyLength - replyPosition);
+                System.arraycopy(reply, replyPosition, b, off, n);
+                replyPosition += n;
+                return n;
+            }
+            @Override
+            public int available(){
+                return replyLength - replyPosition;
+            }
+        };
+
+        Loopback(int pduLength){
+            request = new byte[2 * pduLength + 64];
+            reply   = new byte[2 * pduLength + 64];
+        }
+
+        private void answer(){
+            int function = request[PARAMETERS] & 0xFF;
+            int items    = request[PARAMETERS + 1] & 0xFF;
+            int p        = 19;                        //TPKT + COTP + S7 ack data header (12)
+            int d        = p + 2;
+            for (int i = 0, q = PARAMETERS + 2; i < items; i++, q += 12){
+                int transportSize = request[q + 3];
+                int count         = transportSize == 1 ? 1 : (request[q + 4] & 0xFF) << 8 | request[q + 5] & 0xFF;
+                reply[d++] = (byte)0xFF;
+                if (function == 0x04){
+                    int bits = transportSize == 1 ? 1 : count * 8;
+                    reply[d++] = (byte)(transportSize == 1 ? 3 : 4);
+                    reply[d++] = (byte)(bits >> 8);
+                    reply[d++] = (byte)bits;
+                    for (int k = 0; k < count; k++){
+                        reply[d++] = (byte)k;
+                    }
+                    if (count % 2 == 1 && i < items - 1){
+                        reply[d++] = 0;
+                    }
+                }
+            }
+            int parameterLength = 2;
+            int dataLength      = d - p - parameterLength;
+            reply[0]  = 0x03; reply[1] = 0x00; reply[2] = (byte)(d >> 8); reply[3] = (byte)d;
+            reply[4]  = 0x02; reply[5] = (byte)0xF0; reply[6] = (byte)0x80;
+            reply[7]  = 0x32; reply[8] = 0x03; reply[9] = 0; reply[10] = 0;
+            reply[11] = request[11]; reply[12] = request[12];  //transaction number
+            reply[13] = 0; reply[14] = (byte)parameterLength;
+            reply[15] = (byte)(dataLength >> 8); reply[16] = (byte)dataLength;
+            reply[17] = 0; reply[18] = 0;
+            reply[p]  = (byte)function; reply[p + 1] = (byte)items;
+            replyLength   = d;
+            replyPosition     = 0;
+            lastRequestLength = requestLength;
+            requestLength     = 0;
+        }
+    }
+}
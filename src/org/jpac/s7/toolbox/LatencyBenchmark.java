@@ -0,0 +1,103 @@
+/**
+ * PROJECT   : jPAC S7 communication library
+ * MODULE    : LatencyBenchmark.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   :
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.s7.toolbox;
+
+import java.util.Arrays;
+import org.jpac.plc.Request;
+import org.jpac.plc.s7.Address;
+import org.jpac.plc.s7.Connection;
+import org.jpac.plc.s7.Data;
+import org.jpac.plc.s7.ReadRequest;
+import org.jpac.plc.s7.ReceiveTransaction;
+
+/**
+ * measures the round trip latency of S7 read jobs for the available transports of {@link Connection}.<br>
+ * usage: LatencyBenchmark &lt;ip&gt; &lt;rack&gt; &lt;slot&gt; &lt;db&gt; &lt;byteAddress&gt; &lt;length&gt; [&lt;iterations&gt;]
+ */
+public class LatencyBenchmark {
+    final static int DEFAULTITERATIONS = 10000;
+    final static int WARMUPITERATIONS  = 1000;
+
+    public static void main(String[] args) throws Exception{
+        if (args.length < 6){
+            System.out.println("usage: LatencyBenchmark <ip> <rack> <slot> <db> <byteAddress> <length> [<iterations>]");
+            System.exit(1);
+        }
+        String host        = args[0];
+        int    rack        = Integer.parseInt(args[1]);
+        int    slot        = Integer.parseInt(args[2]);
+        int    db          = Integer.parseInt(args[3]);
+        int    byteAddress = Integer.parseInt(args[4]);
+        int    length      = Integer.parseInt(args[5]);
+        int    iterations  = args.length > 6 ? Integer.parseInt(args[6]) : DEFAULTITERATIONS;
+
+        for (Connection.TRANSPORT transport: Connection.TRANSPORT.values()){
+            Connection conn = new Connection(host, rack, slot, false, true, transport);
+            try{
+                long[] samples = measure(conn, db, byteAddress, length, iterations);
+                report(transport.toString(), samples);
+            }
+            finally{
+                conn.close();
+            }
+        }
+    }
+
+    /**
+     * performs the given number of read transactions and returns the round trip times in nanoseconds
+     */
+    static long[] measure(Connection conn, int db, int byteAddress, int length, int iterations) throws Exception{
+        Data               data  = new Data(new byte[length]);
+        ReadRequest        req   = new ReadRequest(Request.DATATYPE.BYTE, db, byteAddress, Address.NA, 0, length, data);
+        ReceiveTransaction rxTrx = new ReceiveTransaction(conn);
+        rxTrx.addRequest(req);
+        for (int i = 0; i < WARMUPITERATIONS; i++){
+            rxTrx.transact();
+        }
+        long[] samples = new long[iterations];
+        for (int i = 0; i < iterations; i++){
+            long start = System.nanoTime();
+            rxTrx.transact();
+            samples[i] = System.nanoTime() - start;
+        }
+        return samples;
+    }
+
+    static void report(String title, long[] samples){
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long s: sorted){
+            sum += s;
+        }
+        System.out.println(title + ": " + sorted.length + " round trips [us]"
+                           + " min = "    + sorted[0] / 1000
+                           + " median = " + sorted[sorted.length / 2] / 1000
+                           + " p99 = "    + sorted[(int)(sorted.length * 0.99)] / 1000
+                           + " max = "    + sorted[sorted.length - 1] / 1000
+                           + " mean = "   + (sum / sorted.length) / 1000);
+    }
+}
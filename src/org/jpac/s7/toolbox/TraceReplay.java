@@ -0,0 +1,94 @@
+/**
+ * PROJECT   : jPAC S7 communication library
+ * MODULE    : TraceReplay.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   :
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jpac.s7.toolbox;
+
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.jpac.plc.util.WireTrace;
+import org.jpac.plc.util.WireTraceDecoder;
+
+/**
+ * feeds the replies recorded in a wire trace (see {@link WireTrace#dump(java.io.OutputStream)}) repeatedly through
+ * the {@link WireTraceDecoder} and reports the decoding throughput.<br>
+ * usage: TraceReplay &lt;trace file&gt; [&lt;iterations&gt;]
+ */
+public class TraceReplay {
+    final static int DEFAULTITERATIONS = 1000;
+    final static int WARMUPITERATIONS  = 100;
+
+    public static void main(String[] args) throws Exception{
+        if (args.length < 1){
+            System.out.println("usage: TraceReplay <trace file> [<iterations>]");
+            System.exit(1);
+        }
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULTITERATIONS;
+
+        List<WireTrace.Frame> replies = new ArrayList<WireTrace.Frame>();
+        FileInputStream       stream  = new FileInputStream(args[0]);
+        try{
+            for (WireTrace.Frame frame: WireTrace.load(stream)){
+                if (frame.getDirection() == WireTrace.DIRECTION.RECEIVED){
+                    replies.add(frame);
+                }
+            }
+        }
+        finally{
+            stream.close();
+        }
+        if (replies.isEmpty()){
+            System.out.println("trace contains no replies");
+            System.exit(1);
+        }
+
+        WireTraceDecoder decoder = new WireTraceDecoder();
+        long             bytes   = 0;
+        for (WireTrace.Frame frame: replies){
+            bytes += frame.getBytes().length;
+        }
+        for (int i = 0; i < WARMUPITERATIONS; i++){
+            replay(decoder, replies);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++){
+            replay(decoder, replies);
+        }
+        long   elapsed = System.nanoTime() - start;
+        double frames  = (double)replies.size() * iterations;
+        System.out.println(replies.size() + " replies (" + bytes + " bytes) replayed " + iterations + " times: "
+                           + (long)(frames * 1e9 / elapsed) + " frames/s, "
+                           + (long)((double)bytes * iterations * 1e9 / elapsed / 1024 / 1024) + " MB/s, "
+                           + (elapsed / frames) + " ns per frame");
+    }
+
+    static int replay(WireTraceDecoder decoder, List<WireTrace.Frame> replies){
+        int length = 0;
+        for (WireTrace.Frame frame: replies){
+            length += decoder.decode(frame).length();
+        }
+        return length;
+    }
+}
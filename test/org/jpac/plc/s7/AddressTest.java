@@ -0,0 +1,114 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : AddressTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.s7;
+
+import org.jpac.IndexOutOfRangeException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AddressTest {
+
+    @Test
+    public void dataBlockAddressRoundTripsAsCSV() throws Exception{
+        Address address = new Address(12, 4, 3, 1);
+        assertTrue(address.asCSV().startsWith("12;"));
+        Address parsed = Address.valueOf(address.asCSV());
+        assertEquals(Address.AREA.DB, parsed.getArea());
+        assertEquals(12, parsed.getDb());
+        assertEquals(4, parsed.getByteIndex());
+        assertEquals(3, parsed.getBitIndex());
+        assertEquals(1, parsed.getSize());
+    }
+
+    @Test
+    public void otherAreasRoundTripAsCSV() throws Exception{
+        for (Address.AREA area: Address.AREA.values()){
+            if (area != Address.AREA.DB){
+                Address address = new Address(area, 10, Address.NA, 4);
+                assertTrue(address.asCSV().startsWith(area + ";"));
+                Address parsed = Address.valueOf(address.asCSV());
+                assertEquals(area, parsed.getArea());
+                assertEquals(10, parsed.getByteIndex());
+                assertEquals(Address.NA, parsed.getBitIndex());
+                assertEquals(4, parsed.getSize());
+            }
+        }
+    }
+
+    @Test
+    public void notApplicableDataBlockRoundTripsAsCSV() throws Exception{
+        Address parsed = Address.valueOf(new Address(Address.NA, Address.NA, Address.NA, 8).asCSV());
+        assertEquals(Address.AREA.DB, parsed.getArea());
+        assertEquals(Address.NA, parsed.getDb());
+        assertEquals(8, parsed.getSize());
+    }
+
+    @Test
+    public void formerCSVFormatIsReadable() throws Exception{
+        //data block addresses are written as before the memory areas were introduced
+        Address parsed = Address.valueOf("7;2;;4");
+        assertEquals(Address.AREA.DB, parsed.getArea());
+        assertEquals(7, parsed.getDb());
+        assertEquals(2, parsed.getByteIndex());
+        assertEquals(Address.NA, parsed.getBitIndex());
+        assertEquals(4, parsed.getSize());
+        assertEquals("7;2;;4", parsed.asCSV());
+    }
+
+    @Test(expected = IndexOutOfRangeException.class)
+    public void unknownAreaIsRejected() throws Exception{
+        Address.valueOf("FLAGS;0;;2");
+    }
+
+    @Test(expected = IndexOutOfRangeException.class)
+    public void incompleteCSVIsRejected() throws Exception{
+        Address.valueOf("12;4");
+    }
+
+    @Test
+    public void areasAreEncodedWithoutDataBlock() throws Exception{
+        assertEquals(5, new Address(5, 0, Address.NA, 2).getEncodedDb());
+        assertEquals(0, new Address(Address.AREA.MARKERS, 0, Address.NA, 2).getEncodedDb());
+        assertEquals(Address.AREA.INPUTS, Address.AREA.getValue(0x81));
+        assertEquals(0x1D, Address.AREA.TIMERS.toInt());
+    }
+
+    @Test
+    public void blockIdsOfDifferentAreasDiffer() throws Exception{
+        int db1     = new Address(1, 0, Address.NA, 2).getBlockId();
+        int db2     = new Address(2, 0, Address.NA, 2).getBlockId();
+        int markers = new Address(Address.AREA.MARKERS, 0, Address.NA, 2).getBlockId();
+        int inputs  = new Address(Address.AREA.INPUTS, 0, Address.NA, 2).getBlockId();
+        assertTrue(db1 != db2);
+        assertTrue(db1 != markers);
+        assertTrue(markers != inputs);
+        assertEquals(db1, new Address(1, 100, Address.NA, 4).getBlockId());
+    }
+
+    @Test(expected = IndexOutOfRangeException.class)
+    public void timersAreAccessedAsAWhole() throws Exception{
+        new Address(Address.AREA.TIMERS, 3, Address.NA, 2);
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : AllocationTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.s7;
+
+import java.lang.management.ManagementFactory;
+import org.jpac.plc.PlcString;
+import org.jpac.plc.Request;
+import org.jpac.s7.simulator.PlcSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * checks, that cyclic transactions do not allocate memory once warmed up (see AllocationBenchmark).
+ * Skipped, if the JVM does not supply the allocation counters of its threads. A few bytes allocated once by the
+ * JVM itself (e.g. while compiling) are tolerated: any allocation per transaction exceeds one byte per iteration
+ */
+public class AllocationTest {
+    private static final int DB         = 1;
+    private static final int LENGTH     = 100;
+    private static final int WARMUP     = 5000;
+    private static final int ITERATIONS = 10000;
+
+    private PlcSimulator                    simulator;
+    private com.sun.management.ThreadMXBean threadMXBean;
+
+    @Before
+    public void setUp() throws Exception{
+        simulator = new PlcSimulator();
+        simulator.addDataBlock(DB, LENGTH + 10);
+        simulator.start(0);
+        threadMXBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        if (threadMXBean.isThreadAllocatedMemorySupported()){
+            threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        simulator.stop();
+    }
+
+    @Test
+    public void warmedUpTransactionsDoNotAllocate() throws Exception{
+        if (!threadMXBean.isThreadAllocatedMemorySupported()){
+            return;
+        }
+        for (Connection.TRANSPORT transport: Connection.TRANSPORT.values()){
+            Connection conn = new SimulatedConnection(simulator, transport);
+            try{
+                Data                data  = new Data(new byte[LENGTH + 1]);
+                ReceiveTransaction  rxTrx = new ReceiveTransaction(conn);
+                TransmitTransaction txTrx = new TransmitTransaction(conn);
+                rxTrx.addRequest(new ReadRequest(Request.DATATYPE.BYTE, DB, 0, Address.NA, 0, LENGTH, data));
+                rxTrx.addRequest(new ReadRequest(Request.DATATYPE.BIT, DB, 0, 0, LENGTH, 1, data));
+                txTrx.addRequest(new WriteRequest(Request.DATATYPE.BYTE, DB, 0, Address.NA, 0, LENGTH, data));
+                for (int i = 0; i < WARMUP; i++){
+                    rxTrx.transact();
+                    txTrx.transact();
+                }
+                long threadId = Thread.currentThread().getId();
+                long start    = threadMXBean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < ITERATIONS; i++){
+                    rxTrx.transact();
+                }
+                long received = threadMXBean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < ITERATIONS; i++){
+                    txTrx.transact();
+                }
+                long transmitted = threadMXBean.getThreadAllocatedBytes(threadId);
+                assertAllocationFree(transport + " receive", received - start);
+                assertAllocationFree(transport + " transmit", transmitted - received);
+            }
+            finally{
+                conn.close();
+            }
+        }
+    }
+
+    @Test
+    public void unchangedStringIsReused() throws Exception{
+        Data data = new Data(new byte[]{4, 2, 'a', 'b', 0, 0, 0});
+        PlcString first = data.getSTRING(0, null);
+        assertSame(first, data.getSTRING(0, first));
+        //the plain getter returns a fresh instance on every call
+        assertNotSame(data.getSTRING(0), data.getSTRING(0));
+        long threadId = Thread.currentThread().getId();
+        if (threadMXBean.isThreadAllocatedMemorySupported()){
+            PlcString value = first;
+            for (int i = 0; i < WARMUP; i++){
+                value = data.getSTRING(0, value);
+            }
+            long start = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++){
+                value = data.getSTRING(0, value);
+            }
+            assertAllocationFree("getSTRING", threadMXBean.getThreadAllocatedBytes(threadId) - start);
+        }
+        data.getBytes()[3] = 'c';
+        PlcString changed = data.getSTRING(0, first);
+        assertNotSame(first, changed);
+        assertSame(changed, data.getSTRING(0, changed));
+    }
+
+    private static void assertAllocationFree(String title, long allocatedBytes){
+        assertTrue(title + ": " + allocatedBytes + " bytes allocated by " + ITERATIONS + " iterations", allocatedBytes < ITERATIONS);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ChannelOutputStreamTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.s7;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ChannelOutputStreamTest {
+    private static final int  LENGTH  = 16 * 1024 * 1024;
+    private static final long TIMEOUT = 10000; //[ms]
+
+    private ServerSocket  server;
+    private SocketChannel channel;
+    private Socket        peer;
+
+    @Before
+    public void setUp() throws Exception{
+        server  = new ServerSocket(0);
+        channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getLocalPort()));
+        channel.configureBlocking(false);
+        peer    = server.accept();
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        channel.close();
+        peer.close();
+        server.close();
+    }
+
+    @Test
+    public void writerWaitsForTheChannelWithoutSpinning() throws Exception{
+        IOReactor                 reactor = IOReactor.getInstance();
+        reactor.register(new ChannelInputStream(channel, reactor));
+        final ChannelOutputStream out     = new ChannelOutputStream(channel, reactor);
+        final Exception[]         failure = new Exception[1];
+        Thread writer = new Thread(){
+            @Override
+            public void run(){
+                try{
+                    out.write(ByteBuffer.allocate(LENGTH));
+                }
+                catch(Exception exc){
+                    failure[0] = exc;
+                }
+            }
+        };
+        writer.start();
+        //the peer does not read: the send buffer fills up and the writer has to wait
+        Thread.sleep(500);
+        assertTrue(writer.isAlive());
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads.isThreadCpuTimeSupported()){
+            long cpuTime = threads.getThreadCpuTime(writer.getId());
+            Thread.sleep(500);
+            //a spinning writer would consume the whole period
+            assertTrue(threads.getThreadCpuTime(writer.getId()) - cpuTime < 100000000L);
+        }
+        //drain the channel
+        InputStream in       = peer.getInputStream();
+        byte[]      buffer   = new byte[65536];
+        long        received = 0;
+        long        deadline = System.currentTimeMillis() + TIMEOUT;
+        while(received < LENGTH && System.currentTimeMillis() < deadline){
+            int n = in.read(buffer);
+            if (n < 0){
+                break;
+            }
+            received += n;
+        }
+        writer.join(TIMEOUT);
+        assertFalse(writer.isAlive());
+        assertNull(failure[0]);
+        assertEquals(LENGTH, received);
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ConnectionGroupTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jpac.plc.Request;
+import org.jpac.s7.simulator.PlcSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConnectionGroupTest {
+    private static final int LENGTH = 200;
+
+    private static PlcSimulator simulator; //static: the members are opened by the constructor of the group
+
+    private ConnectionGroup group;
+
+    @Before
+    public void setUp() throws Exception{
+        simulator = new PlcSimulator();
+        for (int db = 1; db <= 4; db++){
+            byte[] memory = simulator.addDataBlock(db, LENGTH);
+            for (int i = 0; i < LENGTH; i++){
+                memory[i] = (byte)(db + i);
+            }
+        }
+        simulator.start(0);
+        group = new SimulatedGroup();
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        group.close();
+        simulator.stop();
+    }
+
+    @Test
+    public void commandsAreAcknowledged() throws Exception{
+        ArrayList<ReadRequest>  requests = requests();
+        List<ReadMultipleData>  jobs     = plan(requests);
+        group.transact(jobs);
+        for (ReadMultipleData job: jobs){
+            assertTrue(job.acknowledged);
+        }
+        check(requests);
+    }
+
+    @Test
+    public void commandsOfAFailedConnectionAreTransactedByTheOthers() throws Exception{
+        group.getMembers()[0].getConnection().close();
+        ArrayList<ReadRequest> requests = requests();
+        group.transact(plan(requests));
+        check(requests);
+        assertEquals(1, group.getNumberOfHealthyConnections());
+        assertEquals(1, group.getMembers()[0].getFailures());
+        assertNotNull(group.getMembers()[0].getLastError());
+    }
+
+    private List<ReadMultipleData> plan(List<ReadRequest> requests) throws Exception{
+        List<ReadMultipleData> jobs = new ReadPlanner(group).plan(requests);
+        assertTrue(jobs.size() >= 2);
+        return jobs;
+    }
+
+    private static ArrayList<ReadRequest> requests() throws Exception{
+        ArrayList<ReadRequest> requests = new ArrayList<ReadRequest>();
+        for (int db = 1; db <= 4; db++){
+            requests.add(new ReadRequest(Request.DATATYPE.BYTE, db, 0, Address.NA, 0, LENGTH, new Data(new byte[LENGTH])));
+        }
+        return requests;
+    }
+
+    private static void check(List<ReadRequest> requests){
+        for (int r = 0; r < requests.size(); r++){
+            byte[] bytes = requests.get(r).getData().getBytes();
+            for (int i = 0; i < LENGTH; i++){
+                assertEquals((byte)(r + 1 + i), bytes[i]);
+            }
+        }
+    }
+
+    /**
+     * group of two connections to the simulator
+     */
+    private static class SimulatedGroup extends ConnectionGroup{
+        SimulatedGroup() throws IOException{
+            super("127.0.0.1", 0, 2, false, 2, TRANSPORT.SELECTOR);
+        }
+
+        @Override
+        protected Connection openMember() throws IOException{
+            return new SimulatedConnection(simulator);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ConnectionTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.jpac.plc.Request;
+import org.jpac.s7.simulator.PlcSimulator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConnectionTest {
+
+    @Test
+    public void transactionNumbersArePerConnection() throws Exception{
+        Connection c1 = new Connection("127.0.0.1", 0, 2, false, false);
+        Connection c2 = new Connection("127.0.0.1", 0, 2, false, false);
+        int first = c1.getUniqueTransactionNumber();
+        assertEquals(first + 1, c1.getUniqueTransactionNumber());
+        assertEquals(first, c2.getUniqueTransactionNumber());
+    }
+
+    @Test
+    public void failedConnectionIsReestablished() throws Exception{
+        PlcSimulator simulator = new PlcSimulator();
+        simulator.addDataBlock(1, 10)[0] = 42;
+        simulator.start(0);
+        int        port = simulator.getPort();
+        Connection conn = new SimulatedConnection(simulator);
+        try{
+            conn.setAutoReconnect(true);
+            conn.setReconnectDelays(10, 50);
+            ReadRequest request = new ReadRequest(Request.DATATYPE.BYTE, 1, 0, Address.NA, 0, 1, new Data(new byte[1]));
+            simulator.stop();
+            try{
+                conn.transact(new ReadPlanner(conn).plan(Arrays.asList(request)));
+                fail("connection failure expected");
+            }
+            catch(IOException exc){
+                //expected
+            }
+            assertTrue(conn.isReconnecting());
+            simulator = new PlcSimulator();
+            simulator.addDataBlock(1, 10)[0] = 43;
+            simulator.start(port);
+            long deadline = System.currentTimeMillis() + 5000;
+            while(conn.isReconnecting() && System.currentTimeMillis() < deadline){
+                Thread.sleep(10);
+            }
+            assertFalse(conn.isReconnecting());
+            conn.transact(new ReadPlanner(conn).plan(Arrays.asList(request)));
+            assertEquals(43, request.getData().getBytes()[0]);
+        }
+        finally{
+            conn.close();
+            simulator.stop();
+        }
+    }
+
+    @Test
+    public void transactionNumbersWrapAround() throws Exception{
+        Connection conn = new Connection("127.0.0.1", 0, 2, false, false);
+        int previous = conn.getUniqueTransactionNumber();
+        for (int i = 0; i < 0x10000; i++){
+            int next = conn.getUniqueTransactionNumber();
+            assertTrue(next >= 0 && next < 0x7FFF);
+            assertTrue(next == previous + 1 || next == 0);
+            previous = next;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ReadCoalescerTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jpac.plc.Request;
+import org.jpac.s7.simulator.PlcSimulator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ReadCoalescerTest {
+    private static final int MAXLENGTH = 200;
+
+    @Test
+    public void nearbyRangesAreMerged() throws Exception{
+        ReadRequest       r1     = request(1, 0, 4);
+        ReadRequest       r2     = request(1, 10, 4);
+        List<ReadRequest> result = new ReadCoalescer().coalesce(Arrays.asList(r1, r2), MAXLENGTH);
+        assertEquals(1, result.size());
+        assertTrue(result.get(0) instanceof ReadCoalescer.MergedRequest);
+        assertEquals(0, result.get(0).getByteAddress());
+        assertEquals(14, result.get(0).getDataLength());
+    }
+
+    @Test
+    public void distantRangesAreNotMerged() throws Exception{
+        ReadRequest       r1     = request(1, 0, 4);
+        ReadRequest       r2     = request(1, 4 + ReadCoalescer.DEFAULTGAP + 1, 4);
+        List<ReadRequest> result = new ReadCoalescer().coalesce(Arrays.asList(r1, r2), MAXLENGTH);
+        assertEquals(2, result.size());
+        assertTrue(result.contains(r1));
+        assertTrue(result.contains(r2));
+    }
+
+    @Test
+    public void rangesOfDifferentBlocksAreNotMerged() throws Exception{
+        ReadRequest r1 = request(1, 0, 4);
+        ReadRequest r2 = request(2, 4, 4);
+        ReadRequest r3 = new ReadRequest(Request.DATATYPE.BYTE, Address.AREA.MARKERS, 0, Address.NA, 0, 4, new Data(new byte[4]));
+        ReadRequest r4 = new ReadRequest(Request.DATATYPE.BYTE, Address.AREA.INPUTS, 4, Address.NA, 0, 4, new Data(new byte[4]));
+        assertEquals(4, new ReadCoalescer().coalesce(Arrays.asList(r1, r2, r3, r4), MAXLENGTH).size());
+    }
+
+    @Test
+    public void mergingCanBeDisabled() throws Exception{
+        ReadRequest r1 = request(1, 0, 4);
+        ReadRequest r2 = request(1, 4, 4);
+        assertEquals(2, new ReadCoalescer(-1).coalesce(Arrays.asList(r1, r2), MAXLENGTH).size());
+    }
+
+    @Test
+    public void mergedRangesDoNotExceedMaxLength() throws Exception{
+        ReadRequest r1 = request(1, 0, 10);
+        ReadRequest r2 = request(1, 12, 10);
+        assertEquals(2, new ReadCoalescer().coalesce(Arrays.asList(r1, r2), 16).size());
+        assertEquals(1, new ReadCoalescer().coalesce(Arrays.asList(r1, r2), 22).size());
+    }
+
+    @Test
+    public void bitwiseRequestsAreNotMerged() throws Exception{
+        ReadRequest       bit    = new ReadRequest(Request.DATATYPE.BIT, 1, 2, 3, 0, 1, new Data(new byte[1]));
+        ReadRequest       word   = request(1, 0, 4);
+        List<ReadRequest> result = new ReadCoalescer().coalesce(Arrays.asList(bit, word), MAXLENGTH);
+        assertEquals(2, result.size());
+        assertTrue(result.contains(bit));
+    }
+
+    @Test
+    public void unorderedRequestsAreMerged() throws Exception{
+        ArrayList<ReadRequest> requests = new ArrayList<ReadRequest>();
+        for (int i = 9; i >= 0; i--){
+            requests.add(request(1, 8 * i, 4));
+        }
+        List<ReadRequest> result = new ReadCoalescer().coalesce(requests, MAXLENGTH);
+        assertEquals(1, result.size());
+        assertEquals(0, result.get(0).getByteAddress());
+        assertEquals(76, result.get(0).getDataLength());
+    }
+
+    @Test
+    public void mergedRequestsShareTheResult() throws Exception{
+        PlcSimulator simulator = new PlcSimulator();
+        byte[]       memory    = simulator.addDataBlock(1, 100);
+        for (int i = 0; i < memory.length; i++){
+            memory[i] = (byte)i;
+        }
+        simulator.start(0);
+        Connection conn = new SimulatedConnection(simulator);
+        try{
+            ReadRequest r1 = request(1, 0, 4);
+            ReadRequest r2 = request(1, 90, 4);
+            ReadRequest r3 = request(1, 98, 4);
+            conn.transact(new ReadPlanner(conn).plan(Arrays.asList(r1, r2)));
+            assertEquals(ReadRequest.RESULT.DATAOK, r2.getResult());
+            //the merged range exceeds the data block
+            try{
+                conn.transact(new ReadPlanner(conn).plan(Arrays.asList(r2, r3)));
+                fail("address out of range expected");
+            }
+            catch(IOException exc){
+                //expected
+            }
+            assertFalse(ReadRequest.RESULT.DATAOK.equals(r2.getResult()));
+            assertFalse(ReadRequest.RESULT.DATAOK.equals(r3.getResult()));
+        }
+        finally{
+            conn.close();
+            simulator.stop();
+        }
+    }
+
+    @Test
+    public void dataObjectsAreAllocatedOrGrown() throws Exception{
+        PlcSimulator simulator = new PlcSimulator();
+        byte[]       memory    = simulator.addDataBlock(1, 100);
+        for (int i = 0; i < memory.length; i++){
+            memory[i] = (byte)i;
+        }
+        simulator.start(0);
+        Connection conn = new SimulatedConnection(simulator);
+        try{
+            ReadRequest external = request(1, 0, 4);
+            ReadRequest internal = new ReadRequest(Request.DATATYPE.BYTE, new Address(1, 8, Address.NA, 4), 2);
+            conn.transact(new ReadPlanner(conn).plan(Arrays.asList(external, internal)));
+            assertEquals(ReadRequest.RESULT.DATAOK, internal.getResult());
+            assertArrayEquals(new byte[]{8, 9, 10, 11}, Arrays.copyOfRange(internal.getData().getBytes(), 2, 6));
+            //too small
+            internal.setData(new Data(new byte[3]));
+            conn.transact(new ReadPlanner(conn).plan(Arrays.asList(external, internal)));
+            assertArrayEquals(new byte[]{8, 9, 10, 11}, Arrays.copyOfRange(internal.getData().getBytes(), 2, 6));
+            //supplied externally: never replaced
+            ReadRequest tooSmall = new ReadRequest(Request.DATATYPE.BYTE, 1, 8, Address.NA, 2, 4, new Data(new byte[3]));
+            try{
+                conn.transact(new ReadPlanner(conn).plan(Arrays.asList(external, tooSmall)));
+                fail("data too small expected");
+            }
+            catch(IOException exc){
+                //expected
+            }
+            assertEquals(ReadRequest.RESULT.INVALIDDATALENGTH, tooSmall.getResult());
+        }
+        finally{
+            conn.close();
+            simulator.stop();
+        }
+    }
+
+    private static ReadRequest request(int db, int byteAddress, int length) throws Exception{
+        return new ReadRequest(Request.DATATYPE.BYTE, db, byteAddress, Address.NA, 0, length, new Data(new byte[length]));
+    }
+}
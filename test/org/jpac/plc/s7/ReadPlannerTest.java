@@ -0,0 +1,167 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ReadPlannerTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jpac.plc.Request;
+import org.jpac.s7.simulator.PlcSimulator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ReadPlannerTest {
+
+    @Test
+    public void smallRequestsShareAJob() throws Exception{
+        Connection             conn     = new Connection("127.0.0.1", 0, 2, false, false);
+        ArrayList<ReadRequest> requests = new ArrayList<ReadRequest>();
+        for (int i = 0; i < 8; i++){
+            requests.add(request(1, 100 * i, 4));
+        }
+        List<ReadMultipleData> jobs = new ReadPlanner(conn).plan(requests);
+        assertEquals(1, jobs.size());
+        assertEquals(8, jobs.get(0).getNumberOfRequests());
+    }
+
+    @Test
+    public void requestsExceedingAPDUAreDistributed() throws Exception{
+        Connection             conn     = new Connection("127.0.0.1", 0, 2, false, false);
+        ArrayList<ReadRequest> requests = new ArrayList<ReadRequest>();
+        for (int i = 0; i < 40; i++){
+            requests.add(request(1, 100 * i, 20));
+        }
+        List<ReadMultipleData> jobs = new ReadPlanner(conn).plan(requests);
+        assertTrue(jobs.size() > 1);
+        assertEquals(40, countRequests(jobs));
+    }
+
+    @Test
+    public void largeRequestsAreSplit() throws Exception{
+        Connection             conn     = new Connection("127.0.0.1", 0, 2, false, false);
+        ReadPlanner            planner  = new ReadPlanner(conn);
+        ArrayList<ReadRequest> requests = new ArrayList<ReadRequest>();
+        requests.add(request(1, 0, 1000));
+        List<ReadMultipleData> jobs = planner.plan(requests);
+        int maxItemLength = planner.getMaxItemLength();
+        assertEquals(0, maxItemLength % 2);
+        assertEquals((1000 + maxItemLength - 1) / maxItemLength, countRequests(jobs));
+    }
+
+    @Test
+    public void plannedJobsReadTheRequestedData() throws Exception{
+        PlcSimulator simulator = new PlcSimulator();
+        byte[]       memory    = simulator.addDataBlock(1, 2000);
+        for (int i = 0; i < memory.length; i++){
+            memory[i] = (byte)(i * 7);
+        }
+        simulator.start(0);
+        Connection conn = new SimulatedConnection(simulator);
+        try{
+            ArrayList<ReadRequest> requests = new ArrayList<ReadRequest>();
+            requests.add(request(1, 0, 1500));
+            requests.add(request(1, 1600, 4));
+            requests.add(request(1, 1610, 6));
+            requests.add(request(1, 1900, 2));
+            conn.transact(new ReadPlanner(conn).plan(requests));
+            for (ReadRequest request: requests){
+                assertEquals(ReadRequest.RESULT.DATAOK, request.getResult());
+                for (int i = 0; i < request.getDataLength(); i++){
+                    assertEquals(memory[request.getByteAddress() + i], request.getData().getBytes()[i]);
+                }
+            }
+        }
+        finally{
+            conn.close();
+            simulator.stop();
+        }
+    }
+
+    @Test
+    public void failedChunkIsNotHiddenBySuccessfulOnes() throws Exception{
+        Connection             conn    = new Connection("127.0.0.1", 0, 2, false, false);
+        ReadRequest            request = request(1, 0, 1000);
+        ArrayList<ReadRequest> chunks  = new ArrayList<ReadRequest>();
+        new ReadPlanner(conn).split(request, chunks);
+        assertTrue(chunks.size() >= 3);
+        //the chunks may be read in any order
+        read(chunks.get(1), ReadRequest.RESULT.ADDRESSOUTOFRANGE);
+        assertEquals(ReadRequest.RESULT.ADDRESSOUTOFRANGE, request.getResult());
+        read(chunks.get(0), ReadRequest.RESULT.DATAOK);
+        read(chunks.get(2), ReadRequest.RESULT.DATAOK);
+        assertEquals(ReadRequest.RESULT.ADDRESSOUTOFRANGE, request.getResult());
+        //next transaction
+        for (ReadRequest chunk: chunks){
+            chunk.setResult(ReadRequest.RESULT.NORESULT);
+        }
+        read(chunks.get(0), ReadRequest.RESULT.DATAOK);
+        assertEquals(ReadRequest.RESULT.NORESULT, request.getResult());
+        for (ReadRequest chunk: chunks){
+            read(chunk, ReadRequest.RESULT.DATAOK);
+        }
+        assertEquals(ReadRequest.RESULT.DATAOK, request.getResult());
+    }
+
+    @Test
+    public void requestExceedingTheDataBlockFails() throws Exception{
+        PlcSimulator simulator = new PlcSimulator();
+        simulator.addDataBlock(1, 1000);
+        simulator.start(0);
+        Connection conn = new SimulatedConnection(simulator);
+        try{
+            ArrayList<ReadRequest> requests = new ArrayList<ReadRequest>();
+            requests.add(request(1, 0, 1200));
+            try{
+                conn.transact(new ReadPlanner(conn).plan(requests));
+                fail("address out of range expected");
+            }
+            catch(IOException exc){
+                //expected
+            }
+            assertFalse(ReadRequest.RESULT.DATAOK.equals(requests.get(0).getResult()));
+        }
+        finally{
+            conn.close();
+            simulator.stop();
+        }
+    }
+
+    private static void read(ReadRequest chunk, ReadRequest.RESULT result){
+        chunk.setResult(result);
+        ((ReadPlanner.Chunk)chunk).propagateResult();
+    }
+
+    private static int countRequests(List<ReadMultipleData> jobs){
+        int n = 0;
+        for (ReadMultipleData job: jobs){
+            n += job.getNumberOfRequests();
+        }
+        return n;
+    }
+
+    private static ReadRequest request(int db, int byteAddress, int length) throws Exception{
+        return new ReadRequest(Request.DATATYPE.BYTE, db, byteAddress, Address.NA, 0, length, new Data(new byte[length]));
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : RequestMultiplexerTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jpac.plc.Request;
+import org.jpac.s7.simulator.PlcSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RequestMultiplexerTest {
+    private static final int  DB      = 5;
+    private static final long TIMEOUT = 10000; //[ms]
+
+    private PlcSimulator simulator;
+    private byte[]       memory;
+    private Connection   conn;
+
+    @Before
+    public void setUp() throws Exception{
+        simulator = new PlcSimulator();
+        memory    = simulator.addDataBlock(DB, 1000);
+        for (int i = 0; i < memory.length; i++){
+            memory[i] = (byte)i;
+        }
+        simulator.start(0);
+        conn = new SimulatedConnection(simulator);
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        conn.close();
+        simulator.stop();
+    }
+
+    @Test
+    public void readReturnsTheData() throws Exception{
+        Data data = new Data(new byte[4]);
+        conn.getRequestMultiplexer().read(new ReadRequest(Request.DATATYPE.BYTE, DB, 20, Address.NA, 0, 4, data));
+        assertArrayEquals(new byte[]{20, 21, 22, 23}, data.getBytes());
+    }
+
+    @Test
+    public void writtenDataIsReadBack() throws Exception{
+        RequestMultiplexer multiplexer = conn.getRequestMultiplexer();
+        Data               written     = new Data(new byte[]{(byte)0xAA, (byte)0xBB});
+        multiplexer.write(new WriteRequest(Request.DATATYPE.BYTE, DB, 500, Address.NA, 0, 2, written));
+        Data read = new Data(new byte[2]);
+        multiplexer.read(new ReadRequest(Request.DATATYPE.BYTE, DB, 500, Address.NA, 0, 2, read));
+        assertArrayEquals(written.getBytes(), read.getBytes());
+    }
+
+    @Test(expected = IOException.class)
+    public void writeExceedingAPDUIsRejected() throws Exception{
+        int length = 2 * conn.getMaxPDULength();
+        conn.getRequestMultiplexer().write(new WriteRequest(Request.DATATYPE.BYTE, DB, 0, Address.NA, 0, length, new Data(new byte[length])));
+    }
+
+    @Test
+    public void concurrentCallersShareRoundTrips() throws Exception{
+        final RequestMultiplexer multiplexer = conn.getRequestMultiplexer();
+        final int                callers     = 8;
+        final int                reads       = 20;
+        final CountDownLatch     start       = new CountDownLatch(1);
+        final AtomicInteger      failures    = new AtomicInteger();
+        simulator.setLatency(2000);
+        Thread[] threads = new Thread[callers];
+        for (int t = 0; t < callers; t++){
+            final int byteAddress = 10 * t;
+            threads[t] = new Thread(){
+                @Override
+                public void run(){
+                    try{
+                        start.await();
+                        Data        data    = new Data(new byte[4]);
+                        ReadRequest request = new ReadRequest(Request.DATATYPE.BYTE, DB, byteAddress, Address.NA, 0, 4, data);
+                        for (int i = 0; i < reads; i++){
+                            data.getBytes()[0] = -1;
+                            multiplexer.read(request);
+                            if (data.getBytes()[0] != (byte)byteAddress || data.getBytes()[3] != (byte)(byteAddress + 3)){
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch(Exception exc){
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread: threads){
+            thread.join(TIMEOUT);
+            assertFalse(thread.isAlive());
+        }
+        assertEquals(0, failures.get());
+        assertEquals(callers * reads, multiplexer.getSubmissions());
+        assertTrue(multiplexer.getBatches() < multiplexer.getSubmissions());
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : TransactionFutureTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TransactionFutureTest {
+
+    @Test
+    public void transactedTransactionIsReturned() throws Exception{
+        ReceiveTransaction                    rx     = new ReceiveTransaction(new Connection("127.0.0.1", 0, 2, false, false));
+        TransactionFuture<ReceiveTransaction> future = new TransactionFuture<ReceiveTransaction>(rx, null);
+        future.run();
+        assertSame(rx, future.getResult());
+    }
+
+    @Test
+    public void causeOfAFailureIsKept() throws Exception{
+        final RuntimeException failure = new IllegalStateException("failed");
+        ReceiveTransaction rx = new ReceiveTransaction(new Connection("127.0.0.1", 0, 2, false, false)){
+            @Override
+            public void transact() throws IOException{
+                throw failure;
+            }
+        };
+        TransactionFuture<ReceiveTransaction> future = new TransactionFuture<ReceiveTransaction>(rx, null);
+        future.run();
+        try{
+            future.getResult();
+            fail("IOException expected");
+        }
+        catch(IOException exc){
+            assertSame(failure, exc.getCause());
+            assertEquals("failed", exc.getMessage());
+        }
+    }
+
+    @Test
+    public void ioExceptionsArePassedUnchanged() throws Exception{
+        final IOException failure = new IOException("failed");
+        ReceiveTransaction rx = new ReceiveTransaction(new Connection("127.0.0.1", 0, 2, false, false)){
+            @Override
+            public void transact() throws IOException{
+                throw failure;
+            }
+        };
+        TransactionFuture<ReceiveTransaction> future = new TransactionFuture<ReceiveTransaction>(rx, null);
+        future.run();
+        try{
+            future.getResult();
+            fail("IOException expected");
+        }
+        catch(IOException exc){
+            assertSame(failure, exc);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : TransmitTransactionTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.s7;
+
+import java.io.IOException;
+import org.jpac.plc.Request;
+import org.jpac.plc.util.PlcImage;
+import org.jpac.s7.simulator.PlcSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TransmitTransactionTest {
+    private static final int  DB     = 4;
+    private static final long MAXAGE = 60000; //[ms]
+
+    private PlcSimulator simulator;
+    private byte[]       memory;
+    private Connection   conn;
+
+    @Before
+    public void setUp() throws Exception{
+        simulator = new PlcSimulator();
+        memory    = simulator.addDataBlock(DB, 100);
+        simulator.start(0);
+        conn = new SimulatedConnection(simulator);
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        conn.close();
+        simulator.stop();
+    }
+
+    @Test
+    public void valuesHeldByThePlcAreNotWritten() throws Exception{
+        TransmitTransaction tx   = new TransmitTransaction(conn);
+        Data                data = new Data(new byte[]{1, 2, 3, 4});
+        tx.setWriteElision(new PlcImage(), MAXAGE);
+        tx.addRequest(new WriteRequest(Request.DATATYPE.BYTE, DB, 10, Address.NA, 0, 4, data));
+        tx.transact();
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, range(10, 4));
+        //modified by another party: not noticed, because the values of the request are unchanged
+        memory[11] = 99;
+        tx.transact();
+        assertEquals(99, memory[11]);
+        //changed values are written
+        data.getBytes()[3] = 5;
+        tx.transact();
+        assertArrayEquals(new byte[]{1, 2, 3, 5}, range(10, 4));
+    }
+
+    @Test
+    public void outdatedValuesAreWrittenAgain() throws Exception{
+        TransmitTransaction tx   = new TransmitTransaction(conn);
+        Data                data = new Data(new byte[]{1, 2});
+        tx.setWriteElision(new PlcImage(), 1);
+        tx.addRequest(new WriteRequest(Request.DATATYPE.BYTE, DB, 20, Address.NA, 0, 2, data));
+        tx.transact();
+        memory[20] = 99;
+        Thread.sleep(10);
+        tx.transact();
+        assertArrayEquals(new byte[]{1, 2}, range(20, 2));
+    }
+
+    @Test
+    public void valuesReadAreNotWritten() throws Exception{
+        PlcImage image = new PlcImage();
+        memory[50] = 5;
+        memory[51] = 6;
+        ReceiveTransaction rx = new ReceiveTransaction(conn);
+        rx.setImage(image);
+        rx.addRequest(new ReadRequest(Request.DATATYPE.BYTE, DB, 50, Address.NA, 0, 2, new Data(new byte[2])));
+        rx.transact();
+        memory[50] = 99;
+        TransmitTransaction tx = new TransmitTransaction(conn);
+        tx.setWriteElision(image, MAXAGE);
+        tx.addRequest(new WriteRequest(Request.DATATYPE.BYTE, DB, 50, Address.NA, 0, 2, new Data(new byte[]{5, 6})));
+        tx.transact();
+        assertEquals(99, memory[50]);
+    }
+
+    @Test
+    public void onlyModifiedRangesAreWritten() throws Exception{
+        TransmitTransaction tx   = new TransmitTransaction(conn);
+        Data                data = new Data(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        tx.setTransmitModifiedOnly(true);
+        tx.addRequest(new WriteRequest(Request.DATATYPE.BYTE, DB, 30, Address.NA, 0, 8, data));
+        //nothing modified by the setters yet
+        tx.transact();
+        assertArrayEquals(new byte[8], range(30, 8));
+        data.setBYTE(1, 0x22);
+        data.setWORD(5, 0x6677);
+        tx.transact();
+        assertArrayEquals(new byte[]{0, 0x22, 0, 0, 0, 0x66, 0x77, 0}, range(30, 8));
+        assertTrue(data.getDirtyRanges().isEmpty());
+        //modified by another party: the bytes transmitted before are not written again
+        memory[31] = 99;
+        data.markDirty(7, 1);
+        tx.transact();
+        assertArrayEquals(new byte[]{0, 99, 0, 0, 0, 0x66, 0x77, 8}, range(30, 8));
+    }
+
+    @Test
+    public void rangesOfFailedTransmissionsAreKept() throws Exception{
+        TransmitTransaction tx   = new TransmitTransaction(conn);
+        Data                data = new Data(new byte[8]);
+        tx.setTransmitModifiedOnly(true);
+        tx.addRequest(new WriteRequest(Request.DATATYPE.BYTE, DB, 40, Address.NA, 0, 8, data));
+        data.setBYTE(6, 1);
+        conn.close();
+        try{
+            tx.transact();
+            fail("closed connection expected");
+        }
+        catch(IOException exc){
+            //expected
+        }
+        assertTrue(data.getDirtyRanges().intersects(6, 7));
+    }
+
+    private byte[] range(int byteAddress, int length){
+        byte[] bytes = new byte[length];
+        System.arraycopy(memory, byteAddress, bytes, 0, length);
+        return bytes;
+    }
+}
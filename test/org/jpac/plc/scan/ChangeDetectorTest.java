@@ -0,0 +1,170 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ChangeDetectorTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.scan;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jpac.plc.Data;
+import org.jpac.plc.s7.symaddr.StructType;
+import org.jpac.plc.s7.symaddr.Type;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ChangeDetectorTest {
+    private Data           data;
+    private ChangeDetector detector;
+    private List<int[]>    ranges;
+    private List<String>   fields;
+
+    @Before
+    public void setUp(){
+        data     = new Data(new byte[40]);
+        detector = new ChangeDetector(data);
+        ranges   = new ArrayList<int[]>();
+        fields   = new ArrayList<String>();
+        detector.addListener(new ChangeListener(){
+            @Override
+            public void bytesChanged(Data data, int byteOffset, int length){
+                ranges.add(new int[]{byteOffset, length});
+            }
+        });
+        detector.addListener(new FieldChangeListener(){
+            @Override
+            public void fieldChanged(Data data, StructType.Field field){
+                fields.add(field.getIdentifier());
+            }
+        });
+    }
+
+    @Test
+    public void firstDetectionReportsEverything(){
+        assertEquals(1, detector.detect());
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new int[]{0, 40}, ranges.get(0));
+    }
+
+    @Test
+    public void unmodifiedDataIsNotReported(){
+        detector.detect();
+        ranges.clear();
+        assertEquals(0, detector.detect());
+        assertTrue(ranges.isEmpty());
+    }
+
+    @Test
+    public void onlyModifiedRangesAreReported(){
+        detector.detect();
+        ranges.clear();
+        byte[] bytes = data.getBytes();
+        bytes[3]  = 1;
+        bytes[9]  = 2;
+        bytes[10] = 3;
+        bytes[11] = 4;
+        bytes[39] = 5; //inside the trailing bytes not covered by a whole word
+        assertEquals(3, detector.detect());
+        assertArrayEquals(new int[]{3, 1}, ranges.get(0));
+        assertArrayEquals(new int[]{9, 3}, ranges.get(1));
+        assertArrayEquals(new int[]{39, 1}, ranges.get(2));
+        //the modifications have been taken over
+        ranges.clear();
+        assertEquals(0, detector.detect());
+    }
+
+    @Test
+    public void rangesAcrossWordBoundariesAreJoined(){
+        detector.detect();
+        ranges.clear();
+        for (int i = 6; i < 18; i++){
+            data.getBytes()[i] = (byte)i;
+        }
+        assertEquals(1, detector.detect());
+        assertArrayEquals(new int[]{6, 12}, ranges.get(0));
+    }
+
+    @Test
+    public void manyModificationsAreReported(){
+        detector.detect();
+        ranges.clear();
+        for (int i = 0; i < 40; i += 2){
+            data.getBytes()[i] = 1;
+        }
+        assertEquals(20, detector.detect());
+        assertEquals(20, ranges.size());
+        assertArrayEquals(new int[]{38, 1}, ranges.get(19));
+    }
+
+    @Test
+    public void resizedDataIsReportedAsAWhole(){
+        detector.detect();
+        ranges.clear();
+        data.setBytes(new byte[20]);
+        assertEquals(1, detector.detect());
+        assertArrayEquals(new int[]{0, 20}, ranges.get(0));
+    }
+
+    @Test
+    public void modifiedFieldsAreReported(){
+        detector.setLayout(layout(), 4);
+        detector.detect();
+        assertEquals(4, fields.size());
+        fields.clear();
+        //DINT value at struct offset 4
+        data.getBytes()[4 + 6] = 1;
+        detector.detect();
+        assertEquals(1, fields.size());
+        assertEquals("VALUE", fields.get(0));
+    }
+
+    @Test
+    public void boolFieldsAreReportedForTheirOwnBitOnly(){
+        detector.setLayout(layout(), 4);
+        detector.detect();
+        fields.clear();
+        //flag b shares byte 0 of the struct with flag a
+        data.getBytes()[4] |= 1 << 1;
+        detector.detect();
+        assertEquals(1, fields.size());
+        assertEquals("B", fields.get(0));
+        fields.clear();
+        data.getBytes()[4] |= 1 << 0;
+        detector.detect();
+        assertEquals(1, fields.size());
+        assertEquals("A", fields.get(0));
+    }
+
+    private static StructType layout(){
+        StructType struct = new StructType("UDT", 1);
+        put(struct, struct.new Field("A", null, new Type("BOOL"), 0, 0));
+        put(struct, struct.new Field("B", null, new Type("BOOL"), 0, 1));
+        put(struct, struct.new Field("COUNT", null, new Type("INT"), 2, 0));
+        put(struct, struct.new Field("VALUE", null, new Type("DINT"), 4, 0));
+        return struct;
+    }
+
+    private static void put(StructType struct, StructType.Field field){
+        struct.getFields().put(field.getIdentifier(), field);
+    }
+}
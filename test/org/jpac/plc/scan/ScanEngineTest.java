@@ -0,0 +1,110 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : ScanEngineTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.scan;
+
+import java.util.Arrays;
+import org.jpac.plc.Request;
+import org.jpac.plc.s7.Address;
+import org.jpac.plc.s7.Connection;
+import org.jpac.plc.s7.Data;
+import org.jpac.plc.s7.ReadRequest;
+import org.jpac.plc.s7.ReceiveTransaction;
+import org.jpac.plc.s7.SimulatedConnection;
+import org.jpac.s7.simulator.PlcSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScanEngineTest {
+    private static final int DB = 3;
+
+    private PlcSimulator simulator;
+    private Connection   conn;
+
+    @Before
+    public void setUp() throws Exception{
+        simulator = new PlcSimulator();
+        simulator.addDataBlock(DB, 1000);
+        simulator.start(0);
+        conn = new SimulatedConnection(simulator);
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        conn.close();
+        simulator.stop();
+    }
+
+    @Test
+    public void everySetOfGroupsHasATransactionOfItsOwn() throws Exception{
+        ScanGroup fast = group("fast", 20, 0, 2);
+        ScanGroup slow = group("slow", 60000, 500, 3);
+        ScanEngine engine = new ScanEngine(conn);
+        engine.addGroup(fast);
+        engine.addGroup(slow);
+        //both groups are due on the first scan, afterwards the fast one is scanned alone
+        long delay = engine.scan();
+        Thread.sleep(delay + 1);
+        engine.scan();
+        assertEquals(2, engine.getTransactions());
+        assertEquals(2, fast.getScans());
+        assertEquals(1, slow.getScans());
+
+        ReceiveTransaction both     = engine.getReceiveTransaction(Arrays.asList(fast, slow));
+        ReceiveTransaction fastOnly = engine.getReceiveTransaction(Arrays.asList(fast));
+        assertNotSame(both, fastOnly);
+        assertNotSame(conn.generateReceiveTransaction(), fastOnly);
+        assertEquals(5, both.getNumberOfRequests());
+        assertEquals(2, fastOnly.getNumberOfRequests());
+        assertEquals(0, conn.generateReceiveTransaction().getNumberOfRequests());
+    }
+
+    @Test
+    public void transactionIsSetUpAgainWhenTheRequestsChange() throws Exception{
+        ScanGroup  group  = group("group", 20, 0, 2);
+        ScanEngine engine = new ScanEngine(conn);
+        engine.addGroup(group);
+        engine.scan();
+        ReceiveTransaction before = engine.getReceiveTransaction(Arrays.asList(group));
+        group.addRequest(request(100));
+        ReceiveTransaction after = engine.getReceiveTransaction(Arrays.asList(group));
+        assertNotSame(before, after);
+        assertEquals(2, before.getNumberOfRequests());
+        assertEquals(3, after.getNumberOfRequests());
+    }
+
+    private static ScanGroup group(String name, long period, int byteAddress, int numberOfRequests) throws Exception{
+        ScanGroup group = new ScanGroup(name, period);
+        for (int i = 0; i < numberOfRequests; i++){
+            group.addRequest(request(byteAddress + 10 * i));
+        }
+        return group;
+    }
+
+    private static ReadRequest request(int byteAddress) throws Exception{
+        return new ReadRequest(Request.DATATYPE.BYTE, DB, byteAddress, Address.NA, 0, 4, new Data(new byte[4]));
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : DirtyRangesTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DirtyRangesTest {
+
+    @Test
+    public void overlappingAndAdjacentRangesAreMerged(){
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(0, 4);
+        ranges.add(4, 8);
+        assertEquals(1, ranges.size());
+        ranges.add(10, 12);
+        assertEquals(2, ranges.size());
+        ranges.add(6, 11);
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new int[]{0, 12}, ranges.toArray(0, 100, 0));
+    }
+
+    @Test
+    public void rangesAreKeptSorted(){
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(20, 22);
+        ranges.add(0, 2);
+        ranges.add(10, 12);
+        assertArrayEquals(new int[]{0, 2, 10, 12, 20, 22}, ranges.toArray(0, 100, 0));
+    }
+
+    @Test
+    public void emptyRangesAreIgnored(){
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(5, 5);
+        ranges.add(7, 6);
+        assertTrue(ranges.isEmpty());
+    }
+
+    @Test
+    public void removeSplitsRanges(){
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(0, 10);
+        ranges.remove(3, 5);
+        assertArrayEquals(new int[]{0, 3, 5, 10}, ranges.toArray(0, 100, 0));
+        ranges.remove(0, 3);
+        assertArrayEquals(new int[]{5, 10}, ranges.toArray(0, 100, 0));
+        ranges.remove(0, 100);
+        assertTrue(ranges.isEmpty());
+    }
+
+    @Test
+    public void toArrayClipsAndMergesGaps(){
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(0, 2);
+        ranges.add(5, 7);
+        ranges.add(20, 22);
+        assertArrayEquals(new int[]{1, 2, 5, 7, 20, 21}, ranges.toArray(1, 21, 0));
+        assertArrayEquals(new int[]{1, 7, 20, 21}, ranges.toArray(1, 21, 3));
+        assertArrayEquals(new int[0], ranges.toArray(8, 20, 0));
+    }
+
+    @Test
+    public void intersectsDetectsModifiedBytesOnly(){
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(4, 8);
+        assertTrue(ranges.intersects(7, 10));
+        assertTrue(ranges.intersects(0, 5));
+        assertFalse(ranges.intersects(8, 10));
+        assertFalse(ranges.intersects(0, 4));
+    }
+
+    @Test
+    public void clearMarksAllBytesUnmodified(){
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(0, 4);
+        ranges.clear();
+        assertTrue(ranges.isEmpty());
+        assertFalse(ranges.intersects(0, 4));
+    }
+
+    @Test
+    public void capacityGrows(){
+        DirtyRanges ranges = new DirtyRanges();
+        for (int i = 0; i < 100; i++){
+            ranges.add(3 * i, 3 * i + 1);
+        }
+        assertEquals(100, ranges.size());
+        for (int i = 0; i < 100; i++){
+            ranges.remove(3 * i, 3 * i + 1);
+        }
+        assertTrue(ranges.isEmpty());
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : PlcImageTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PlcImageTest {
+    private static final long MAXAGE = 60000; //[ms]
+
+    @Test
+    public void confirmedValuesMatch(){
+        PlcImage image  = new PlcImage();
+        byte[]   values = new byte[]{1, 2, 3, 4};
+        image.confirm(1, 10, values, 0, 4);
+        assertTrue(image.matches(1, 10, values, 0, 4, MAXAGE));
+        assertTrue(image.matches(1, 11, values, 1, 2, MAXAGE));
+    }
+
+    @Test
+    public void modifiedValuesDoNotMatch(){
+        PlcImage image  = new PlcImage();
+        byte[]   values = new byte[]{1, 2, 3, 4};
+        image.confirm(1, 10, values, 0, 4);
+        assertFalse(image.matches(1, 10, new byte[]{1, 2, 0, 4}, 0, 4, MAXAGE));
+    }
+
+    @Test
+    public void unknownValuesDoNotMatch(){
+        PlcImage image  = new PlcImage();
+        byte[]   values = new byte[]{0, 0, 0, 0};
+        assertFalse(image.matches(1, 0, values, 0, 4, MAXAGE));
+        image.confirm(1, 10, values, 0, 2);
+        //partially confirmed
+        assertFalse(image.matches(1, 10, values, 0, 4, MAXAGE));
+        //beyond the confirmed range
+        assertFalse(image.matches(1, 1000, values, 0, 4, MAXAGE));
+    }
+
+    @Test
+    public void areasAreDistinct(){
+        PlcImage image  = new PlcImage();
+        byte[]   values = new byte[]{1, 2};
+        image.confirm(1, 0, values, 0, 2);
+        assertFalse(image.matches(2, 0, values, 0, 2, MAXAGE));
+    }
+
+    @Test
+    public void blocksGrow(){
+        PlcImage image  = new PlcImage();
+        byte[]   values = new byte[]{1, 2};
+        image.confirm(1, 5000, values, 0, 2);
+        assertTrue(image.matches(1, 5000, values, 0, 2, MAXAGE));
+    }
+
+    @Test
+    public void invalidatedValuesDoNotMatch(){
+        PlcImage image  = new PlcImage();
+        byte[]   values = new byte[]{1, 2, 3, 4};
+        image.confirm(1, 0, values, 0, 4);
+        image.invalidate(1, 2, 1);
+        assertFalse(image.matches(1, 0, values, 0, 4, MAXAGE));
+        assertTrue(image.matches(1, 0, values, 0, 2, MAXAGE));
+        image.clear();
+        assertFalse(image.matches(1, 0, values, 0, 2, MAXAGE));
+    }
+
+    @Test
+    public void outdatedConfirmationsDoNotMatch(){
+        ClockedImage image  = new ClockedImage(1000);
+        byte[]       values = new byte[]{1, 2};
+        image.confirm(1, 0, values, 0, 2);
+        image.time += 50;
+        assertFalse(image.matches(1, 0, values, 0, 2, 10));
+        assertTrue(image.matches(1, 0, values, 0, 2, 50));
+        assertTrue(image.matches(1, 0, values, 0, 2, MAXAGE));
+    }
+
+    @Test
+    public void confirmationsAgeBeyondTheIntRange(){
+        //more than 24.8 days after the first confirmation
+        ClockedImage image  = new ClockedImage(0);
+        byte[]       values = new byte[]{1, 2};
+        image.confirm(1, 0, values, 0, 2);
+        image.time = 30L * 24 * 3600 * 1000;
+        image.confirm(1, 2, values, 0, 2);
+        image.time += 5;
+        assertTrue(image.matches(1, 2, values, 0, 2, MAXAGE));
+        assertFalse(image.matches(1, 0, values, 0, 2, MAXAGE));
+        assertTrue(image.matches(1, 0, values, 0, 2, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void negativeClockValuesAreValid(){
+        ClockedImage image  = new ClockedImage(-5);
+        byte[]       values = new byte[]{1, 2};
+        image.confirm(1, 0, values, 0, 2);
+        image.time = 3;
+        assertTrue(image.matches(1, 0, values, 0, 2, 8));
+        assertFalse(image.matches(1, 0, values, 0, 2, 7));
+    }
+
+    /**
+     * image with a clock set by the test
+     */
+    private static class ClockedImage extends PlcImage{
+        long time;
+
+        ClockedImage(long time){
+            this.time = time;
+        }
+
+        @Override
+        long now(){
+            return time;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : PriorityLanesTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.util;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jpac.plc.util.PriorityLanes.PRIORITY;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PriorityLanesTest {
+    private static final long TIMEOUT = 5000; //[ms]
+
+    private PriorityLanes  lanes;
+    private List<PRIORITY> served;
+
+    @Before
+    public void setUp(){
+        lanes  = new PriorityLanes(new ConnectionStatistics("test"));
+        served = Collections.synchronizedList(new ArrayList<PRIORITY>());
+    }
+
+    @Test
+    public void uncontendedCallerDoesNotWait() throws Exception{
+        long enteredAt = lanes.enter(PRIORITY.BULK);
+        assertEquals(0, lanes.getWaiting());
+        lanes.leave(PRIORITY.BULK, enteredAt);
+        assertEquals(1, lanes.getLatencyHistogram(PRIORITY.BULK).getCount());
+        assertEquals(0, lanes.getLatencyHistogram(PRIORITY.URGENT).getCount());
+    }
+
+    @Test
+    public void higherPrioritiesAreServedFirst() throws Exception{
+        lanes.setAgingLimit(PRIORITY.NORMAL, TIMEOUT);
+        lanes.setAgingLimit(PRIORITY.BULK, TIMEOUT);
+        long enteredAt = lanes.enter(PRIORITY.NORMAL);
+        Thread bulk   = startCaller(PRIORITY.BULK, 1);
+        Thread normal = startCaller(PRIORITY.NORMAL, 2);
+        Thread urgent = startCaller(PRIORITY.URGENT, 3);
+        lanes.leave(PRIORITY.NORMAL, enteredAt);
+        join(bulk, normal, urgent);
+        assertEquals(3, served.size());
+        assertEquals(PRIORITY.URGENT, served.get(0));
+        assertEquals(PRIORITY.NORMAL, served.get(1));
+        assertEquals(PRIORITY.BULK, served.get(2));
+    }
+
+    @Test
+    public void agedCallersAreServedFirst() throws Exception{
+        lanes.setAgingLimit(PRIORITY.BULK, 0);
+        long enteredAt = lanes.enter(PRIORITY.NORMAL);
+        Thread bulk   = startCaller(PRIORITY.BULK, 1);
+        Thread.sleep(10);
+        Thread urgent = startCaller(PRIORITY.URGENT, 2);
+        lanes.leave(PRIORITY.NORMAL, enteredAt);
+        join(bulk, urgent);
+        assertEquals(PRIORITY.BULK, served.get(0));
+        assertEquals(PRIORITY.URGENT, served.get(1));
+    }
+
+    @Test
+    public void interruptedCallerLeavesItsLane() throws Exception{
+        long enteredAt = lanes.enter(PRIORITY.NORMAL);
+        final boolean[] interrupted = new boolean[1];
+        Thread caller = new Thread(){
+            @Override
+            public void run(){
+                try{
+                    lanes.leave(PRIORITY.BULK, lanes.enter(PRIORITY.BULK));
+                }
+                catch(InterruptedIOException exc){
+                    interrupted[0] = true;
+                }
+            }
+        };
+        caller.start();
+        awaitWaiting(1);
+        caller.interrupt();
+        caller.join(TIMEOUT);
+        assertTrue(interrupted[0]);
+        assertEquals(0, lanes.getWaiting());
+        lanes.leave(PRIORITY.NORMAL, enteredAt);
+        //the connection is idle again
+        Thread next = startCaller(PRIORITY.URGENT, 0);
+        join(next);
+        assertEquals(PRIORITY.URGENT, served.get(0));
+    }
+
+    /**
+     * starts a caller entering the given lane and waits, until it is queued behind the callers started before
+     */
+    private Thread startCaller(final PRIORITY priority, int waiting) throws InterruptedException{
+        Thread caller = new Thread(){
+            @Override
+            public void run(){
+                try{
+                    long enteredAt = lanes.enter(priority);
+                    served.add(priority);
+                    lanes.leave(priority, enteredAt);
+                }
+                catch(InterruptedIOException exc){
+                    //not expected
+                }
+            }
+        };
+        caller.start();
+        awaitWaiting(waiting);
+        return caller;
+    }
+
+    private void awaitWaiting(int waiting) throws InterruptedException{
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while(lanes.getWaiting() < waiting && System.currentTimeMillis() < deadline){
+            Thread.sleep(1);
+        }
+        assertEquals(waiting, lanes.getWaiting());
+    }
+
+    private void join(Thread... callers) throws InterruptedException{
+        for (Thread caller: callers){
+            caller.join(TIMEOUT);
+            assertFalse(caller.isAlive());
+        }
+    }
+}
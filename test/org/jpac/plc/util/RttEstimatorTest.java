@@ -0,0 +1,101 @@
+/**
+ * PROJECT   : jPac PLC communication library
+ * MODULE    : RttEstimatorTest.java
+ * VERSION   : -
+ * DATE      : -
+ * PURPOSE   : 
+ * AUTHOR    : Bernd Schuster, MSK Gesellschaft fuer Automatisierung mbH, Schenefeld
+ * REMARKS   : -
+ * CHANGES   : CH#n <Kuerzel> <datum> <Beschreibung>
+ *
+ * This file is part of the jPac process automation controller.
+ * jPac is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jPac is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the jPac If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpac.plc.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RttEstimatorTest {
+    private static final long MS = 1000000L; //[ns]
+
+    @Test
+    public void initialTimeoutAppliesUntilFirstSample(){
+        RttEstimator estimator = new RttEstimator(1000, 100, 5000);
+        assertEquals(1000, estimator.getTimeout());
+        assertEquals(0, estimator.getSamples());
+    }
+
+    @Test
+    public void firstSampleInitializesEstimation(){
+        RttEstimator estimator = new RttEstimator(1000, 100, 5000);
+        estimator.sample(200 * MS);
+        //srtt = 200 ms, rttvar = 100 ms
+        assertEquals(600, estimator.getTimeout());
+        assertEquals(200000.0, estimator.getSmoothedRtt(), 0.001);
+        assertEquals(100000.0, estimator.getRttVariation(), 0.001);
+    }
+
+    @Test
+    public void constantRoundTripsConvergeToRoundTripTime(){
+        RttEstimator estimator = new RttEstimator(1000, 100, 5000);
+        for (int i = 0; i < 200; i++){
+            estimator.sample(200 * MS);
+        }
+        assertEquals(200, estimator.getTimeout());
+    }
+
+    @Test
+    public void timeoutIsLimited(){
+        RttEstimator estimator = new RttEstimator(1000, 100, 5000);
+        estimator.sample(1 * MS);
+        assertEquals(100, estimator.getTimeout());
+        estimator.reset();
+        estimator.sample(10000 * MS);
+        assertEquals(5000, estimator.getTimeout());
+        estimator.setTimeoutLimits(100, 2000);
+        assertEquals(2000, estimator.getTimeout());
+    }
+
+    @Test
+    public void timeoutsDoubleTheTimeout(){
+        RttEstimator estimator = new RttEstimator(1000, 100, 5000);
+        estimator.timedOut();
+        assertEquals(2000, estimator.getTimeout());
+        estimator.timedOut();
+        assertEquals(4000, estimator.getTimeout());
+        estimator.timedOut();
+        assertEquals(5000, estimator.getTimeout());
+        assertEquals(3, estimator.getBackoffs());
+        //the next round trip measured ends the backoff
+        estimator.sample(200 * MS);
+        assertEquals(600, estimator.getTimeout());
+    }
+
+    @Test
+    public void resetRestoresInitialTimeout(){
+        RttEstimator estimator = new RttEstimator(1000, 100, 5000);
+        estimator.sample(200 * MS);
+        estimator.timedOut();
+        estimator.reset();
+        assertEquals(1000, estimator.getTimeout());
+        assertEquals(0, estimator.getSamples());
+        assertEquals(0, estimator.getBackoffs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimitsAreRejected(){
+        new RttEstimator(1000, 5000, 100);
+    }
+}